@@ -0,0 +1,14 @@
+#!/bin/sh
+# Starts the checker server from the executable jar, using the class-data-sharing archive built by
+# "mvn -Pcds package" if there is one. The archive must have been built from the same jar by the same JVM.
+# Extra JVM options, e.g. -Dchecker.port=80, can be given in JAVA_OPTS.
+
+DIR=$(dirname "$0")
+JAR=${CHECKER_JAR:-$DIR/target/chemistry-checker-1.0-SNAPSHOT-jar-with-dependencies.jar}
+ARCHIVE=${CHECKER_ARCHIVE:-$DIR/target/checker.jsa}
+
+if [ -f "$ARCHIVE" ]; then
+    CDS="-XX:SharedArchiveFile=$ARCHIVE -Xshare:auto"
+fi
+
+exec java $CDS $JAVA_OPTS -jar "$JAR" "$@"
@@ -1,21 +1,44 @@
 (ns server
   (:use [compojure.handler :only [site]]
-        [compojure.core :only [defroutes POST]])
+        [compojure.core :only [defroutes GET POST]])
   (:require [org.httpkit.server :as server])
-  (:import [org.isaacphysics.labs.chemistry.checker RunParser]))
+  (:import [org.isaacphysics.labs.chemistry.checker GradingCore]
+           [java.util.function BiConsumer]))
+
+; Grading, caching, limits and metrics live in GradingCore, shared with the Jetty servlets.
+(def core (GradingCore/getShared))
+
+(def json-headers {"Content-Type" "application/json"})
+
+(defn respond
+  "Answers on channel once the future result completes, without holding a thread while grading.
+  Failures are answered with their error object, as the servlets do."
+  [channel future]
+  (.whenComplete future
+    (reify BiConsumer
+      (accept [_ result error]
+        (server/send! channel
+          {:status 200
+           :body (GradingCore/toJson (if error (GradingCore/error error) result))
+           :headers json-headers})))))
 
 (defroutes routes
-  (POST "/check" [test target]
-    (println "Checking" test "against" target)
+  (GET "/" []
     {:status 200
-     :body (RunParser/check test target)
-     :headers {"Content-Type" "application/json"}})
-;  (POST "/parse" [test]
-;    (println "Parsing" test)
-;    {:status 200
-;     :body (RunParser/parseFromString test)
-;     :headers {"Content-Type" "application/json"}})
-     )
+     :body (GradingCore/toJson (doto (.getMetrics core) (.put "code" 200)))
+     :headers json-headers})
+  (POST "/check" [test target :as request]
+    (println "Checking" test "against" target)
+    (server/with-channel request channel
+      (respond channel (.checkAsync core target test))))
+  (POST "/parse" [test :as request]
+    (println "Parsing" test)
+    (server/with-channel request channel
+      (respond channel (.parseAsync core test))))
+  ; Body is JSON: {"items": [{"target": ..., "test": ...}, ...]}.
+  (POST "/check_batch" request
+    (server/with-channel request channel
+      (respond channel (.checkBatch core (GradingCore/readJson (slurp (:body request))))))))
 
 (print "Starting server...")
 (server/run-server (site #'routes) {:port 80})
@@ -60,21 +60,33 @@ abstract class AbstractTerm implements Countable {
         return toString().hashCode();
     }
 
+    /**
+     * Checks if the term is nuclear, i.e. it has mass and atomic numbers.
+     * This is fixed when the term is constructed.
+     *
+     * @return True if the term is nuclear.
+     */
+    public boolean isNuclear() {
+        return false;
+    }
+
     /**
      * Defined for nuclear terms only.
      *
-     * @return Mass number of term.
-     * @throws NuclearException The particle is not nuclear.
+     * @return Mass number of term, or 0 if term is not nuclear.
      */
-    public abstract Fraction getMassNumber() throws NuclearException;
+    public int getMassNumber() {
+        return 0;
+    }
 
     /**
      * Defined for nuclear terms only.
      *
-     * @return Atomic number of term.
-     * @throws NuclearException The particle is not nuclear.
+     * @return Atomic number of term, or 0 if term is not nuclear.
      */
-    public abstract Fraction getAtomicNumber() throws NuclearException;
+    public int getAtomicNumber() {
+        return 0;
+    }
 
     /**
      * Method only applicable to nuclear formula.
@@ -0,0 +1,370 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Command line tool counting how often each distinct answer was given to each question in an answer log.
+ * <p>
+ *     Usage: <code>AnswerFrequency answers.(jsonl|csv) counts.jsonl [rowsPerRun]</code>. Input rows are in the same
+ *     format as for {@link Regrader}. The output has one line per question and distinct answer, grouped by
+ *     question: <code>{"questionId": ..., "answer": ..., "count": ...}</code>.
+ * </p>
+ * <p>
+ *     Answers are grouped by their canonical key (see {@link #canonicalKey(String)}), so answers that only differ in
+ *     spacing or term order are counted together. The log is processed as an external sort: each run of rows is
+ *     counted in memory and written sorted to a temporary file, and the sorted runs are then merged while adding up
+ *     counts. Memory use therefore only depends on the run size, not on the size of the log.
+ * </p>
+ */
+public final class AnswerFrequency {
+
+    /**
+     * Default number of rows counted in memory per run.
+     */
+    private static final int DEFAULT_RUN_SIZE = 500000;
+
+    /**
+     * Prefix of keys of answers that cannot be canonicalized because they contain errors.
+     */
+    static final String ERROR_PREFIX = "ERROR ";
+
+    /**
+     * Object mapper used to write counts.
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Constructor method of AnswerFrequency.
+     * Set to private, because we don't want people to instantiate an utility class.
+     */
+    private AnswerFrequency() {
+        // Nothing here.
+    }
+
+    /**
+     * Computes the key by which an answer is grouped.
+     * <p>
+     *     This is the canonical form of the parsed statement, i.e. mhchem with normalised spacing and state symbols and
+     *     terms in sorted order. Answers containing errors have no canonical form; their key is ERROR_PREFIX followed
+     *     by the answer with all white space removed. Answers are parsed quietly, as keys are computed in parallel and
+     *     a log may hold millions of malformed answers.
+     * </p>
+     *
+     * @param test The answer.
+     * @return Canonical key of answer.
+     */
+    static String canonicalKey(final String test) {
+
+        Statement statement = IncrementalParser.parseStatement(test);
+        String key = (statement == null) ? null : statement.getCanonicalForm();
+
+        if (key == null) {
+            return ERROR_PREFIX + test.replaceAll("\\s+", "");
+        }
+
+        return key;
+    }
+
+    /**
+     * Escapes a field of a run file, so fields can be separated by tabs and records by new lines.
+     *
+     * @param s The field.
+     * @return Escaped field, without tabs, new lines or other control characters.
+     */
+    static String escape(final String s) {
+
+        StringBuilder escaped = new StringBuilder(s.length());
+
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+
+            if (c < ' ' || c == '\\') {
+                // Control characters and backslash become backslash followed by four hex digits.
+                escaped.append('\\').append(String.format("%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+
+        return escaped.toString();
+    }
+
+    /**
+     * Reverses {@link #escape(String)}.
+     *
+     * @param s The escaped field.
+     * @return Original field.
+     */
+    static String unescape(final String s) {
+
+        StringBuilder unescaped = new StringBuilder(s.length());
+
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+
+            if (c == '\\') {
+                unescaped.append((char) Integer.parseInt(s.substring(i + 1, i + 5), 16));
+                i += 4;
+            } else {
+                unescaped.append(c);
+            }
+        }
+
+        return unescaped.toString();
+    }
+
+    /**
+     * Counts a run of rows in memory.
+     * Every distinct answer is only parsed once, and distinct answers are canonicalized in parallel.
+     *
+     * @param rows Rows of questionId, target and test.
+     * @return Sorted map from escaped questionId, tab, escaped canonical key, to count.
+     */
+    static TreeMap<String, Long> countRun(final List<String[]> rows) {
+
+        // Count raw (question, answer) pairs first: most rows are exact repeats.
+        HashMap<Pair<String, String>, Long> raw = new HashMap<>();
+
+        for (String[] row : rows) {
+            raw.merge(new Pair<>(row[0], row[2]), 1L, Long::sum);
+        }
+
+        HashMap<String, String> keys = new HashMap<>();
+
+        for (Pair<String, String> p : raw.keySet()) {
+            keys.put(p.getSecond(), null);
+        }
+
+        keys.keySet().parallelStream()
+                .map(test -> new Pair<>(test, canonicalKey(test)))
+                .collect(Collectors.toList())
+                .forEach(p -> keys.put(p.getFirst(), p.getSecond()));
+
+        TreeMap<String, Long> counts = new TreeMap<>();
+
+        for (Map.Entry<Pair<String, String>, Long> e : raw.entrySet()) {
+            String key = escape(e.getKey().getFirst()) + "\t" + escape(keys.get(e.getKey().getSecond()));
+            counts.merge(key, e.getValue(), Long::sum);
+        }
+
+        return counts;
+    }
+
+    /**
+     * Writes a sorted run to a temporary file.
+     *
+     * @param counts Sorted counts of run.
+     * @param directory Directory for temporary files.
+     * @return Path of run file.
+     * @throws IOException Failed to write run file.
+     */
+    private static Path writeRun(final TreeMap<String, Long> counts, final Path directory) throws IOException {
+
+        Path run = Files.createTempFile(directory, "run", ".tsv");
+
+        try (BufferedWriter out = Files.newBufferedWriter(run, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Long> e : counts.entrySet()) {
+                out.write(e.getKey());
+                out.write('\t');
+                out.write(Long.toString(e.getValue()));
+                out.write('\n');
+            }
+        }
+
+        return run;
+    }
+
+    /**
+     * Head of a run file during merging.
+     */
+    private static final class RunHead {
+
+        /**
+         * Reader for the rest of the run.
+         */
+        private final BufferedReader reader;
+
+        /**
+         * Key of current record.
+         */
+        private String key;
+
+        /**
+         * Count of current record.
+         */
+        private long count;
+
+        /**
+         * Constructor method of RunHead.
+         *
+         * @param reader Reader for the run.
+         */
+        RunHead(final BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * Moves to next record of run.
+         *
+         * @return False if the run is exhausted.
+         * @throws IOException Failed to read run.
+         */
+        boolean advance() throws IOException {
+
+            String line = reader.readLine();
+
+            if (line == null) {
+                reader.close();
+                return false;
+            }
+
+            int tab = line.lastIndexOf('\t');
+            key = line.substring(0, tab);
+            count = Long.parseLong(line.substring(tab + 1));
+            return true;
+        }
+    }
+
+    /**
+     * Merges sorted runs, adding up counts of equal keys, and writes the result as JSON lines.
+     *
+     * @param runs Paths of run files.
+     * @param out Writer for the result.
+     * @return Number of distinct (question, answer) pairs.
+     * @throws IOException Failed to read runs or write result.
+     */
+    static long merge(final List<Path> runs, final Writer out) throws IOException {
+
+        PriorityQueue<RunHead> heads = new PriorityQueue<>((a, b) -> a.key.compareTo(b.key));
+
+        for (Path run : runs) {
+            RunHead head = new RunHead(Files.newBufferedReader(run, StandardCharsets.UTF_8));
+
+            if (head.advance()) {
+                heads.add(head);
+            }
+        }
+
+        long distinct = 0;
+
+        while (!heads.isEmpty()) {
+
+            String key = heads.peek().key;
+            long count = 0;
+
+            while (!heads.isEmpty() && heads.peek().key.equals(key)) {
+                RunHead head = heads.poll();
+                count += head.count;
+
+                if (head.advance()) {
+                    heads.add(head);
+                }
+            }
+
+            int tab = key.indexOf('\t');
+            ObjectNode node = MAPPER.createObjectNode();
+            node.put("questionId", unescape(key.substring(0, tab)));
+            node.put("answer", unescape(key.substring(tab + 1)));
+            node.put("count", count);
+            out.write(MAPPER.writeValueAsString(node));
+            out.write('\n');
+            distinct += 1;
+        }
+
+        return distinct;
+    }
+
+    /**
+     * Main method of AnswerFrequency.
+     *
+     * @param args Path of answer log, path of output, and optionally number of rows per run.
+     * @throws IOException Failed to read log or write output.
+     */
+    public static void main(final String[] args) throws IOException {
+
+        if (args.length < 2) {
+            System.out.println("Usage: AnswerFrequency answers.(jsonl|csv) counts.jsonl [rowsPerRun]");
+            return;
+        }
+
+        boolean csv = args[0].toLowerCase().endsWith(".csv");
+        int runSize = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_RUN_SIZE;
+        Path directory = Files.createTempDirectory("answer-frequency");
+        ArrayList<Path> runs = new ArrayList<>();
+        long rows = 0;
+        long start = System.nanoTime();
+
+        try {
+            try (BufferedReader reader = new BufferedReader(new MappedFileReader(Paths.get(args[0])))) {
+
+                ArrayList<String[]> run = new ArrayList<>();
+                String[] row;
+
+                do {
+                    row = Regrader.readRow(reader, csv);
+
+                    if (row != null && rows == 0 && csv && "questionId".equals(row[0])) {
+                        // Header row.
+                        row = Regrader.readRow(reader, csv);
+                    }
+
+                    if (row != null) {
+                        run.add(row);
+                        rows += 1;
+                    }
+
+                    if (run.size() == runSize || (row == null && !run.isEmpty())) {
+                        runs.add(writeRun(countRun(run), directory));
+                        run.clear();
+                    }
+                } while (row != null);
+            }
+
+            try (Writer out = Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+                long distinct = merge(runs, out);
+                System.out.println("Counted " + rows + " answers, " + distinct + " distinct per question, in "
+                        + (System.nanoTime() - start) / 1000000 + " ms.");
+            }
+
+        } finally {
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+
+            Files.deleteIfExists(directory);
+        }
+    }
+}
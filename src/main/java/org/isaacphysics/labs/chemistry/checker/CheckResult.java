@@ -0,0 +1,302 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of checking user input against a target with {@link ChemistryChecker}.
+ * <p>
+ *     Holds the same information as a response of the /check endpoint (see {@link RunParser#check(String, String)}),
+ *     plus whether the target contains errors. Properties that only apply to some types of statement are null for the
+ *     others. Results are immutable, and can be shared between threads.
+ * </p>
+ */
+public final class CheckResult {
+
+    /**
+     * Result of comparison; never modified, and never handed out.
+     */
+    private final ObjectNode node;
+
+    /**
+     * Constructor method of CheckResult.
+     *
+     * @param node Result of {@link RunParser#compare}; not modified afterwards.
+     */
+    CheckResult(final ObjectNode node) {
+        this.node = node;
+    }
+
+    /**
+     * Reads an optional boolean property.
+     *
+     * @param field Name of property.
+     * @return Value of property, or null if it does not apply.
+     */
+    private Boolean optional(final String field) {
+        JsonNode value = node.get(field);
+        return (value == null) ? null : value.asBoolean();
+    }
+
+    /**
+     * Returns the user input, as given.
+     *
+     * @return The user input.
+     */
+    public String getTestString() {
+        return node.get("testString").asText();
+    }
+
+    /**
+     * Returns the target, as given.
+     *
+     * @return The target.
+     */
+    public String getTargetString() {
+        return node.get("targetString").asText();
+    }
+
+    /**
+     * Returns the parsed user input, in mhchem format.
+     *
+     * @return The parsed user input.
+     */
+    public String getTest() {
+        return node.get("test").asText();
+    }
+
+    /**
+     * Returns the parsed target, in mhchem format.
+     *
+     * @return The parsed target.
+     */
+    public String getTarget() {
+        return node.get("target").asText();
+    }
+
+    /**
+     * Determines if the user input is equivalent to the target.
+     *
+     * @return True if user input is equivalent to target.
+     */
+    public boolean isEqual() {
+        return node.get("equal").asBoolean();
+    }
+
+    /**
+     * Determines if the user input contains error terms.
+     *
+     * @return True if user input contains error terms.
+     */
+    public boolean containsError() {
+        return node.get("containsError").asBoolean();
+    }
+
+    /**
+     * Determines if the target contains error terms, which means the target itself is wrong.
+     *
+     * @return True if target contains error terms, null for known wrong answers.
+     */
+    public Boolean targetContainsError() {
+        return optional("targetContainsError");
+    }
+
+    /**
+     * Determines if the user input is a known wrong answer of the target.
+     *
+     * @return True if user input is in the catalogue of known wrong answers.
+     */
+    public boolean isKnownWrongAnswer() {
+        return node.path("knownWrongAnswer").asBoolean(false);
+    }
+
+    /**
+     * Returns the feedback for a known wrong answer.
+     *
+     * @return Feedback from the catalogue, or null if user input is not a known wrong answer.
+     */
+    public String getFeedback() {
+        JsonNode feedback = node.get("feedback");
+        return (feedback == null) ? null : feedback.asText();
+    }
+
+    /**
+     * Determines if user input and target are different types of statement.
+     *
+     * @return True if types differ, null for known wrong answers.
+     */
+    public Boolean isTypeMismatch() {
+        return optional("typeMismatch");
+    }
+
+    /**
+     * Returns the type of the target: "expression", "equation", "nuclearexpression" or "nuclearequation".
+     *
+     * @return Type of target, or null for known wrong answers.
+     */
+    public String getExpectedType() {
+        JsonNode type = node.get("expectedType");
+        return (type == null) ? null : type.asText();
+    }
+
+    /**
+     * Returns the type of the user input, as {@link #getExpectedType()}.
+     *
+     * @return Type of user input, or null for known wrong answers.
+     */
+    public String getReceivedType() {
+        JsonNode type = node.get("receivedType");
+        return (type == null) ? null : type.asText();
+    }
+
+    /**
+     * Determines if user input is equivalent to target, disregarding state symbols and coefficients.
+     *
+     * @return True if weakly equivalent, null for known wrong answers.
+     */
+    public Boolean isWeaklyEquivalent() {
+        return optional("weaklyEquivalent");
+    }
+
+    /**
+     * Determines if equal terms of user input and target have the same coefficients. Chemical targets only.
+     *
+     * @return True if coefficients are the same, or null if not applicable.
+     */
+    public Boolean isSameCoefficient() {
+        return optional("sameCoefficient");
+    }
+
+    /**
+     * Determines if equal terms of user input and target have the same state symbols. Chemical targets only.
+     *
+     * @return True if state symbols are the same, or null if not applicable.
+     */
+    public Boolean isSameState() {
+        return optional("sameState");
+    }
+
+    /**
+     * Determines if user input uses the same arrow as target. Chemical equations only.
+     *
+     * @return True if arrows are the same, or null if not applicable.
+     */
+    public Boolean isSameArrow() {
+        return optional("sameArrow");
+    }
+
+    /**
+     * Determines if the user input is balanced. Equations only.
+     *
+     * @return True if user input is balanced, or null if not applicable.
+     */
+    public Boolean isBalanced() {
+        return optional("isBalanced");
+    }
+
+    /**
+     * Determines if atom counts of the user input are balanced. Chemical equations only.
+     *
+     * @return True if atom counts are balanced, or null if not applicable.
+     */
+    public Boolean isBalancedAtoms() {
+        return optional("balancedAtoms");
+    }
+
+    /**
+     * Determines if charges of the user input are balanced. Chemical equations only.
+     *
+     * @return True if charges are balanced, or null if not applicable.
+     */
+    public Boolean isBalancedCharge() {
+        return optional("balancedCharge");
+    }
+
+    /**
+     * Determines if atomic numbers of the user input are balanced. Nuclear equations only.
+     *
+     * @return True if atomic numbers are balanced, or null if not applicable.
+     */
+    public Boolean isBalancedAtomic() {
+        return optional("balancedAtomic");
+    }
+
+    /**
+     * Determines if mass numbers of the user input are balanced. Nuclear equations only.
+     *
+     * @return True if mass numbers are balanced, or null if not applicable.
+     */
+    public Boolean isBalancedMass() {
+        return optional("balancedMass");
+    }
+
+    /**
+     * Determines if atomic numbers of isotopes in the user input match their element symbols. Nuclear targets only.
+     *
+     * @return True if atomic numbers are valid, or null if not applicable.
+     */
+    public Boolean isValidAtomicNumber() {
+        return optional("validAtomicNumber");
+    }
+
+    /**
+     * Returns the terms of the user input that do not appear in the target.
+     *
+     * @return Wrong terms in mhchem format, empty for known wrong answers.
+     */
+    public List<String> getWrongTerms() {
+
+        ArrayList<String> terms = new ArrayList<>();
+
+        for (JsonNode term : node.path("wrongTerms")) {
+            terms.add(term.asText());
+        }
+
+        return Collections.unmodifiableList(terms);
+    }
+
+    /**
+     * Returns the result as a JSON object, in the shape of a /check response plus field targetContainsError.
+     *
+     * @return A copy of the result, which may be modified.
+     */
+    public ObjectNode toJson() {
+        return node.deepCopy();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        return o instanceof CheckResult && node.equals(((CheckResult) o).node);
+    }
+
+    @Override
+    public int hashCode() {
+        return node.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return node.toString();
+    }
+}
@@ -0,0 +1,546 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import org.eclipse.jetty.server.ConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.eclipse.jetty.util.thread.ExecutorThreadPool;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Standalone launcher running the checker in an embedded Jetty, without Maven or a web.xml.
+ * <p>
+ *     Usage: <code>java [-Dchecker.port=5000 ...] -jar chemistry-checker-jar-with-dependencies.jar</code>. The servlets
+ *     of web.xml are wired up programmatically, and the server is tuned through system properties:
+ *     <ul>
+ *         <li>checker.port: Port to listen on (default 5000).</li>
+ *         <li>checker.maxThreads, checker.minThreads: Size of request thread pool (default 64 and 8).</li>
+ *         <li>checker.threadIdleTimeout: Time before idle pool threads stop, in ms (default 60000).</li>
+ *         <li>checker.acceptors, checker.selectors: Number of acceptor and selector threads (default -1, i.e.
+ *         chosen by Jetty from the number of processors).</li>
+ *         <li>checker.idleTimeout: Time before idle connections are closed, in ms (default 30000).</li>
+ *         <li>checker.maxRequestSize: Largest request body accepted, in bytes (default 65536).</li>
+ *         <li>checker.maxHeaderSize: Largest request header accepted, in bytes (default 8192).</li>
+ *         <li>checker.virtualThreads: If true, every request runs on a virtual thread of its own, instead of on the
+ *         pool above, and grading is handed to {@link GradingExecutor} (default false). Needs Java 21; on older
+ *         JVMs the server falls back to the pool.</li>
+ *         <li>checker.compressionMinSize: Smallest response compressed with gzip for clients that accept it, in bytes
+ *         (default 256); -1 to never compress.</li>
+ *         <li>checker.http2: If true, the connector also speaks cleartext HTTP/2 (h2c), both with prior knowledge and
+ *         by upgrade from HTTP/1.1 (default true). Needs jetty's http2-server on the class path, which the http2
+ *         profile of pom.xml adds; without it the server only speaks HTTP/1.1.</li>
+ *     </ul>
+ *     Statement cache and warm-up are configured by their own properties, see {@link StatementCache} and
+ *     {@link WarmUp}.
+ * </p>
+ * <p>
+ *     Every servlet is mapped to a single exact path, so requests are dispatched by a small handler on jetty-server
+ *     alone, without the servlet container of jetty-servlet.
+ * </p>
+ */
+public final class CheckerServer {
+
+    /**
+     * Default port.
+     */
+    private static final int DEFAULT_PORT = 5000;
+
+    /**
+     * Default maximum number of request threads. Grading is CPU bound, so few threads suffice.
+     */
+    private static final int DEFAULT_MAX_THREADS = 64;
+
+    /**
+     * Default minimum number of request threads.
+     */
+    private static final int DEFAULT_MIN_THREADS = 8;
+
+    /**
+     * Default time before idle pool threads stop, in ms.
+     */
+    private static final int DEFAULT_THREAD_IDLE_TIMEOUT = 60000;
+
+    /**
+     * Default time before idle connections are closed, in ms.
+     */
+    private static final int DEFAULT_IDLE_TIMEOUT = 30000;
+
+    /**
+     * Default largest request body accepted, in bytes. mhchem answers are short.
+     */
+    private static final int DEFAULT_MAX_REQUEST_SIZE = 65536;
+
+    /**
+     * Default largest request header accepted, in bytes.
+     */
+    private static final int DEFAULT_MAX_HEADER_SIZE = 8192;
+
+    /**
+     * Default smallest response compressed, in bytes. Smaller responses gain little.
+     */
+    private static final int DEFAULT_COMPRESSION_MIN_SIZE = 256;
+
+    /**
+     * Connection factory of cleartext HTTP/2 in jetty's http2-server.
+     */
+    private static final String H2C_FACTORY = "org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory";
+
+    /**
+     * Constructor method of CheckerServer.
+     * Set to private, because we don't want people to instantiate an utility class.
+     */
+    private CheckerServer() {
+        // Nothing here.
+    }
+
+    /**
+     * Handler dispatching requests to servlets by exact path, with a default servlet for all other paths.
+     * Requests whose declared body is larger than a limit are rejected with 413 before any servlet reads them, and
+     * requests whose body turns out larger while it is read are answered with 413 instead of the servlet's answer.
+     */
+    private static final class ServletDispatcher extends AbstractHandler {
+
+        /**
+         * Servlets by path, in the order they are initialised.
+         */
+        private final LinkedHashMap<String, HttpServlet> servlets = new LinkedHashMap<>();
+
+        /**
+         * Servlet for paths not in map.
+         */
+        private final HttpServlet defaultServlet;
+
+        /**
+         * Largest request body accepted, in bytes.
+         */
+        private final long maxRequestSize;
+
+        /**
+         * Context of servlets.
+         */
+        private final ServletContext servletContext;
+
+        /**
+         * Constructor method of ServletDispatcher.
+         *
+         * @param defaultServlet Servlet for paths without a servlet of their own.
+         * @param maxRequestSize Largest request body accepted, in bytes.
+         * @param servletContext Context of servlets.
+         */
+        ServletDispatcher(final HttpServlet defaultServlet, final long maxRequestSize,
+                          final ServletContext servletContext) {
+            this.defaultServlet = defaultServlet;
+            this.maxRequestSize = maxRequestSize;
+            this.servletContext = servletContext;
+        }
+
+        /**
+         * Maps a servlet to a path.
+         *
+         * @param path The path.
+         * @param servlet The servlet.
+         */
+        void addServlet(final String path, final HttpServlet servlet) {
+            servlets.put(path, servlet);
+        }
+
+        /**
+         * Initialises a servlet, without init parameters, so it falls back to system properties.
+         *
+         * @param servlet The servlet.
+         * @throws ServletException Servlet failed to initialise.
+         */
+        private void init(final HttpServlet servlet) throws ServletException {
+            servlet.init(new ServletConfig() {
+                @Override
+                public String getServletName() {
+                    return servlet.getClass().getSimpleName();
+                }
+
+                @Override
+                public ServletContext getServletContext() {
+                    return servletContext;
+                }
+
+                @Override
+                public String getInitParameter(final String name) {
+                    return null;
+                }
+
+                @Override
+                public Enumeration<String> getInitParameterNames() {
+                    return Collections.emptyEnumeration();
+                }
+            });
+        }
+
+        @Override
+        protected void doStart() throws Exception {
+
+            for (HttpServlet servlet : servlets.values()) {
+                init(servlet);
+            }
+
+            init(defaultServlet);
+            super.doStart();
+        }
+
+        @Override
+        protected void doStop() throws Exception {
+            super.doStop();
+
+            for (HttpServlet servlet : servlets.values()) {
+                servlet.destroy();
+            }
+
+            defaultServlet.destroy();
+        }
+
+        @Override
+        public void handle(final String target, final Request baseRequest, final HttpServletRequest request,
+                           final HttpServletResponse response) throws IOException, ServletException {
+
+            baseRequest.setHandled(true);
+
+            if (request.getContentLengthLong() > maxRequestSize) {
+                response.sendError(413);
+                return;
+            }
+
+            // Bodies without a declared length, e.g. chunked ones, are counted as they are read.
+            LimitedRequest limited = new LimitedRequest(request, maxRequestSize);
+            HttpServlet servlet = servlets.get(target);
+            (servlet == null ? defaultServlet : servlet).service(limited, response);
+
+            if (limited.isExceeded() && !response.isCommitted()) {
+                response.reset();
+                response.sendError(413);
+            }
+        }
+    }
+
+    /**
+     * Request whose body fails to read past a limit, so servlets never buffer more than the limit.
+     * Text bodies read through {@link #getReader()} are limited in characters rather than bytes.
+     */
+    private static final class LimitedRequest extends HttpServletRequestWrapper {
+
+        /**
+         * Largest body accepted, in bytes.
+         */
+        private final long limit;
+
+        /**
+         * Bytes or characters of body read so far.
+         */
+        private long read = 0;
+
+        /**
+         * Whether reading went past the limit.
+         */
+        private boolean exceeded = false;
+
+        /**
+         * Constructor method of LimitedRequest.
+         *
+         * @param request The request.
+         * @param limit Largest body accepted, in bytes.
+         */
+        LimitedRequest(final HttpServletRequest request, final long limit) {
+            super(request);
+            this.limit = limit;
+        }
+
+        /**
+         * Reports whether reading went past the limit.
+         *
+         * @return True if the body was larger than the limit.
+         */
+        boolean isExceeded() {
+            return exceeded;
+        }
+
+        /**
+         * Counts what was read of the body.
+         *
+         * @param n Number of bytes or characters read.
+         * @throws IOException Body is larger than the limit.
+         */
+        private void count(final int n) throws IOException {
+
+            read += n;
+
+            if (read > limit) {
+                exceeded = true;
+                throw new IOException("Request body larger than " + limit + " bytes");
+            }
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+
+            ServletInputStream in = super.getInputStream();
+
+            return new ServletInputStream() {
+                @Override
+                public int read() throws IOException {
+                    int c = in.read();
+
+                    if (c >= 0) {
+                        count(1);
+                    }
+
+                    return c;
+                }
+
+                @Override
+                public int read(final byte[] b, final int off, final int len) throws IOException {
+                    int n = in.read(b, off, len);
+
+                    if (n > 0) {
+                        count(n);
+                    }
+
+                    return n;
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return in.isFinished();
+                }
+
+                @Override
+                public boolean isReady() {
+                    return in.isReady();
+                }
+
+                @Override
+                public void setReadListener(final ReadListener readListener) {
+                    in.setReadListener(readListener);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() throws IOException {
+
+            BufferedReader reader = super.getReader();
+
+            return new BufferedReader(new Reader() {
+                @Override
+                public int read(final char[] cbuf, final int off, final int len) throws IOException {
+                    int n = reader.read(cbuf, off, len);
+
+                    if (n > 0) {
+                        count(n);
+                    }
+
+                    return n;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    reader.close();
+                }
+            });
+        }
+    }
+
+    /**
+     * Creates an executor starting a virtual thread per task.
+     * Looked up reflectively, so the checker still builds and runs on Java 8.
+     *
+     * @return The executor, or null if the JVM has no virtual threads.
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Creates the connection factory of cleartext HTTP/2.
+     * Looked up reflectively, as http2-server is an optional dependency.
+     *
+     * @param config HTTP configuration shared with HTTP/1.1.
+     * @return The connection factory, or null if http2-server is not on the class path.
+     */
+    static ConnectionFactory newH2cConnectionFactory(final HttpConfiguration config) {
+        try {
+            return (ConnectionFactory) Class.forName(H2C_FACTORY).getConstructor(HttpConfiguration.class)
+                    .newInstance(config);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Builds the server, with the servlets of web.xml, in the thread mode chosen by checker.virtualThreads.
+     *
+     * @param port Port to listen on; 0 for any free port.
+     * @return The server, not started yet.
+     */
+    static Server createServer(final int port) {
+        return createServer(port, Boolean.getBoolean("checker.virtualThreads"));
+    }
+
+    /**
+     * Builds the server, with the servlets of web.xml.
+     *
+     * @param port Port to listen on; 0 for any free port.
+     * @param virtualThreads True to run every request on a virtual thread, if the JVM has them.
+     * @return The server, not started yet.
+     */
+    static Server createServer(final int port, final boolean virtualThreads) {
+
+        ExecutorService virtualExecutor = virtualThreads ? newVirtualThreadExecutor() : null;
+        ThreadPool threadPool;
+
+        if (virtualExecutor != null) {
+            threadPool = new ExecutorThreadPool(virtualExecutor);
+        } else {
+            if (virtualThreads) {
+                System.out.println("WARN: No virtual threads on Java " + System.getProperty("java.version")
+                        + ", using a pool of platform threads.");
+            }
+
+            QueuedThreadPool queuedThreadPool = new QueuedThreadPool(
+                    Integer.getInteger("checker.maxThreads", DEFAULT_MAX_THREADS),
+                    Integer.getInteger("checker.minThreads", DEFAULT_MIN_THREADS),
+                    Integer.getInteger("checker.threadIdleTimeout", DEFAULT_THREAD_IDLE_TIMEOUT));
+            queuedThreadPool.setName("checker");
+            threadPool = queuedThreadPool;
+        }
+
+        Server server = new Server(threadPool);
+
+        if (virtualExecutor != null) {
+            // Request threads are cheap and plenty; CPU-bound grading gets one platform thread per core.
+            GradingExecutor.start(Runtime.getRuntime().availableProcessors());
+
+            server.addLifeCycleListener(new AbstractLifeCycle.AbstractLifeCycleListener() {
+                @Override
+                public void lifeCycleStopped(final LifeCycle event) {
+                    GradingExecutor.stop();
+                }
+            });
+        }
+
+        HttpConfiguration config = new HttpConfiguration();
+        config.setRequestHeaderSize(Integer.getInteger("checker.maxHeaderSize", DEFAULT_MAX_HEADER_SIZE));
+        config.setSendServerVersion(false);
+
+        ConnectionFactory h2c = Boolean.parseBoolean(System.getProperty("checker.http2", "true"))
+                ? newH2cConnectionFactory(config) : null;
+        ConnectionFactory[] factories = (h2c == null)
+                ? new ConnectionFactory[] {new HttpConnectionFactory(config)}
+                : new ConnectionFactory[] {new HttpConnectionFactory(config), h2c};
+
+        ServerConnector connector = new ServerConnector(server,
+                Integer.getInteger("checker.acceptors", -1), Integer.getInteger("checker.selectors", -1),
+                factories);
+        connector.setPort(port);
+        connector.setIdleTimeout(Integer.getInteger("checker.idleTimeout", DEFAULT_IDLE_TIMEOUT));
+        server.addConnector(connector);
+
+        int maxRequestSize = Integer.getInteger("checker.maxRequestSize", DEFAULT_MAX_REQUEST_SIZE);
+
+        ContextHandler context = new ContextHandler("/");
+        context.setMaxFormContentSize(maxRequestSize);
+        context.addEventListener(new WarmUp());
+
+        ServletDispatcher dispatcher = new ServletDispatcher(new StatusServlet(), maxRequestSize,
+                context.getServletContext());
+
+        // The check servlet comes first, so catalogue and statement cache are loaded before serving.
+        dispatcher.addServlet("/check", new CheckerServlet());
+        dispatcher.addServlet("/parse", new ParserServlet());
+        dispatcher.addServlet("/parse_form", new FormParserServlet());
+        dispatcher.addServlet("/parse_document", new DocumentParserServlet());
+        dispatcher.addServlet("/ready", new ReadinessServlet());
+
+        context.setHandler(dispatcher);
+
+        int compressionMinSize = Integer.getInteger("checker.compressionMinSize", DEFAULT_COMPRESSION_MIN_SIZE);
+
+        if (compressionMinSize < 0) {
+            server.setHandler(context);
+        } else {
+            // Pretty-printed JSON with repeated keys shrinks well; POST is compressed too, as most endpoints use it.
+            GzipHandler gzip = new GzipHandler();
+            gzip.setMinGzipSize(compressionMinSize);
+            gzip.setIncludedMethods("GET", "POST");
+            gzip.setHandler(context);
+            server.setHandler(gzip);
+        }
+
+        return server;
+    }
+
+    /**
+     * Main method of CheckerServer.
+     *
+     * @param args No use at all.
+     * @throws Exception Server failed to start.
+     */
+    public static void main(final String[] args) throws Exception {
+
+        long start = System.nanoTime();
+        Server server = createServer(Integer.getInteger("checker.port", DEFAULT_PORT));
+        server.start();
+
+        long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+        System.out.println("Started chemistry checker on port " + ((ServerConnector) server.getConnectors()[0])
+                .getLocalPort() + " (" + String.join(", ", server.getConnectors()[0].getProtocols()) + ")"
+                + (GradingExecutor.isStarted() ? " with virtual threads" : "") + " in "
+                + (System.nanoTime() - start) / 1000000 + " ms (" + uptime
+                + " ms since JVM start).");
+
+        server.join();
+    }
+}
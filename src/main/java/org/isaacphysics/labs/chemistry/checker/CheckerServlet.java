@@ -16,13 +16,12 @@
 
 package org.isaacphysics.labs.chemistry.checker;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
+import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.HashMap;
 
 /**
@@ -32,28 +31,80 @@ import java.util.HashMap;
  */
 public class CheckerServlet extends HttpServlet {
 
+    /**
+     * Grading core, shared with the other front ends unless this servlet has a catalogue of its own.
+     */
+    private GradingCore core = null;
+
+    /**
+     * Loads the grading core, with its catalogue of known wrong answers if one is configured.
+     * The path of the catalogue is taken from servlet init parameter "catalogue",
+     * falling back to system property "checker.catalogue" of the shared core.
+     *
+     * @throws ServletException Catalogue file cannot be read.
+     */
     @Override
-    protected void doPost(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+    public void init() throws ServletException {
 
-        System.out.println("==================================================");
+        String path = getInitParameter("catalogue");
 
-        BufferedReader requestStringReader = request.getReader();
-        String requestString = "";
-        String line;
+        try {
+            core = (path == null) ? GradingCore.getShared() : GradingCore.load(path);
+        } catch (IOException | UncheckedIOException e) {
+            throw new ServletException("Cannot read wrong answer catalogue", e);
+        }
+    }
 
-        // Read the JSON object
-        while ((line = requestStringReader.readLine()) != null) {
+    /**
+     * Same as POST, with target and test as query parameters, so results can be cached by browsers and proxies.
+     * See {@link HttpCaching}.
+     *
+     * @param request The request.
+     * @param response The response.
+     * @throws IOException Failed to write response.
+     */
+    @Override
+    protected void doGet(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
 
-            requestString += line;
+        String target = request.getParameter("target");
+        String test = request.getParameter("test");
+        WireFormat format = WireFormat.ofAccept(request.getHeader("Accept"));
 
+        if (target == null || test == null) {
+            response.setStatus(400);
+            format.write(response, WireFormat.error("Bad input!"));
+            return;
         }
 
-        ObjectMapper mapper = new ObjectMapper();
+        String etag = core.checkTag(format.getMediaType(), target, test);
+
+        if (HttpCaching.notModified(request, response, etag)) {
+            return;
+        }
 
         try {
+            format.write(response, core.check(target, test));
+        } catch (Exception e) {
+            HttpCaching.noStore(response);
+            format.write(response, WireFormat.error(e.getClass().getSimpleName()));
+        }
+    }
 
-            @SuppressWarnings("unchecked")
-            HashMap<String, String> req = mapper.readValue(requestString, HashMap.class);
+    @Override
+    protected void doPost(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+
+        System.out.println("==================================================");
+
+        WireFormat format = WireFormat.ofAccept(request.getHeader("Accept"));
+
+        if (format.refuseContentType(request, response)) {
+            return;
+        }
+
+        try {
+
+            // Read the request object
+            HashMap<String, String> req = WireFormat.readRequest(request);
 
             if (req.containsKey("description")) {
                 System.out.println(req.get("description"));
@@ -62,7 +113,7 @@ public class CheckerServlet extends HttpServlet {
 
             if (req.containsKey("target") && req.containsKey("test")) {
 
-                // Get target and test mhchem expressions from JSON object
+                // Get target and test mhchem expressions from request object
                 String targetMhchemExpression = req.get("target");
                 String testMhchemExpresion = req.get("test");
 
@@ -71,8 +122,7 @@ public class CheckerServlet extends HttpServlet {
                 System.out.println("Test string: '" + testMhchemExpresion + "'");
 
                 // Return
-                String result = RunParser.check(testMhchemExpresion, targetMhchemExpression);
-                response.getWriter().println(result);
+                format.write(response, core.check(targetMhchemExpression, testMhchemExpresion));
 
             } else {
                 if (req.containsKey("target")) {
@@ -85,17 +135,15 @@ public class CheckerServlet extends HttpServlet {
                 } else {
                     System.out.println("Test string: ''");
                 }
-                response.getWriter().println("{\"error\" : \"Bad input!\"}");
                 response.setStatus(400);
+                format.write(response, WireFormat.error("Bad input!"));
                 System.out.println("ERROR: Bad input!");
             }
 
-            response.setContentType("application/json");
-
         } catch (Exception e) {
 
             // Got an exception when checking expressions.
-            response.getWriter().println("{\"error\" : \"" + e.getClass().getSimpleName() + "\"}");
+            format.write(response, WireFormat.error(e.getClass().getSimpleName()));
             System.out.println("ERROR: Parser cannot parse input!");
 
         }
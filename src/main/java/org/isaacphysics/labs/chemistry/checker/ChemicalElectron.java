@@ -50,16 +50,6 @@ public final class ChemicalElectron extends Formula {
         return "e^{-}";
     }
 
-    @Override
-    public Integer getAtomicNumber() throws NuclearException {
-        throw new NuclearException("Atomic number undefined for ChemicalElectron.");
-    }
-
-    @Override
-    public Integer getMassNumber() throws NuclearException {
-        throw new NuclearException("Mass number undefined for ChemicalElectron.");
-    }
-
     @Override
     public Fraction getCharge() {
         return ChargeFrac;
@@ -0,0 +1,211 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checker for use as a library, giving the results of the /check and /parse endpoints without HTTP or JSON.
+ * <p>
+ *     Every instance has its own statement cache, limit on input length and catalogue of known wrong answers. An
+ *     instance is meant to be created once and then shared: all methods may be called from any number of threads.
+ *     Nothing is written to the console; bad catalogue lines are reported by {@link #getCatalogueWarnings()}.
+ * </p>
+ * <pre>
+ *     ChemistryChecker checker = new ChemistryChecker();
+ *     CheckResult result = checker.check("2H2 + O2 -&gt; 2H2O", answer);
+ *     if (result.isEqual()) { ... }
+ * </pre>
+ */
+public final class ChemistryChecker {
+
+    /**
+     * Object mapper building results.
+     */
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Statements parsed by this checker.
+     */
+    private final StatementCache cache;
+
+    /**
+     * Longest input accepted, in characters.
+     */
+    private final int maxInputLength;
+
+    /**
+     * Catalogue of known wrong answers, or null if there is none.
+     */
+    private final WrongAnswerCatalogue catalogue;
+
+    /**
+     * Reports of catalogue lines that were skipped.
+     */
+    private final List<String> catalogueWarnings;
+
+    /**
+     * Constructor method of ChemistryChecker, with default limits and no catalogue.
+     */
+    public ChemistryChecker() {
+        this(StatementCache.DEFAULT_CAPACITY, GradingCore.DEFAULT_MAX_INPUT_LENGTH);
+    }
+
+    /**
+     * Constructor method of ChemistryChecker, without catalogue.
+     *
+     * @param cacheSize Maximum number of parsed statements kept; 0 to parse every input anew.
+     * @param maxInputLength Longest input accepted, in characters.
+     */
+    public ChemistryChecker(final int cacheSize, final int maxInputLength) {
+        this.cache = StatementCache.inMemory(cacheSize);
+        this.maxInputLength = maxInputLength;
+        this.catalogue = null;
+        this.catalogueWarnings = Collections.emptyList();
+    }
+
+    /**
+     * Constructor method of ChemistryChecker, with a catalogue of known wrong answers.
+     *
+     * @param cacheSize Maximum number of parsed statements kept; 0 to parse every input anew.
+     * @param maxInputLength Longest input accepted, in characters.
+     * @param catalogue Reader for the catalogue, in the format of the checker.catalogue file; not closed.
+     * @throws IOException Failed to read catalogue.
+     */
+    public ChemistryChecker(final int cacheSize, final int maxInputLength, final Reader catalogue)
+            throws IOException {
+
+        ArrayList<String> warnings = new ArrayList<>();
+
+        this.cache = StatementCache.inMemory(cacheSize);
+        this.maxInputLength = maxInputLength;
+        this.catalogue = new WrongAnswerCatalogue();
+        this.catalogue.load(catalogue, warnings::add);
+        this.catalogueWarnings = Collections.unmodifiableList(warnings);
+    }
+
+    /**
+     * Refuses inputs that are missing or too long.
+     *
+     * @param input The input.
+     * @throws IllegalArgumentException Input is null or longer than the limit.
+     */
+    private void checkInput(final String input) {
+
+        if (input == null) {
+            throw new IllegalArgumentException("Missing input");
+        }
+
+        if (input.length() > maxInputLength) {
+            throw new IllegalArgumentException("Input longer than " + maxInputLength + " characters");
+        }
+    }
+
+    /**
+     * Checks user input against a target. Malformed input is not an error: it gives a result containing errors.
+     *
+     * @param target Target string, in mhchem format.
+     * @param test User-inputted string, in mhchem format.
+     * @return Result of the check.
+     * @throws IllegalArgumentException An input is null or too long, or the parser cannot read it at all.
+     */
+    public CheckResult check(final String target, final String test) {
+
+        checkInput(target);
+        checkInput(test);
+
+        try {
+            return new CheckResult(RunParser.compare(mapper, test, target, catalogue, cache));
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Cannot parse input", e);
+        }
+    }
+
+    /**
+     * Parses a single statement.
+     *
+     * @param test The statement, in mhchem format.
+     * @return Description of the parsed statement.
+     * @throws IllegalArgumentException Input is null or too long, or the parser cannot read it at all.
+     */
+    public ParseResult parse(final String test) {
+
+        checkInput(test);
+
+        try {
+            return new ParseResult(RunParser.describe(mapper, cache.parse(test), test));
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Cannot parse input", e);
+        }
+    }
+
+    /**
+     * Returns the number of known wrong answers in the catalogue.
+     *
+     * @return Size of catalogue, 0 if there is none.
+     */
+    public int getCatalogueSize() {
+        return (catalogue == null) ? 0 : catalogue.size();
+    }
+
+    /**
+     * Returns the reports of catalogue lines that were skipped because they were malformed.
+     *
+     * @return Unmodifiable list of reports, empty if there is no catalogue.
+     */
+    public List<String> getCatalogueWarnings() {
+        return catalogueWarnings;
+    }
+
+    /**
+     * Returns the number of parsed statements currently kept.
+     *
+     * @return Number of cached statements.
+     */
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    /**
+     * Returns the number of inputs that were found in the cache.
+     *
+     * @return Number of cache hits.
+     */
+    public long getCacheHits() {
+        return cache.getHits();
+    }
+
+    /**
+     * Returns the number of inputs that had to be parsed.
+     *
+     * @return Number of cache misses.
+     */
+    public long getCacheMisses() {
+        return cache.getMisses();
+    }
+}
@@ -0,0 +1,384 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Demonstrates on one machine how routing by question raises the statement cache hit rate of a cluster.
+ * <p>
+ *     Usage: <code>ClusterDemo [nodes] [questions] [requests] [cacheSize]</code>. Starts a cluster of checker nodes
+ *     (default 3), each in a JVM of its own with a statement cache of cacheSize statements (default 400), and sends
+ *     requests (default 6000) for a number of questions (default 300) to it, from {@value #CLIENTS} client threads.
+ *     Question popularity follows Zipf's law, and every question has {@value #ANSWERS} distinct answers. This is done
+ *     twice, with a fresh cluster each time: once spreading requests over the nodes round-robin, and once through a
+ *     {@link RoutingProxy}. The statement cache hit rate of the whole cluster is reported for both.
+ * </p>
+ * <p>
+ *     Round-robin, every node sees every question, so every cache competes for the same statements. Routed, every
+ *     node only sees its share, and the cluster caches up to nodes times as many statements.
+ * </p>
+ */
+public final class ClusterDemo {
+
+    /**
+     * Default number of nodes.
+     */
+    private static final int DEFAULT_NODES = 3;
+
+    /**
+     * Default number of questions.
+     */
+    private static final int DEFAULT_QUESTIONS = 300;
+
+    /**
+     * Default number of requests.
+     */
+    private static final int DEFAULT_REQUESTS = 6000;
+
+    /**
+     * Default capacity of the statement cache of every node.
+     */
+    private static final int DEFAULT_CACHE_SIZE = 400;
+
+    /**
+     * Number of distinct answers of every question.
+     */
+    private static final int ANSWERS = 4;
+
+    /**
+     * Number of client threads.
+     */
+    private static final int CLIENTS = 4;
+
+    /**
+     * Time between attempts to reach a starting node, in ms.
+     */
+    private static final int POLL_INTERVAL = 50;
+
+    /**
+     * Time after which a starting node is given up on, in ms.
+     */
+    private static final long START_TIMEOUT = 60000;
+
+    /**
+     * Object mapper used to build requests and read metrics.
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Constructor method of ClusterDemo.
+     * Set to private, because we don't want people to instantiate an utility class.
+     */
+    private ClusterDemo() {
+        // Nothing here.
+    }
+
+    /**
+     * Builds the target of a question: the balanced combustion of an alkane.
+     *
+     * @param question Number of question.
+     * @return Target of question.
+     */
+    static String target(final int question) {
+        int n = question + 1;
+        return "2C" + n + "H" + (2 * n + 2) + " + " + (3 * n + 1) + "O2 -> " + (4 * n) + "CO2 + " + (2 * n + 2)
+                + "H2O";
+    }
+
+    /**
+     * Builds one of the answers to a question: the target with a different coefficient of the alkane.
+     *
+     * @param question Number of question.
+     * @param answer Number of answer, below ANSWERS.
+     * @return Answer to question.
+     */
+    static String answer(final int question, final int answer) {
+        int n = question + 1;
+        return (answer + 1) + "C" + n + "H" + (2 * n + 2) + " + O2 -> CO2 + H2O";
+    }
+
+    /**
+     * Draws the questions of the requests, with the popularity of question i proportional to 1 / (i + 1).
+     *
+     * @param questions Number of questions.
+     * @param requests Number of requests.
+     * @return Question of every request.
+     */
+    static int[] zipf(final int questions, final int requests) {
+
+        double[] cumulative = new double[questions];
+        double total = 0;
+
+        for (int i = 0; i < questions; i++) {
+            total += 1.0 / (i + 1);
+            cumulative[i] = total;
+        }
+
+        Random random = new Random(questions);
+        int[] drawn = new int[requests];
+
+        for (int r = 0; r < requests; r++) {
+            double x = random.nextDouble() * total;
+            int i = 0;
+
+            while (cumulative[i] < x) {
+                i++;
+            }
+
+            drawn[r] = i;
+        }
+
+        return drawn;
+    }
+
+    /**
+     * A checker node running in a JVM of its own.
+     */
+    private static final class Node {
+
+        /**
+         * Port of node.
+         */
+        private final int port;
+
+        /**
+         * Process of node.
+         */
+        private final Process process;
+
+        /**
+         * Log file of node.
+         */
+        private final File log;
+
+        /**
+         * Starts a node from the class path of this JVM, and waits until it is ready.
+         *
+         * @param cacheSize Capacity of statement cache.
+         * @throws Exception Node did not start.
+         */
+        Node(final int cacheSize) throws Exception {
+
+            try (ServerSocket socket = new ServerSocket(0)) {
+                port = socket.getLocalPort();
+            }
+
+            ArrayList<String> command = new ArrayList<>();
+            command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add("-Dchecker.port=" + port);
+            command.add("-Dchecker.cacheSize=" + cacheSize);
+            command.add("-Dchecker.warmupRounds=0");
+            command.add(CheckerServer.class.getName());
+
+            log = File.createTempFile("checker-node", ".log");
+            process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start();
+            long start = System.nanoTime();
+
+            while (true) {
+                try {
+                    if (StartupBenchmark.request(new URL(getUrl() + "/ready"), null) == 200) {
+                        return;
+                    }
+                } catch (IOException e) {
+                    // Not listening yet.
+                }
+
+                if (!process.isAlive() || (System.nanoTime() - start) / 1000000 > START_TIMEOUT) {
+                    stop();
+                    throw new IllegalStateException("Checker node on port " + port + " did not start, see " + log);
+                }
+
+                Thread.sleep(POLL_INTERVAL);
+            }
+        }
+
+        /**
+         * Returns the base URL of the node.
+         *
+         * @return Base URL.
+         */
+        String getUrl() {
+            return "http://localhost:" + port;
+        }
+
+        /**
+         * Reads the statement cache metrics of the node.
+         *
+         * @return Object with size, hits and misses.
+         * @throws IOException Node cannot be reached.
+         */
+        JsonNode getStatementCache() throws IOException {
+            return MAPPER.readTree(new URL(getUrl() + "/")).get("statementCache");
+        }
+
+        /**
+         * Stops the node, and deletes its log.
+         *
+         * @throws Exception Interrupted while waiting for the node to exit.
+         */
+        void stop() throws Exception {
+            process.destroy();
+            process.waitFor();
+            Files.deleteIfExists(log.toPath());
+        }
+    }
+
+    /**
+     * Runs the workload on a fresh cluster, and reports its statement cache hit rate.
+     *
+     * @param routed True to send requests through a RoutingProxy, false to spread them round-robin.
+     * @param nodeCount Number of nodes.
+     * @param questions Number of questions.
+     * @param requests Number of requests.
+     * @param cacheSize Capacity of the statement cache of every node.
+     * @return Hit rate of the cluster, between 0 and 1.
+     * @throws Exception Cluster failed.
+     */
+    static double run(final boolean routed, final int nodeCount, final int questions, final int requests,
+                      final int cacheSize) throws Exception {
+
+        ArrayList<Node> nodes = new ArrayList<>();
+        Server proxy = null;
+        ConsistentHashRouter router = null;
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+
+        try {
+            ArrayList<String> urls = new ArrayList<>();
+
+            for (int i = 0; i < nodeCount; i++) {
+                nodes.add(new Node(cacheSize));
+                urls.add(nodes.get(i).getUrl());
+            }
+
+            if (routed) {
+                router = new ConsistentHashRouter(urls);
+                proxy = RoutingProxy.createServer(0, router);
+                proxy.start();
+            }
+
+            final String proxyUrl = routed
+                    ? "http://localhost:" + ((ServerConnector) proxy.getConnectors()[0]).getLocalPort() : null;
+            final int[] drawn = zipf(questions, requests);
+            final AtomicInteger next = new AtomicInteger();
+            ArrayList<Future<Integer>> failures = new ArrayList<>();
+            long start = System.nanoTime();
+
+            for (int c = 0; c < CLIENTS; c++) {
+                failures.add(clients.submit(() -> {
+                    int failed = 0;
+                    int r;
+
+                    while ((r = next.getAndIncrement()) < requests) {
+                        ObjectNode body = MAPPER.createObjectNode();
+                        body.put("questionId", "q" + drawn[r]);
+                        body.put("target", target(drawn[r]));
+                        body.put("test", answer(drawn[r], r % ANSWERS));
+                        String base = (proxyUrl != null) ? proxyUrl : urls.get(r % urls.size());
+
+                        if (StartupBenchmark.request(new URL(base + "/check"), MAPPER.writeValueAsString(body))
+                                != 200) {
+                            failed += 1;
+                        }
+                    }
+
+                    return failed;
+                }));
+            }
+
+            int failed = 0;
+
+            for (Future<Integer> f : failures) {
+                failed += f.get();
+            }
+
+            long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+            long hits = 0;
+            long misses = 0;
+
+            for (Node node : nodes) {
+                JsonNode cache = node.getStatementCache();
+                hits += cache.get("hits").asLong();
+                misses += cache.get("misses").asLong();
+            }
+
+            double hitRate = (hits + misses == 0) ? 0 : (double) hits / (hits + misses);
+            System.out.println(String.format("%-18s hit rate %5.1f%% (%d of %d lookups), %d req/s, %d failed%s",
+                    routed ? "Routed:" : "Round-robin:", 100 * hitRate, hits, hits + misses,
+                    requests * 1000L / millis, failed,
+                    routed ? ", " + router.getSpilled() + " spilled over" : ""));
+
+            return hitRate;
+
+        } finally {
+            clients.shutdown();
+
+            if (proxy != null) {
+                proxy.stop();
+            }
+
+            for (Node node : nodes) {
+                node.stop();
+            }
+        }
+    }
+
+    /**
+     * Main method of ClusterDemo.
+     *
+     * @param args Optionally number of nodes, questions, requests and cache size.
+     * @throws Exception Cluster failed.
+     */
+    public static void main(final String[] args) throws Exception {
+
+        int nodes = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_NODES;
+        int questions = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_QUESTIONS;
+        int requests = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_REQUESTS;
+        int cacheSize = (args.length > 3) ? Integer.parseInt(args[3]) : DEFAULT_CACHE_SIZE;
+
+        System.out.println(nodes + " nodes caching " + cacheSize + " statements each, " + questions + " questions with "
+                + ANSWERS + " answers each, " + requests + " requests:");
+
+        List<Double> rates = new ArrayList<>();
+        rates.add(run(false, nodes, questions, requests, cacheSize));
+        rates.add(run(true, nodes, questions, requests, cacheSize));
+
+        System.out.println(String.format("Routing by question changes the cluster hit rate by %+.1f points.",
+                100 * (rates.get(1) - rates.get(0))));
+    }
+}
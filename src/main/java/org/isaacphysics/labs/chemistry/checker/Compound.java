@@ -51,7 +51,7 @@ public final class Compound extends Molecule {
     /**
      * Saved atom count.
      */
-    private HashMap<String, Fraction> savedAtomCount = null;
+    private volatile HashMap<String, Fraction> savedAtomCount = null;
 
     /**
      * Constructor function of Compound.
@@ -111,6 +111,14 @@ public final class Compound extends Molecule {
         return bracketType;
     }
 
+    /**
+     * Getter method. Gets the molecules grouped in this instance, in order.
+     * @return The molecules of this instance.
+     */
+    ArrayList<Molecule> getGroups() {
+        return groups;
+    }
+
     @Override
     public String toString() {
         StringBuilder b = new StringBuilder();
@@ -157,20 +165,22 @@ public final class Compound extends Molecule {
     public HashMap<String, Fraction> getAtomCount() {
 
         if (savedAtomCount == null) {
-            savedAtomCount = new HashMap<>();
+            HashMap<String, Fraction> count = new HashMap<>();
 
             for (Molecule m : groups) {
 
                 for (String element : m.getAtomCount().keySet()) {
 
-                    if (!savedAtomCount.containsKey(element)) {
-                        savedAtomCount.put(element, m.getAtomCount().get(element).times(number));
+                    if (!count.containsKey(element)) {
+                        count.put(element, m.getAtomCount().get(element).times(number));
                     } else {
-                        savedAtomCount.put(element,
-                                savedAtomCount.get(element).plus(m.getAtomCount().get(element).times(number)));
+                        count.put(element,
+                                count.get(element).plus(m.getAtomCount().get(element).times(number)));
                     }
                 }
             }
+
+            savedAtomCount = count;
         }
 
         return savedAtomCount;
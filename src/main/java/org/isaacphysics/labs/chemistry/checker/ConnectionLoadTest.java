@@ -0,0 +1,247 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares how many slow connections the server can hold in platform-thread and virtual-thread mode.
+ * <p>
+ *     Usage: <code>ConnectionLoadTest [trickleMillis] [clients ...]</code>. For every number of clients, that many
+ *     connections post to /check and trickle their body in one byte at a time, taking trickleMillis in total (default
+ *     4000), as clients on slow networks do. Meanwhile a single well-behaved client posts to /check, and the time it
+ *     waits for its answer is reported, together with the number of slow clients answered.
+ * </p>
+ * <p>
+ *     With a pool of platform threads, a request holds its thread while the body trickles in, so once there are more
+ *     slow clients than threads, every other request waits for them. In virtual-thread mode the wait should stay
+ *     flat. Virtual-thread mode is skipped on JVMs without virtual threads.
+ * </p>
+ */
+public final class ConnectionLoadTest {
+
+    /**
+     * Default time a slow client takes to send its body, in ms.
+     */
+    private static final int DEFAULT_TRICKLE_MILLIS = 4000;
+
+    /**
+     * Default numbers of slow clients.
+     */
+    private static final int[] DEFAULT_CLIENTS = {16, 64, 256, 1024};
+
+    /**
+     * Body posted by all clients.
+     */
+    private static final byte[] BODY = "{\"target\": \"2H2 + O2 -> 2H2O\", \"test\": \"O2 + 2H2 -> 2H2O\"}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Constructor method of ConnectionLoadTest.
+     * Set to private, because we don't want people to instantiate an utility class.
+     */
+    private ConnectionLoadTest() {
+        // Nothing here.
+    }
+
+    /**
+     * Posts BODY to /check at once, and waits for the answer.
+     *
+     * @param port Port of server.
+     * @param timeout Time to wait for the answer, in ms.
+     * @return Time until the answer, in ms; or -1 if there was none.
+     */
+    static long probe(final int port, final int timeout) {
+
+        long start = System.nanoTime();
+
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/check")
+                    .openConnection();
+            connection.setConnectTimeout(timeout);
+            connection.setReadTimeout(timeout);
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(BODY);
+            }
+
+            int status = connection.getResponseCode();
+            connection.disconnect();
+            return (status == 200) ? (System.nanoTime() - start) / 1000000 : -1;
+
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Reads the status code from the start of a response.
+     *
+     * @param in Stream of the response.
+     * @return Status code, or -1 if the response does not start with a status line.
+     * @throws IOException Failed to read response.
+     */
+    private static int readStatus(final InputStream in) throws IOException {
+
+        StringBuilder line = new StringBuilder();
+        int c;
+
+        while ((c = in.read()) >= 0 && c != '\n') {
+            line.append((char) c);
+        }
+
+        String[] parts = line.toString().trim().split(" ");
+        return (parts.length > 1 && parts[0].startsWith("HTTP/")) ? Integer.parseInt(parts[1]) : -1;
+    }
+
+    /**
+     * Runs one round: opens the slow clients, trickles their bodies in, probes the server while they do, and reads
+     * their answers.
+     *
+     * @param port Port of server.
+     * @param clients Number of slow clients.
+     * @param trickleMillis Time a slow client takes to send its body, in ms.
+     * @return Time the probe waited for its answer in ms (-1 if it got none), and number of slow clients answered.
+     * @throws Exception Failed to connect, or interrupted.
+     */
+    static long[] run(final int port, final int clients, final int trickleMillis) throws Exception {
+
+        byte[] header = ("POST /check HTTP/1.1\r\nHost: localhost\r\nContent-Type: application/json\r\n"
+                + "Content-Length: " + BODY.length + "\r\nConnection: close\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII);
+        ArrayList<Socket> sockets = new ArrayList<>(clients);
+
+        try {
+            for (int i = 0; i < clients; i++) {
+                Socket socket = new Socket("localhost", port);
+                socket.setSoTimeout(trickleMillis * 3);
+                socket.getOutputStream().write(header);
+                sockets.add(socket);
+            }
+
+            // Probe once the slow requests are dispatched, well before their bodies are complete.
+            AtomicLong probeMillis = new AtomicLong(-1);
+            Thread prober = new Thread(() -> {
+                try {
+                    Thread.sleep(trickleMillis / 4);
+                    probeMillis.set(probe(port, trickleMillis * 3));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            prober.start();
+
+            for (byte b : BODY) {
+                for (Socket socket : sockets) {
+                    socket.getOutputStream().write(b);
+                }
+
+                Thread.sleep(trickleMillis / BODY.length);
+            }
+
+            long served = 0;
+
+            for (Socket socket : sockets) {
+                try {
+                    if (readStatus(socket.getInputStream()) == 200) {
+                        served += 1;
+                    }
+                } catch (IOException e) {
+                    // Not answered in time; counts as not served.
+                }
+            }
+
+            prober.join();
+            return new long[] {probeMillis.get(), served};
+
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+
+    /**
+     * Main method of ConnectionLoadTest.
+     *
+     * @param args Optionally trickle time in ms, followed by numbers of slow clients.
+     * @throws Exception Server failed to start, or load test failed.
+     */
+    public static void main(final String[] args) throws Exception {
+
+        int trickleMillis = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_TRICKLE_MILLIS;
+        int[] clients = DEFAULT_CLIENTS;
+
+        if (args.length > 1) {
+            clients = new int[args.length - 1];
+
+            for (int i = 1; i < args.length; i++) {
+                clients[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+
+        ExecutorService check = CheckerServer.newVirtualThreadExecutor();
+        boolean hasVirtualThreads = check != null;
+
+        if (hasVirtualThreads) {
+            check.shutdown();
+        } else {
+            System.out.println("No virtual threads on Java " + System.getProperty("java.version")
+                    + ", only testing platform threads.");
+        }
+
+        for (boolean virtualThreads : new boolean[] {false, true}) {
+
+            if (virtualThreads && !hasVirtualThreads) {
+                continue;
+            }
+
+            Server server = CheckerServer.createServer(0, virtualThreads);
+            server.start();
+            int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+            String mode = virtualThreads ? "virtual" : "platform";
+
+            try {
+                // Load classes and fill the statement cache before measuring.
+                probe(port, trickleMillis);
+
+                for (int n : clients) {
+                    long[] result = run(port, n, trickleMillis);
+                    System.out.println(mode + " threads, " + n + " slow clients: probe answered "
+                            + (result[0] < 0 ? "never" : "in " + result[0] + " ms") + ", " + result[1] + "/" + n
+                            + " slow clients answered.");
+                }
+            } finally {
+                server.stop();
+            }
+        }
+    }
+}
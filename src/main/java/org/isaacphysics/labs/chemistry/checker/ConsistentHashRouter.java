@@ -0,0 +1,291 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Routes grading requests to checker nodes by consistent hashing, so every node caches the statements of its own share
+ * of the questions, rather than all nodes caching the same hot set.
+ * <p>
+ *     Requests are keyed by question id, or by normalized target if there is none (see {@link #key(String, String)}),
+ *     and every node owns a number of points on a hash ring. A key belongs to the node of the first point at or after
+ *     its hash; adding or removing a node only moves the keys next to that node's points.
+ * </p>
+ * <p>
+ *     A popular question would overload its node, so loads are bounded: a node takes at most
+ *     <code>ceil(loadFactor * (requests in flight + 1) / nodes)</code> requests at a time. A request for a node at
+ *     that bound goes to the next node along the ring with room, so a hot key spills over onto the same few
+ *     neighbours every time. Callers report finished requests with {@link #release(String)}.
+ * </p>
+ * <p>
+ *     Routers are thread-safe. The hash is fixed, so gateways with the same nodes route alike.
+ * </p>
+ */
+public final class ConsistentHashRouter {
+
+    /**
+     * Default number of points of every node on the ring.
+     */
+    public static final int DEFAULT_REPLICAS = 160;
+
+    /**
+     * Default bound on the load of a node, relative to the average load.
+     */
+    public static final double DEFAULT_LOAD_FACTOR = 1.25;
+
+    /**
+     * Nodes, in the order given.
+     */
+    private final List<String> nodes;
+
+    /**
+     * Hashes of the points on the ring, ascending.
+     */
+    private final long[] points;
+
+    /**
+     * Index in nodes of the owner of each point.
+     */
+    private final int[] owners;
+
+    /**
+     * Bound on the load of a node, relative to the average load.
+     */
+    private final double loadFactor;
+
+    /**
+     * Requests in flight, by index of node.
+     */
+    private final int[] loads;
+
+    /**
+     * Total number of requests in flight.
+     */
+    private int inFlight = 0;
+
+    /**
+     * Number of requests routed.
+     */
+    private long routed = 0;
+
+    /**
+     * Number of requests routed away from their own node, because it was at its bound.
+     */
+    private long spilled = 0;
+
+    /**
+     * Constructor method of ConsistentHashRouter, with default replicas and load factor.
+     *
+     * @param nodes Names of nodes, e.g. their base URLs.
+     */
+    public ConsistentHashRouter(final List<String> nodes) {
+        this(nodes, DEFAULT_REPLICAS, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Constructor method of ConsistentHashRouter.
+     *
+     * @param nodes Names of nodes, e.g. their base URLs; no duplicates.
+     * @param replicas Number of points of every node on the ring. More points spread keys more evenly.
+     * @param loadFactor Bound on the load of a node relative to the average load; at least 1.
+     * @throws IllegalArgumentException No nodes, duplicate nodes, or bad replicas or load factor.
+     */
+    public ConsistentHashRouter(final List<String> nodes, final int replicas, final double loadFactor) {
+
+        if (nodes.isEmpty() || replicas < 1 || !(loadFactor >= 1)) {
+            throw new IllegalArgumentException("Need at least one node, one replica, and a load factor of at least 1");
+        }
+
+        if (nodes.stream().distinct().count() < nodes.size()) {
+            throw new IllegalArgumentException("Duplicate nodes: " + nodes);
+        }
+
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+        this.loadFactor = loadFactor;
+        this.loads = new int[nodes.size()];
+
+        // Sort points by hash, carrying their owners along.
+        long[][] ring = new long[nodes.size() * replicas][];
+
+        for (int n = 0; n < nodes.size(); n++) {
+            for (int r = 0; r < replicas; r++) {
+                ring[n * replicas + r] = new long[] {hash(nodes.get(n) + "#" + r), n};
+            }
+        }
+
+        Arrays.sort(ring, (a, b) -> Long.compare(a[0], b[0]));
+        this.points = new long[ring.length];
+        this.owners = new int[ring.length];
+
+        for (int i = 0; i < ring.length; i++) {
+            points[i] = ring[i][0];
+            owners[i] = (int) ring[i][1];
+        }
+    }
+
+    /**
+     * Hashes a string to 64 bits: FNV-1a over its characters, followed by the finalizer of SplitMix64 to spread
+     * similar strings over the whole ring.
+     *
+     * @param s The string.
+     * @return Hash of string.
+     */
+    static long hash(final String s) {
+
+        long h = 0xcbf29ce484222325L;
+
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+
+    /**
+     * Builds the routing key of a request.
+     *
+     * @param questionId Id of question, or null if the caller does not know it.
+     * @param target Target (or, for requests without target, the input) of the request; may be null.
+     * @return Key: the question id if there is one, otherwise the target normalized as by {@link StatementCache}.
+     */
+    public static String key(final String questionId, final String target) {
+
+        if (questionId != null && !questionId.isEmpty()) {
+            return "question:" + questionId;
+        }
+
+        return "target:" + ((target == null) ? "" : StatementCache.normalize(target));
+    }
+
+    /**
+     * Finds the first point at or after the hash of a key, wrapping around the ring.
+     *
+     * @param key The key.
+     * @return Index of point.
+     */
+    private int point(final String key) {
+
+        int i = Arrays.binarySearch(points, hash(key));
+
+        if (i < 0) {
+            i = -i - 1;
+        }
+
+        return (i == points.length) ? 0 : i;
+    }
+
+    /**
+     * Returns the node owning a key, regardless of load.
+     *
+     * @param key The key.
+     * @return The node.
+     */
+    public String route(final String key) {
+        return nodes.get(owners[point(key)]);
+    }
+
+    /**
+     * Picks the node for a request and counts it as in flight on that node. Every call must be followed by a call
+     * of {@link #release(String)} once the request is answered.
+     *
+     * @param key Key of request.
+     * @return The owner of the key if it is below its bound, otherwise the next node along the ring that is.
+     */
+    public synchronized String acquire(final String key) {
+
+        int bound = (int) Math.ceil(loadFactor * (inFlight + 1) / nodes.size());
+        int start = point(key);
+        int i = start;
+
+        // There is always a node below the bound, as the bound is at least the average load after this request.
+        while (loads[owners[i]] >= bound) {
+            i = (i + 1) % points.length;
+        }
+
+        int node = owners[i];
+
+        if (node != owners[start]) {
+            spilled += 1;
+        }
+
+        routed += 1;
+        loads[node] += 1;
+        inFlight += 1;
+        return nodes.get(node);
+    }
+
+    /**
+     * Reports that a request acquired for a node has been answered, or has failed.
+     *
+     * @param node Node returned by {@link #acquire(String)}.
+     */
+    public synchronized void release(final String node) {
+
+        int n = nodes.indexOf(node);
+
+        if (n >= 0 && loads[n] > 0) {
+            loads[n] -= 1;
+            inFlight -= 1;
+        }
+    }
+
+    /**
+     * Returns the nodes of this router.
+     *
+     * @return Unmodifiable list of nodes, in the order given.
+     */
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the number of requests in flight on a node.
+     *
+     * @param node The node.
+     * @return Number of requests acquired and not yet released.
+     */
+    public synchronized int getLoad(final String node) {
+        int n = nodes.indexOf(node);
+        return (n < 0) ? 0 : loads[n];
+    }
+
+    /**
+     * Returns the number of requests routed by {@link #acquire(String)}.
+     *
+     * @return Number of requests routed.
+     */
+    public synchronized long getRouted() {
+        return routed;
+    }
+
+    /**
+     * Returns the number of requests routed away from the owner of their key, because it was at its bound.
+     *
+     * @return Number of requests spilled over.
+     */
+    public synchronized long getSpilled() {
+        return spilled;
+    }
+}
@@ -0,0 +1,284 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Command line tool auditing a corpus of mhchem statements, such as all targets of a question bank.
+ * <p>
+ *     The corpus is cut at top-level ';' by {@link StatementSplitter}, so separators inside comments never start a
+ *     new statement. The statements are then parsed and evaluated in chunks on a ForkJoinPool, and the reports are
+ *     merged back in input order. Corpus files are memory-mapped (see {@link MappedFileReader}) and audited in
+ *     batches, so files of any size can be audited in constant memory.
+ * </p>
+ * <p>
+ *     Usage: <code>CorpusAuditor corpus.txt [report.jsonl]</code>. The report has one JSON object per statement, and
+ *     is written to standard output if no report file is given.
+ * </p>
+ */
+public final class CorpusAuditor {
+
+    /**
+     * Number of statements below which a chunk is audited without splitting it further.
+     */
+    private static final int CHUNK_SIZE = 64;
+
+    /**
+     * Number of statements read from a corpus file and audited at a time.
+     */
+    private static final int BATCH_SIZE = 65536;
+
+    /**
+     * Object mapper used to create reports.
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Constructor method of CorpusAuditor.
+     * Set to private, because we don't want people to instantiate an utility class.
+     */
+    private CorpusAuditor() {
+        // Nothing here.
+    }
+
+    /**
+     * Fork/join task auditing a range of statements.
+     */
+    private static final class AuditTask extends RecursiveTask<ArrayList<ObjectNode>> {
+
+        /**
+         * All statements of corpus.
+         */
+        private final List<String> statements;
+
+        /**
+         * Position in corpus of the first statement in list.
+         */
+        private final long firstIndex;
+
+        /**
+         * Index of first statement in range.
+         */
+        private final int from;
+
+        /**
+         * Index after last statement in range.
+         */
+        private final int to;
+
+        /**
+         * Constructor method of AuditTask.
+         *
+         * @param statements All statements of corpus.
+         * @param firstIndex Position in corpus of the first statement in list.
+         * @param from Index of first statement in range.
+         * @param to Index after last statement in range.
+         */
+        AuditTask(final List<String> statements, final long firstIndex, final int from, final int to) {
+            this.statements = statements;
+            this.firstIndex = firstIndex;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected ArrayList<ObjectNode> compute() {
+
+            if (to - from <= CHUNK_SIZE) {
+
+                ArrayList<ObjectNode> reports = new ArrayList<>(to - from);
+
+                for (int i = from; i < to; i++) {
+                    reports.add(audit(firstIndex + i, statements.get(i)));
+                }
+
+                return reports;
+            }
+
+            int middle = (from + to) >>> 1;
+            AuditTask left = new AuditTask(statements, firstIndex, from, middle);
+            AuditTask right = new AuditTask(statements, firstIndex, middle, to);
+
+            left.fork();
+            ArrayList<ObjectNode> reports = right.compute();
+            ArrayList<ObjectNode> merged = left.join();
+
+            merged.addAll(reports);
+            return merged;
+        }
+    }
+
+    /**
+     * Audits a single statement.
+     *
+     * @param index Position of statement in corpus, starting from 0.
+     * @param text Text of statement.
+     * @return JSON object reporting whether the statement parses, contains errors, is balanced and
+     * has valid atomic numbers.
+     */
+    static ObjectNode audit(final long index, final String text) {
+
+        ObjectNode node = MAPPER.createObjectNode();
+        node.put("index", index);
+        node.put("input", text);
+
+        Statement statement = IncrementalParser.parseStatement(text);
+
+        if (statement == null) {
+            node.put("error", true);
+            return node;
+        }
+
+        node.put("result", statement.toString());
+        node.put("type", statement.getClass().getSimpleName().replace("Statement", "").toLowerCase());
+        node.put("containsError", statement.containsError());
+
+        try {
+            if (statement instanceof EquationStatement) {
+                node.put("balanced", ((EquationStatement) statement).isBalanced());
+            } else if (statement instanceof NuclearEquationStatement) {
+                NuclearEquationStatement s = (NuclearEquationStatement) statement;
+                node.put("balanced", s.isBalanced());
+                node.put("validAtomicNumber", s.isValid());
+            } else if (statement instanceof NuclearExpressionStatement) {
+                node.put("validAtomicNumber", ((NuclearExpressionStatement) statement).isValid());
+            }
+        } catch (ArithmeticException e) {
+            // Counts too large to be represented.
+            node.put("error", true);
+        }
+
+        return node;
+    }
+
+    /**
+     * Audits a list of statements.
+     *
+     * @param statements Statements to be audited.
+     * @param firstIndex Position in corpus of the first statement in list.
+     * @param pool Pool to run the audit on.
+     * @return Reports of all statements, in input order.
+     */
+    static ArrayList<ObjectNode> audit(final List<String> statements, final long firstIndex,
+                                       final ForkJoinPool pool) {
+        return pool.invoke(new AuditTask(statements, firstIndex, 0, statements.size()));
+    }
+
+    /**
+     * Audits every statement in a corpus.
+     *
+     * @param corpus Text of corpus, with statements separated by ';'.
+     * @param pool Pool to run the audit on.
+     * @return Reports of all statements, in input order.
+     */
+    static ArrayList<ObjectNode> audit(final String corpus, final ForkJoinPool pool) {
+        return audit(StatementSplitter.split(corpus), 0, pool);
+    }
+
+    /**
+     * Audits every statement in a corpus, on the common pool.
+     *
+     * @param corpus Text of corpus, with statements separated by ';'.
+     * @return Reports of all statements, in input order.
+     */
+    static ArrayList<ObjectNode> audit(final String corpus) {
+        return audit(corpus, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Checks if a report shows a problem with its statement.
+     *
+     * @param report Report of a statement.
+     * @return True if statement does not parse, contains errors, is unbalanced or has invalid atomic numbers.
+     */
+    private static boolean hasProblem(final ObjectNode report) {
+        return report.has("error") || report.get("containsError").asBoolean()
+                || !report.path("balanced").asBoolean(true)
+                || !report.path("validAtomicNumber").asBoolean(true);
+    }
+
+    /**
+     * Main method of CorpusAuditor.
+     *
+     * @param args Path of corpus, optionally followed by path of report.
+     * @throws IOException Failed to read corpus or write report.
+     */
+    public static void main(final String[] args) throws IOException {
+
+        if (args.length < 1) {
+            System.out.println("Usage: CorpusAuditor corpus.txt [report.jsonl]");
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool();
+        long start = System.nanoTime();
+        long count = 0;
+        long problems = 0;
+
+        try (MappedFileReader input = new MappedFileReader(Paths.get(args[0]));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(args.length > 1
+                     ? new FileOutputStream(args[1]) : System.out, StandardCharsets.UTF_8))) {
+
+            StatementSplitter splitter = new StatementSplitter(input);
+            ArrayList<String> batch = new ArrayList<>(BATCH_SIZE);
+            String statement;
+
+            do {
+                statement = splitter.next();
+
+                if (statement != null) {
+                    batch.add(statement);
+                }
+
+                if (batch.size() == BATCH_SIZE || (statement == null && !batch.isEmpty())) {
+
+                    for (ObjectNode report : audit(batch, count, pool)) {
+
+                        if (hasProblem(report)) {
+                            problems += 1;
+                        }
+
+                        out.println(MAPPER.writeValueAsString(report));
+                    }
+
+                    count += batch.size();
+                    batch.clear();
+                }
+            } while (statement != null);
+        }
+
+        long elapsed = (System.nanoTime() - start) / 1000000;
+
+        if (args.length > 1) {
+            System.out.println("Audited " + count + " statements in " + elapsed + " ms, "
+                    + problems + " with problems.");
+        }
+    }
+}
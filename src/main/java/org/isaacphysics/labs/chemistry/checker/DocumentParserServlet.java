@@ -0,0 +1,162 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This servlet receives JSON objects that contain a whole document of ';'-separated mhchem statements, and gives the
+ * same detailed info as ParserServlet for every statement in it.
+ * <p>
+ *     Requests carrying a "documentId" are parsed incrementally: the servlet remembers the last version of each
+ *     document (see {@link IncrementalParser}) and only re-parses statements that changed since then.
+ *     The least recently used documents are forgotten once more than "maxDocuments" (init parameter,
+ *     default 1000) are remembered.
+ * </p>
+ */
+public class DocumentParserServlet extends HttpServlet {
+
+    /**
+     * Default number of documents remembered.
+     */
+    private static final int DEFAULT_MAX_DOCUMENTS = 1000;
+
+    /**
+     * Maximum number of documents remembered.
+     */
+    private int maxDocuments = DEFAULT_MAX_DOCUMENTS;
+
+    /**
+     * Incremental parsers of recently edited documents, in access order.
+     */
+    private LinkedHashMap<String, IncrementalParser> documents;
+
+    @Override
+    public void init() {
+
+        String max = getInitParameter("maxDocuments");
+
+        if (max != null) {
+            maxDocuments = Integer.parseInt(max);
+        }
+
+        documents = new LinkedHashMap<String, IncrementalParser>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, IncrementalParser> eldest) {
+                return size() > maxDocuments;
+            }
+        };
+    }
+
+    /**
+     * Finds the incremental parser of a document, creating one if the document is not remembered.
+     *
+     * @param documentId Identifier of document, or null for a one-off document.
+     * @return Incremental parser of document.
+     */
+    private IncrementalParser getParser(final String documentId) {
+
+        if (documentId == null) {
+            return new IncrementalParser();
+        }
+
+        synchronized (documents) {
+            IncrementalParser parser = documents.get(documentId);
+
+            if (parser == null) {
+                parser = new IncrementalParser();
+                documents.put(documentId, parser);
+            }
+
+            return parser;
+        }
+    }
+
+    @Override
+    protected void doPost(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+
+        System.out.println("==================================================");
+
+        WireFormat format = WireFormat.ofAccept(request.getHeader("Accept"));
+
+        if (format.refuseContentType(request, response)) {
+            return;
+        }
+
+        ObjectMapper mapper = new ObjectMapper();
+
+        try {
+            // Read the request object
+            HashMap<String, String> req = WireFormat.readRequest(request);
+
+            if (req.containsKey("test")) {
+
+                String documentId = req.get("documentId");
+                IncrementalParser parser = getParser(documentId);
+
+                ObjectNode node = mapper.createObjectNode();
+                ArrayNode statements = node.putArray("statements");
+
+                // Parsing and reading the counters must not interleave with another version of the same document.
+                synchronized (parser) {
+
+                    for (Pair<String, Statement> p : parser.parse(req.get("test"))) {
+
+                        if (p.getSecond() == null) {
+                            statements.addObject().put("input", p.getFirst()).put("error", true);
+                        } else {
+                            statements.add(RunParser.describe(mapper, p.getSecond(), p.getFirst()));
+                        }
+                    }
+
+                    node.put("documentId", documentId);
+                    node.put("reused", parser.getReused());
+                    node.put("parsed", parser.getParsed());
+                }
+
+                System.out.println("Document '" + documentId + "': parsed " + node.get("parsed")
+                        + ", reused " + node.get("reused") + " statements.");
+
+                format.write(response, node);
+
+            } else {
+                response.setStatus(400);
+                format.write(response, WireFormat.error("No input!"));
+                System.out.println("ERROR: No input!");
+            }
+
+        } catch (Exception e) {
+
+            // Got an exception when parsing the document.
+            format.write(response, WireFormat.error("Can't parse input!"));
+            System.out.println("ERROR: Parser cannot parse input!");
+
+        }
+
+        System.out.println("==================================================\n");
+    }
+}
@@ -34,10 +34,15 @@ public final class Element extends Molecule {
      */
     private Integer number;
 
+    /**
+     * Atomic number of the atom involved, or 0 if symbol is not in the periodic table.
+     */
+    private int atomicNumber;
+
     /**
      * Saved atom count.
      */
-    private HashMap<String, Fraction> savedAtomCount;
+    private volatile HashMap<String, Fraction> savedAtomCount;
 
     /**
      * Constructor function of Element.
@@ -48,6 +53,25 @@ public final class Element extends Molecule {
         super();
         element = e;
         number = n;
+        atomicNumber = (e == null) ? 0 : NuclideTable.atomicNumber(e);
+    }
+
+    /**
+     * Returns atomic number of the atom involved in this element, looked up once at construction.
+     *
+     * @return Atomic number, or 0 if the symbol is not in the periodic table.
+     */
+    int getAtomicNumber() {
+        return atomicNumber;
+    }
+
+    /**
+     * Getter function. Returns symbol of the atom involved in this element.
+     *
+     * @return Symbol of element.
+     */
+    String getSymbol() {
+        return element;
     }
 
     @Override
@@ -92,11 +116,13 @@ public final class Element extends Molecule {
     public HashMap<String, Fraction> getAtomCount() {
 
         if (savedAtomCount == null) {
-            savedAtomCount = new HashMap<>();
+            HashMap<String, Fraction> count = new HashMap<>();
 
             if (element != null) {
-                savedAtomCount.put(element, new Fraction(number, 1));
+                count.put(element, new Fraction(number, 1));
             }
+
+            savedAtomCount = count;
         }
 
         return savedAtomCount;
@@ -131,6 +131,19 @@ final class EquationStatement extends Statement {
         return this.arrow;
     }
 
+    @Override
+    String getCanonicalForm() {
+
+        String l = left.getCanonicalForm();
+        String r = right.getCanonicalForm();
+
+        if (l == null || r == null) {
+            return null;
+        }
+
+        return l + arrow.toString() + r;
+    }
+
     @Override
     public String getDotCode() {
         return "digraph chemical_syntax_tree {\n"
@@ -42,16 +42,6 @@ public final class ErrorTerm extends AbstractTerm {
         return false;
     }
 
-    @Override
-    public Fraction getMassNumber() throws NuclearException {
-        throw new NuclearException("Mass number not defined for ErrorTerm.");
-    }
-
-    @Override
-    public Fraction getAtomicNumber() throws NuclearException {
-        throw new NuclearException("Atomic number not defined for ErrorTerm.");
-    }
-
     @Override
     public HashMap<String, Fraction> getAtomCount() {
         return new HashMap<>();
@@ -17,6 +17,7 @@
 package org.isaacphysics.labs.chemistry.checker;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 
 /**
@@ -44,7 +45,12 @@ public final class Expression implements Countable {
     /**
      * Saved atom count.
      */
-    private HashMap<String, Fraction> savedAtomCount;
+    private volatile HashMap<String, Fraction> savedAtomCount;
+
+    /**
+     * True if all terms in expression are nuclear.
+     */
+    private boolean nuclear;
 
     /**
      * Construction method for Expression.
@@ -53,6 +59,7 @@ public final class Expression implements Countable {
     public Expression(final AbstractTerm t) {
         terms = new ArrayList<>();
         terms.add(t);
+        nuclear = t.isNuclear();
         dotId = dotIdTracker;
         dotIdTracker += 1;
     }
@@ -63,6 +70,7 @@ public final class Expression implements Countable {
      */
     void add(final AbstractTerm t) {
         terms.add(t);
+        nuclear = nuclear && t.isNuclear();
     }
 
     @Override
@@ -125,18 +133,21 @@ public final class Expression implements Countable {
     public HashMap<String, Fraction> getAtomCount() {
 
         if (savedAtomCount == null) {
-            savedAtomCount = new HashMap<>();
+            HashMap<String, Fraction> count = new HashMap<>();
 
             for (AbstractTerm t : terms) {
                 for (String e : t.getAtomCount().keySet()) {
-                    if (!savedAtomCount.containsKey(e)) {
-                        savedAtomCount.put(e, t.getAtomCount().get(e));
+                    if (!count.containsKey(e)) {
+                        count.put(e, t.getAtomCount().get(e));
                     } else {
-                        savedAtomCount.put(e, savedAtomCount.get(e).plus(t.getAtomCount().get(e)));
+                        count.put(e, count.get(e).plus(t.getAtomCount().get(e)));
                     }
 
                 }
             }
+
+            // Only publish the map once it is complete, as statements may be shared between threads.
+            savedAtomCount = count;
         }
 
         return savedAtomCount;
@@ -441,6 +452,29 @@ public final class Expression implements Countable {
         return toReturn;
     }
 
+    /**
+     * Returns the mhchem form of this expression with its terms sorted,
+     * so that equal expressions always give the same string.
+     *
+     * @return Canonical form of expression, or null if expression contains error terms.
+     */
+    String getCanonicalForm() {
+
+        if (containsError()) {
+            return null;
+        }
+
+        String[] sorted = new String[terms.size()];
+
+        for (int i = 0; i < terms.size(); i++) {
+            sorted[i] = terms.get(i).toString();
+        }
+
+        Arrays.sort(sorted);
+
+        return String.join(" + ", sorted);
+    }
+
     @Override
     public String getDotId() {
         return "expression_" + dotId;
@@ -486,36 +520,45 @@ public final class Expression implements Countable {
     }
 
     /**
-     * Only defined for nuclear expressions.
-     * Returns the total mass number of AbstractTerms.
+     * Checks if all terms in this expression are nuclear, i.e. if mass and atomic counts are meaningful.
+     *
+     * @return True if all terms in this expression are nuclear.
+     */
+    boolean isNuclear() {
+        return nuclear;
+    }
+
+    /**
+     * Only meaningful for nuclear expressions.
+     * Returns the total mass number of AbstractTerms. Terms that are not nuclear count as 0.
      *
      * @return Total mass number of AbstractTerms.
-     * @throws NuclearException Called this function on non-nuclear expressions.
+     * @throws ArithmeticException Total does not fit in an int.
      */
-    Fraction getMassCount() throws NuclearException {
+    int getMassCount() {
 
-        Fraction mass = terms.get(0).getMassNumber();
+        int mass = 0;
 
-        for (int i = 1; i < terms.size(); i++) {
-            mass = mass.plus(terms.get(i).getMassNumber());
+        for (AbstractTerm t : terms) {
+            mass = Math.addExact(mass, t.getMassNumber());
         }
 
         return mass;
     }
 
     /**
-     * Only defined for nuclear expressions.
-     * Returns the total atomic number of AbstractTerms.
+     * Only meaningful for nuclear expressions.
+     * Returns the total atomic number of AbstractTerms. Terms that are not nuclear count as 0.
      *
      * @return Total atomic number of AbstractTerms.
-     * @throws NuclearException Called this function on non-nuclear expressions.
+     * @throws ArithmeticException Total does not fit in an int.
      */
-    Fraction getAtomicCount() throws NuclearException {
+    int getAtomicCount() {
 
-        Fraction atomic = terms.get(0).getAtomicNumber();
+        int atomic = 0;
 
-        for (int i = 1; i < terms.size(); i++) {
-            atomic = atomic.plus(terms.get(i).getAtomicNumber());
+        for (AbstractTerm t : terms) {
+            atomic = Math.addExact(atomic, t.getAtomicNumber());
         }
 
         return atomic;
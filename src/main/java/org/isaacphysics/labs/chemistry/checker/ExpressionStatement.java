@@ -32,7 +32,7 @@ public final class ExpressionStatement extends Statement implements Countable {
     /**
      * Saved atom count.
      */
-    private HashMap<String, Fraction> savedAtomCount = null;
+    private volatile HashMap<String, Fraction> savedAtomCount = null;
 
     /**
      * Constructor method of ExpressionStatement.
@@ -90,6 +90,11 @@ public final class ExpressionStatement extends Statement implements Countable {
         return this.expr;
     }
 
+    @Override
+    String getCanonicalForm() {
+        return expr.getCanonicalForm();
+    }
+
     @Override
     public String getDotCode() {
 
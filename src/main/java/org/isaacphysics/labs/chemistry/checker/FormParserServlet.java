@@ -16,6 +16,8 @@
 
 package org.isaacphysics.labs.chemistry.checker;
 
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -34,6 +36,7 @@ public class FormParserServlet extends HttpServlet {
     protected void doPost(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
 
         System.out.println("==================================================");
+        WireFormat format = WireFormat.ofAccept(request.getHeader("Accept"));
         @SuppressWarnings("unchecked")
         Map<String, String[]> input = request.getParameterMap();
         if (input.containsKey("description")) {
@@ -42,9 +45,14 @@ public class FormParserServlet extends HttpServlet {
         }
         if (input.containsKey("test")) {
             System.out.println("Parsing: " + input.get("test")[0]);
-            String result = RunParser.parseFromString(input.get("test")[0]);
-            response.getWriter().println(result);
-            if (result.contains("ERROR")) {
+            ObjectNode result;
+            try {
+                result = GradingCore.getShared().parse(input.get("test")[0]);
+            } catch (Exception e) {
+                result = GradingCore.error(e);
+            }
+            format.write(response, result);
+            if (result.toString().contains("ERROR")) {
                 System.out.println("Parse success, but input contained errors.");
             } else {
                 System.out.println("Parse success!");
@@ -53,10 +61,9 @@ public class FormParserServlet extends HttpServlet {
                 System.out.println("WARN: Ignoring additional inputs!");
             }
         } else {
-            response.getWriter().println("{\"error\" : \"No input!\"}");
+            format.write(response, WireFormat.error("No input!"));
             System.out.println("ERROR: No input!");
         }
-        response.setContentType("application/json");
         System.out.println("==================================================\n");
     }
 
@@ -63,31 +63,11 @@ public abstract class Formula implements Countable {
     @Override
     public abstract String toString();
 
-    /**
-     * Method only applicable to nuclear formula.
-     *
-     * @return Atomic number of formula.
-     * @throws NuclearException Formula is not nuclear term.
-     */
-    public Integer getAtomicNumber() throws NuclearException {
-        throw new NuclearException("Formula does not have atomic number.");
-    }
-
-    /**
-     * Method only applicable to nuclear formula.
-     *
-     * @return Mass number of formula.
-     * @throws NuclearException Formula is not nuclear term.
-     */
-    public Integer getMassNumber() throws NuclearException {
-        throw new NuclearException("Formula does not have mass number.");
-    }
-
     /**
      * Method only applicable to nuclear formula.
      * Checks if atomic number of isotope is valid. That is:
-     * 1. Mass number of isotope is not less than its atomic number.
-     * 2. The given atomic number matches the element symbol.
+     * 1. The given atomic number matches the element symbol.
+     * 2. The nuclide with given mass and atomic number is known to exist (see {@link NuclideTable}).
      *
      * @return True if atomic number of isotope is valid.
      */
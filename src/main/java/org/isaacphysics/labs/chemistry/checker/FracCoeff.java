@@ -41,6 +41,20 @@ class FracCoeff extends Coefficient {
 
     }
 
+    /**
+     * @return Numerator of fraction, as written.
+     */
+    Integer getNumerator() {
+        return num;
+    }
+
+    /**
+     * @return Denominator of fraction, as written.
+     */
+    Integer getDenominator() {
+        return denom;
+    }
+
     @Override
     public boolean equals(final Object o) {
 
@@ -0,0 +1,255 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the tail latency of /check between front ends running on the same {@link GradingCore}: the Jetty
+ * servlets, which take a JSON body, and the http-kit server of server.clj, which takes form parameters.
+ * <p>
+ *     Usage: <code>FrontEndLoadTest clients seconds [json:url | form:url ...]</code>, e.g.
+ *     <code>FrontEndLoadTest 32 30 json:http://localhost:5000 form:http://localhost:80</code>. Each front end is
+ *     loaded in turn by the given number of clients, each sending /check requests built from the warm-up corpus
+ *     back to back for the given time; then throughput and latency percentiles are reported. Without front ends,
+ *     the Jetty front end is started in this JVM.
+ * </p>
+ */
+public final class FrontEndLoadTest {
+
+    /**
+     * Percentiles reported.
+     */
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    /**
+     * Object mapper used to build JSON bodies.
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Constructor method of FrontEndLoadTest.
+     * Set to private, because we don't want people to instantiate an utility class.
+     */
+    private FrontEndLoadTest() {
+        // Nothing here.
+    }
+
+    /**
+     * Builds the body of a /check request.
+     *
+     * @param form True for form parameters, false for JSON.
+     * @param target Target string.
+     * @param test User-inputted string.
+     * @return Body of request.
+     * @throws IOException Failed to encode body.
+     */
+    static String body(final boolean form, final String target, final String test) throws IOException {
+
+        if (form) {
+            return "target=" + URLEncoder.encode(target, "UTF-8") + "&test=" + URLEncoder.encode(test, "UTF-8");
+        }
+
+        return MAPPER.writeValueAsString(MAPPER.createObjectNode().put("target", target).put("test", test));
+    }
+
+    /**
+     * Posts a request to /check and reads the whole response.
+     *
+     * @param url URL of /check.
+     * @param form True if body is form parameters, false if it is JSON.
+     * @param body Body of request.
+     * @return True if the response is 200.
+     * @throws IOException Front end cannot be reached.
+     */
+    private static boolean post(final URL url, final boolean form, final String body) throws IOException {
+
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", form ? "application/x-www-form-urlencoded"
+                : "application/json");
+
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+
+        int code = connection.getResponseCode();
+        InputStream in = (code < 400) ? connection.getInputStream() : connection.getErrorStream();
+
+        if (in != null) {
+            try (InputStream response = in) {
+                byte[] buffer = new byte[4096];
+
+                while (response.read(buffer) > 0) {
+                    // Drain, so the connection is kept alive for the next request.
+                }
+            }
+        }
+
+        return code == 200;
+    }
+
+    /**
+     * Loads a front end and reports throughput and latency.
+     *
+     * @param url URL of /check.
+     * @param form True if the front end takes form parameters, false if it takes JSON.
+     * @param bodies Bodies of requests, sent in turn.
+     * @param clients Number of concurrent clients.
+     * @param seconds Duration of load.
+     * @return Report of throughput and latency percentiles.
+     * @throws InterruptedException Interrupted while waiting for clients.
+     */
+    static String run(final URL url, final boolean form, final List<String> bodies, final int clients,
+                      final int seconds) throws InterruptedException {
+
+        long end = System.nanoTime() + seconds * 1000000000L;
+        ArrayList<long[]> latencies = new ArrayList<>();
+        int[] counts = new int[clients];
+        AtomicLong failures = new AtomicLong();
+        ArrayList<Thread> threads = new ArrayList<>();
+
+        for (int c = 0; c < clients; c++) {
+
+            final int client = c;
+            long[] own = new long[1 << 16];
+            latencies.add(own);
+
+            Thread thread = new Thread(() -> {
+                long[] times = own;
+                int i = client;
+
+                while (System.nanoTime() < end) {
+                    long start = System.nanoTime();
+
+                    try {
+                        if (!post(url, form, bodies.get(i % bodies.size()))) {
+                            failures.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        failures.incrementAndGet();
+                    }
+
+                    if (counts[client] == times.length) {
+                        times = Arrays.copyOf(times, times.length * 2);
+                        latencies.set(client, times);
+                    }
+
+                    times[counts[client]++] = System.nanoTime() - start;
+                    i += clients;
+                }
+            });
+
+            threads.add(thread);
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        int total = 0;
+
+        for (int count : counts) {
+            total += count;
+        }
+
+        long[] all = new long[total];
+        int n = 0;
+
+        for (int c = 0; c < clients; c++) {
+            System.arraycopy(latencies.get(c), 0, all, n, counts[c]);
+            n += counts[c];
+        }
+
+        Arrays.sort(all);
+        StringBuilder report = new StringBuilder(total / seconds + " requests/s, " + failures.get() + " failed");
+
+        for (double p : PERCENTILES) {
+            long value = (total == 0) ? 0 : all[Math.min(total - 1, (int) Math.ceil(p / 100 * total) - 1)];
+            report.append(", p").append(p % 1 == 0 ? Integer.toString((int) p) : Double.toString(p))
+                    .append(' ').append(value / 1000).append(" us");
+        }
+
+        return report.append(", max ").append(total == 0 ? 0 : all[total - 1] / 1000).append(" us").toString();
+    }
+
+    /**
+     * Main method of FrontEndLoadTest.
+     *
+     * @param args Number of clients, duration in seconds, and front ends as format:url.
+     * @throws Exception Failed to read corpus or start server, or interrupted.
+     */
+    public static void main(final String[] args) throws Exception {
+
+        if (args.length < 2) {
+            System.out.println("Usage: FrontEndLoadTest clients seconds [json:url | form:url ...]");
+            return;
+        }
+
+        int clients = Integer.parseInt(args[0]);
+        int seconds = Integer.parseInt(args[1]);
+        ArrayList<String> frontEnds = new ArrayList<>(Arrays.asList(args).subList(2, args.length));
+        Server server = null;
+
+        if (frontEnds.isEmpty()) {
+            server = CheckerServer.createServer(0);
+            server.start();
+            frontEnds.add("json:http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort());
+        }
+
+        try {
+            List<String> corpus = WarmUp.corpus();
+
+            for (String frontEnd : frontEnds) {
+
+                boolean form = frontEnd.startsWith("form:");
+                URL url = new URL(frontEnd.substring(frontEnd.indexOf(':') + 1) + "/check");
+                ArrayList<String> bodies = new ArrayList<>();
+
+                for (int i = 0; i < corpus.size(); i++) {
+                    bodies.add(body(form, corpus.get(i), corpus.get((i + 1) % corpus.size())));
+                }
+
+                // Warm up front end and core, then measure.
+                run(url, form, bodies, clients, Math.max(1, seconds / 5));
+                System.out.println(frontEnd + ": " + run(url, form, bodies, clients, seconds));
+            }
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+        }
+    }
+}
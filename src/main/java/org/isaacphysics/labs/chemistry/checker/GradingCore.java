@@ -0,0 +1,579 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Grading as offered by every front end: the Jetty servlets and the http-kit server of server.clj are thin adapters
+ * translating HTTP to calls of this class, so both share caching, limits and metrics.
+ * <p>
+ *     A request goes through these steps, whichever front end it came from:
+ *     <ul>
+ *         <li>Inputs longer than checker.maxInputLength characters (default 65536) are refused.</li>
+ *         <li>Requests identical to one in flight wait for its result (see {@link RequestCoalescer}).</li>
+ *         <li>Parsing and comparison run on {@link GradingExecutor}, statements come from {@link StatementCache}.</li>
+ *         <li>With checker.sharedCache set, statements and results computed by other nodes are fetched from the
+ *         {@link SecondLevelCache} rather than computed again.</li>
+ *         <li>Requests, errors and grading time are counted, and reported by {@link #getMetrics()}.</li>
+ *     </ul>
+ *     Every operation has a blocking form for thread-per-request front ends, and an asynchronous form for front ends
+ *     that answer from callbacks. Batches of at most checker.maxBatchSize checks (default 100) are only offered
+ *     asynchronously.
+ * </p>
+ */
+public final class GradingCore {
+
+    /**
+     * Default longest input accepted, in characters. Same as the default request size limit of CheckerServer.
+     */
+    static final int DEFAULT_MAX_INPUT_LENGTH = 65536;
+
+    /**
+     * Default largest batch accepted.
+     */
+    private static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+    /**
+     * Object mapper writing JSON for front ends.
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    /**
+     * Core shared by front ends, created on first use.
+     */
+    private static GradingCore shared = null;
+
+    /**
+     * Catalogue of known wrong answers, or null if there is none.
+     */
+    private final WrongAnswerCatalogue catalogue;
+
+    /**
+     * Hash of the catalogue file, or null if there is no catalogue.
+     */
+    private final String catalogueVersion;
+
+    /**
+     * Longest input accepted, in characters.
+     */
+    private final int maxInputLength;
+
+    /**
+     * Largest batch accepted.
+     */
+    private final int maxBatchSize;
+
+    /**
+     * Cache of results shared with other nodes, or null if there is none.
+     */
+    private final SecondLevelCache secondLevel;
+
+    /**
+     * Comparisons in flight, by normalized target and test.
+     */
+    private final RequestCoalescer<Pair<String, String>, ObjectNode> checks = new RequestCoalescer<>();
+
+    /**
+     * Parses in flight, by normalized input.
+     */
+    private final RequestCoalescer<String, ObjectNode> parses = new RequestCoalescer<>();
+
+    /**
+     * Number of check requests, including those in batches.
+     */
+    private final AtomicLong checkRequests = new AtomicLong();
+
+    /**
+     * Number of parse requests.
+     */
+    private final AtomicLong parseRequests = new AtomicLong();
+
+    /**
+     * Number of requests that failed.
+     */
+    private final AtomicLong errors = new AtomicLong();
+
+    /**
+     * Time spent grading, in ns; time spent waiting for coalesced requests is not counted.
+     */
+    private final AtomicLong gradingNanos = new AtomicLong();
+
+    /**
+     * Constructor method of GradingCore.
+     *
+     * @param catalogue Catalogue of known wrong answers, or null if there is none.
+     * @param catalogueVersion Hash of the catalogue file, or null if there is no catalogue.
+     * @param maxInputLength Longest input accepted, in characters.
+     * @param maxBatchSize Largest batch accepted.
+     */
+    GradingCore(final WrongAnswerCatalogue catalogue, final String catalogueVersion, final int maxInputLength,
+                final int maxBatchSize) {
+        this(catalogue, catalogueVersion, maxInputLength, maxBatchSize, null);
+    }
+
+    /**
+     * Constructor method of GradingCore, sharing results through a second cache level.
+     *
+     * @param catalogue Catalogue of known wrong answers, or null if there is none.
+     * @param catalogueVersion Hash of the catalogue file, or null if there is no catalogue.
+     * @param maxInputLength Longest input accepted, in characters.
+     * @param maxBatchSize Largest batch accepted.
+     * @param secondLevel Cache of results shared with other nodes, or null if there is none.
+     */
+    GradingCore(final WrongAnswerCatalogue catalogue, final String catalogueVersion, final int maxInputLength,
+                final int maxBatchSize, final SecondLevelCache secondLevel) {
+        this.catalogue = catalogue;
+        this.catalogueVersion = catalogueVersion;
+        this.maxInputLength = maxInputLength;
+        this.maxBatchSize = maxBatchSize;
+        this.secondLevel = secondLevel;
+    }
+
+    /**
+     * Creates a core with the limits of system properties.
+     *
+     * @param cataloguePath Path of the catalogue of known wrong answers, or null if there is none.
+     * @return The core.
+     * @throws IOException Catalogue file cannot be read.
+     */
+    static GradingCore load(final String cataloguePath) throws IOException {
+
+        WrongAnswerCatalogue catalogue = null;
+        String catalogueVersion = null;
+
+        if (cataloguePath != null) {
+            catalogue = WrongAnswerCatalogue.fromFile(cataloguePath);
+            catalogueVersion = HttpCaching.hash(new String(Files.readAllBytes(Paths.get(cataloguePath)),
+                    StandardCharsets.UTF_8));
+            System.out.println("Loaded " + catalogue.size() + " known wrong answers from " + cataloguePath);
+        }
+
+        return new GradingCore(catalogue, catalogueVersion,
+                Integer.getInteger("checker.maxInputLength", DEFAULT_MAX_INPUT_LENGTH),
+                Integer.getInteger("checker.maxBatchSize", DEFAULT_MAX_BATCH_SIZE), SecondLevelCache.getShared());
+    }
+
+    /**
+     * Returns the core shared by front ends, with the catalogue of system property checker.catalogue.
+     * Loads the shared statement cache too, so it is read before any request is served.
+     *
+     * @return The shared core.
+     * @throws UncheckedIOException Catalogue file cannot be read.
+     */
+    public static synchronized GradingCore getShared() {
+
+        if (shared == null) {
+            try {
+                shared = load(System.getProperty("checker.catalogue"));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read wrong answer catalogue", e);
+            }
+
+            StatementCache.getShared();
+        }
+
+        return shared;
+    }
+
+    /**
+     * Refuses inputs that are missing or too long.
+     *
+     * @param input The input.
+     * @throws IllegalArgumentException Input is null or longer than the limit.
+     */
+    private void checkInput(final String input) {
+
+        if (input == null) {
+            throw new IllegalArgumentException("Missing input");
+        }
+
+        if (input.length() > maxInputLength) {
+            throw new IllegalArgumentException("Input longer than " + maxInputLength + " characters");
+        }
+    }
+
+    /**
+     * Compares user input against target, as {@link RunParser#compare}, keeping track of grading time.
+     * Results other nodes computed already are taken from the second level, if there is one.
+     *
+     * @param target Target string.
+     * @param test User-inputted string.
+     * @return Result of comparison, shared with coalesced requests.
+     * @throws Exception Parser having trouble reading strings.
+     */
+    private ObjectNode compare(final String target, final String test) throws Exception {
+
+        Pair<String, String> inputs = checkKey(target, test);
+        String key = (secondLevel == null) ? null
+                : secondLevel.resultKey(catalogueVersion, inputs.getFirst(), inputs.getSecond());
+
+        if (key != null) {
+            ObjectNode shared = secondLevel.getResult(key);
+
+            if (shared != null) {
+                return shared;
+            }
+        }
+
+        long start = System.nanoTime();
+
+        try {
+            ObjectNode result = RunParser.compare(new ObjectMapper(), test, target, catalogue);
+
+            if (key != null) {
+                secondLevel.putResult(key, result);
+            }
+
+            return result;
+        } finally {
+            gradingNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Parses a statement, as {@link RunParser#parse}, keeping track of grading time.
+     *
+     * @param test The statement.
+     * @return Description of statement, shared with coalesced requests.
+     */
+    private ObjectNode describe(final String test) {
+
+        long start = System.nanoTime();
+
+        try {
+            return RunParser.parse(new ObjectMapper(), test);
+        } finally {
+            gradingNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Turns a shared comparison into the result of one request.
+     *
+     * @param shared Result of comparison.
+     * @param target Target string as sent.
+     * @param test User-inputted string as sent.
+     * @return Result of /check.
+     */
+    private static ObjectNode checkResult(final ObjectNode shared, final String target, final String test) {
+
+        ObjectNode node = shared.deepCopy();
+        node.put("testString", test);
+        node.put("targetString", target);
+
+        return RunParser.report(node, target);
+    }
+
+    /**
+     * Turns a shared description into the result of one request.
+     *
+     * @param shared Description of statement.
+     * @param test The statement as sent.
+     * @return Result of /parse.
+     */
+    private static ObjectNode parseResult(final ObjectNode shared, final String test) {
+
+        ObjectNode node = shared.deepCopy();
+        node.put("input", test);
+
+        return node;
+    }
+
+    /**
+     * Builds the key by which identical checks in flight are coalesced.
+     * Normalization keeps line breaks, so checks with the same key parse to the same statements.
+     *
+     * @param target Target string.
+     * @param test User-inputted string.
+     * @return Normalized target and test.
+     */
+    static Pair<String, String> checkKey(final String target, final String test) {
+        return new Pair<>(parseKey(target), parseKey(test));
+    }
+
+    /**
+     * Builds the key by which identical parses in flight are coalesced.
+     *
+     * @param test User-inputted string.
+     * @return Normalized input, as {@link StatementCache#normalize}.
+     */
+    static String parseKey(final String test) {
+        return StatementCache.normalize(test);
+    }
+
+    /**
+     * Compares user input against target string, with the result of
+     * {@link RunParser#check(String, String, WrongAnswerCatalogue)}.
+     *
+     * @param target Target string.
+     * @param test User-inputted string.
+     * @return JSON object containing information about the matching.
+     * @throws Exception Input refused, or parser having trouble reading strings.
+     */
+    public ObjectNode check(final String target, final String test) throws Exception {
+
+        checkRequests.incrementAndGet();
+
+        try {
+            checkInput(target);
+            checkInput(test);
+
+            Pair<String, String> key = checkKey(target, test);
+            return checkResult(checks.get(key, () -> GradingExecutor.call(() -> compare(target, test))),
+                    target, test);
+
+        } catch (Exception e) {
+            errors.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Same as {@link #check(String, String)}, without blocking.
+     *
+     * @param target Target string.
+     * @param test User-inputted string.
+     * @return Future JSON object containing information about the matching.
+     */
+    public CompletableFuture<ObjectNode> checkAsync(final String target, final String test) {
+
+        checkRequests.incrementAndGet();
+
+        try {
+            checkInput(target);
+            checkInput(test);
+        } catch (IllegalArgumentException e) {
+            errors.incrementAndGet();
+            CompletableFuture<ObjectNode> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+
+        Pair<String, String> key = checkKey(target, test);
+
+        return checks.getAsync(key, () -> GradingExecutor.submit(() -> compare(target, test)))
+                .thenApply(node -> checkResult(node, target, test))
+                .whenComplete((node, error) -> {
+                    if (error != null) {
+                        errors.incrementAndGet();
+                    }
+                });
+    }
+
+    /**
+     * Parses a statement, with the result of {@link RunParser#parseFromString(String)}.
+     *
+     * @param test The statement.
+     * @return JSON object describing the statement.
+     * @throws Exception Input refused, or interrupted while parsing.
+     */
+    public ObjectNode parse(final String test) throws Exception {
+
+        parseRequests.incrementAndGet();
+
+        try {
+            checkInput(test);
+            return parseResult(parses.get(parseKey(test),
+                    () -> GradingExecutor.call(() -> describe(test))), test);
+
+        } catch (Exception e) {
+            errors.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Same as {@link #parse(String)}, without blocking.
+     *
+     * @param test The statement.
+     * @return Future JSON object describing the statement.
+     */
+    public CompletableFuture<ObjectNode> parseAsync(final String test) {
+
+        parseRequests.incrementAndGet();
+
+        try {
+            checkInput(test);
+        } catch (IllegalArgumentException e) {
+            errors.incrementAndGet();
+            CompletableFuture<ObjectNode> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+
+        return parses.getAsync(parseKey(test), () -> GradingExecutor.submit(() -> describe(test)))
+                .thenApply(node -> parseResult(node, test))
+                .whenComplete((node, error) -> {
+                    if (error != null) {
+                        errors.incrementAndGet();
+                    }
+                });
+    }
+
+    /**
+     * Checks a batch of answers without blocking. The checks of a batch run concurrently.
+     *
+     * @param batch Object with field items: an array of objects with fields target and test.
+     * @return Future object with field results: an array with the result of each item, in order, where items
+     * that failed have a result with field error instead.
+     */
+    public CompletableFuture<ObjectNode> checkBatch(final JsonNode batch) {
+
+        JsonNode items = batch.path("items");
+
+        if (!items.isArray() || items.size() > maxBatchSize) {
+            errors.incrementAndGet();
+            CompletableFuture<ObjectNode> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalArgumentException("Batch must have an array of at most "
+                    + maxBatchSize + " items"));
+            return failed;
+        }
+
+        ArrayList<CompletableFuture<ObjectNode>> results = new ArrayList<>(items.size());
+
+        for (JsonNode item : items) {
+            String target = item.path("target").isTextual() ? item.get("target").asText() : null;
+            String test = item.path("test").isTextual() ? item.get("test").asText() : null;
+
+            results.add(checkAsync(target, test).exceptionally(GradingCore::error));
+        }
+
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+
+            ObjectNode node = JsonNodeFactory.instance.objectNode();
+            ArrayNode array = node.putArray("results");
+
+            for (CompletableFuture<ObjectNode> result : results) {
+                array.add(result.join());
+            }
+
+            return node;
+        });
+    }
+
+    /**
+     * Computes the entity tag of a /check result, see {@link HttpCaching}.
+     *
+     * @param format Media type of response.
+     * @param target Target string.
+     * @param test User-inputted string.
+     * @return Weak entity tag, or null if results cannot be cached.
+     */
+    String checkTag(final String format, final String target, final String test) {
+        Pair<String, String> key = checkKey(target, test);
+        return HttpCaching.etag("check", format, catalogueVersion, key.getFirst(), key.getSecond());
+    }
+
+    /**
+     * Computes the entity tag of a /parse result, see {@link HttpCaching}.
+     *
+     * @param format Media type of response.
+     * @param test The statement.
+     * @return Weak entity tag, or null if results cannot be cached.
+     */
+    String parseTag(final String format, final String test) {
+        return HttpCaching.etag("parse", format, parseKey(test));
+    }
+
+    /**
+     * Reports the metrics of this core.
+     *
+     * @return Object with request, error and coalescing counts, total grading time in ms, and the size, hits and
+     *         misses of the shared statement cache, and the metrics of the second cache level if there is one.
+     */
+    public ObjectNode getMetrics() {
+
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("checks", checkRequests.get());
+        node.put("parses", parseRequests.get());
+        node.put("errors", errors.get());
+        node.put("gradingMillis", gradingNanos.get() / 1000000);
+
+        ObjectNode coalesced = node.putObject("coalesced");
+        coalesced.put("check", checks.getCoalesced());
+        coalesced.put("parse", parses.getCoalesced());
+
+        StatementCache cache = StatementCache.getShared();
+        ObjectNode statements = node.putObject("statementCache");
+        statements.put("size", cache.size());
+        statements.put("hits", cache.getHits());
+        statements.put("misses", cache.getMisses());
+
+        if (secondLevel != null) {
+            node.set("sharedCache", secondLevel.getMetrics());
+        }
+
+        return node;
+    }
+
+    /**
+     * Builds the result of a failed request, with the simple class name of the exception as error, as /check does.
+     *
+     * @param error The exception; wrappers added by futures are removed.
+     * @return Object with field error.
+     */
+    public static ObjectNode error(final Throwable error) {
+
+        Throwable cause = error;
+
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+
+        return JsonNodeFactory.instance.objectNode().put("error", cause.getClass().getSimpleName());
+    }
+
+    /**
+     * Reads JSON, for front ends without a JSON library of their own.
+     *
+     * @param json The JSON text.
+     * @return The JSON tree.
+     * @throws IOException Text is not JSON.
+     */
+    public static JsonNode readJson(final String json) throws IOException {
+        return MAPPER.readTree(json);
+    }
+
+    /**
+     * Writes JSON as the servlets do, for front ends without a JSON library of their own.
+     *
+     * @param node The JSON tree.
+     * @return Pretty-printed JSON text.
+     * @throws IOException Failed to write node.
+     */
+    public static String toJson(final JsonNode node) throws IOException {
+        return MAPPER.writeValueAsString(node);
+    }
+}
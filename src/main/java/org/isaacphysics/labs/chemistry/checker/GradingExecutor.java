@@ -0,0 +1,168 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor for parsing and comparing statements on behalf of request handlers.
+ * <p>
+ *     By default grading runs on the thread handling the request. In virtual-thread mode (see {@link CheckerServer})
+ *     every request has a thread of its own, and grading is instead handed to a pool of as many platform threads as
+ *     there are cores, so CPU-bound work never competes with thousands of threads blocked on slow clients.
+ * </p>
+ */
+final class GradingExecutor {
+
+    /**
+     * Pool grading is handed to, or null if grading runs on the calling thread.
+     */
+    private static volatile ExecutorService pool = null;
+
+    /**
+     * Pool asynchronous grading runs on when no pool is started, created on first use.
+     */
+    private static ExecutorService asyncPool = null;
+
+    /**
+     * Constructor method of GradingExecutor.
+     * Set to private, because we don't want people to instantiate an utility class.
+     */
+    private GradingExecutor() {
+        // Nothing here.
+    }
+
+    /**
+     * Starts handing grading to a pool of platform threads. Does nothing if a pool is started already.
+     *
+     * @param threads Number of threads of pool.
+     */
+    static synchronized void start(final int threads) {
+
+        if (pool != null) {
+            return;
+        }
+
+        pool = newPool("grading-", threads);
+    }
+
+    /**
+     * Creates a fixed pool of daemon threads.
+     *
+     * @param prefix Prefix of thread names.
+     * @param threads Number of threads.
+     * @return The pool.
+     */
+    private static ExecutorService newPool(final String prefix, final int threads) {
+
+        AtomicInteger count = new AtomicInteger();
+
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, prefix + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Stops the pool, so grading runs on the calling thread again.
+     */
+    static synchronized void stop() {
+
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    /**
+     * Checks if grading is handed to a pool.
+     *
+     * @return True if a pool is started.
+     */
+    static boolean isStarted() {
+        return pool != null;
+    }
+
+    /**
+     * Runs a grading task, on the pool if one is started and on the calling thread otherwise.
+     *
+     * @param task The task.
+     * @param <T> Type of result.
+     * @return Result of task.
+     * @throws Exception Exception thrown by task, or interrupted while waiting for it.
+     */
+    static <T> T call(final Callable<T> task) throws Exception {
+
+        ExecutorService current = pool;
+
+        if (current == null) {
+            return task.call();
+        }
+
+        try {
+            return current.submit(task).get();
+        } catch (ExecutionException e) {
+            // Rethrow what the task threw, so callers report the same errors in both modes.
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+
+            throw (Error) e.getCause();
+        }
+    }
+
+    /**
+     * Runs a grading task without waiting for it, for front ends that answer requests asynchronously. The task runs
+     * on the pool if one is started, and otherwise on a pool of one thread per core kept for this purpose.
+     *
+     * @param task The task.
+     * @param <T> Type of result.
+     * @return Future result of task.
+     */
+    static <T> CompletableFuture<T> submit(final Callable<T> task) {
+
+        ExecutorService current = pool;
+
+        if (current == null) {
+            synchronized (GradingExecutor.class) {
+                if (asyncPool == null) {
+                    asyncPool = newPool("grading-async-", Runtime.getRuntime().availableProcessors());
+                }
+
+                current = asyncPool;
+            }
+        }
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+
+        current.execute(() -> {
+            try {
+                future.complete(task.call());
+            } catch (Exception | Error e) {
+                future.completeExceptionally(e);
+            }
+        });
+
+        return future;
+    }
+}
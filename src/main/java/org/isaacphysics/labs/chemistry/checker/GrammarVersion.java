@@ -0,0 +1,105 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Version of the grammar the parser was generated from, used to invalidate anything persisted from parsed statements.
+ * <p>
+ *     The build copies ChemistryParser.cup and ChemistryLexer.lex onto the class path (see pom.xml), and the version
+ *     is a hash of both files. Any change to either file therefore gives a new version, without anyone having to
+ *     remember to bump a number.
+ * </p>
+ */
+final class GrammarVersion {
+
+    /**
+     * Class path resources of the grammar.
+     */
+    private static final String[] RESOURCES = {"/grammar/ChemistryParser.cup", "/grammar/ChemistryLexer.lex"};
+
+    /**
+     * Number of hex digits of hash used as version.
+     */
+    private static final int LENGTH = 16;
+
+    /**
+     * Version of grammar, or null if the grammar is not on the class path.
+     */
+    private static final String VERSION = compute();
+
+    /**
+     * Constructor method of GrammarVersion.
+     * Set to private, because we don't want people to instantiate an utility class.
+     */
+    private GrammarVersion() {
+        // Nothing here.
+    }
+
+    /**
+     * Hashes the grammar resources.
+     *
+     * @return Hex digits of hash, or null if a resource is missing.
+     */
+    private static String compute() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[8192];
+
+            for (String resource : RESOURCES) {
+                try (InputStream in = GrammarVersion.class.getResourceAsStream(resource)) {
+
+                    if (in == null) {
+                        System.out.println("Missing resource " + resource + ", grammar version unknown.");
+                        return null;
+                    }
+
+                    int n;
+
+                    while ((n = in.read(buffer)) > 0) {
+                        digest.update(buffer, 0, n);
+                    }
+                }
+            }
+
+            StringBuilder hex = new StringBuilder();
+
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+
+            return hex.substring(0, LENGTH);
+
+        } catch (IOException | NoSuchAlgorithmException e) {
+            System.out.println("Cannot hash grammar: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the version of the grammar.
+     *
+     * @return Version of grammar, or null if it is unknown.
+     */
+    static String get() {
+        return VERSION;
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * HTTP caching of the GET variants of /check and /parse.
+ * <p>
+ *     Results only depend on the normalized inputs, the grammar (see {@link GrammarVersion}), the negotiated
+ *     {@link WireFormat} and, for /check, the wrong answer catalogue, so the entity tag is a hash of exactly these.
+ *     It is weak, as responses also echo the inputs as sent, which may differ in spacing. Responses may be cached for
+ *     checker.cacheMaxAge seconds (default 3600), and revalidated with If-None-Match at any time: a matching tag gets
+ *     304 without parsing anything.
+ * </p>
+ * <p>
+ *     If the grammar version is unknown, no tag can be trusted across deployments, and responses are sent with
+ *     Cache-Control: no-cache and without a tag.
+ * </p>
+ */
+final class HttpCaching {
+
+    /**
+     * Version of the response format. Bump when the JSON of /check or /parse changes for the same grammar, or when
+     * the normalization of inputs changes, so that tags issued before can no longer match.
+     */
+    static final int RESPONSE_VERSION = 2;
+
+    /**
+     * Default time responses may be cached without revalidation, in seconds.
+     */
+    private static final int DEFAULT_MAX_AGE = 3600;
+
+    /**
+     * Number of hex digits of hashes.
+     */
+    private static final int LENGTH = 32;
+
+    /**
+     * Constructor method of HttpCaching.
+     * Set to private, because we don't want people to instantiate an utility class.
+     */
+    private HttpCaching() {
+        // Nothing here.
+    }
+
+    /**
+     * Hashes a list of strings; different lists give different hashes.
+     *
+     * @param parts The strings; null is allowed.
+     * @return Hex digits of SHA-256 hash.
+     */
+    static String hash(final String... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+            for (String part : parts) {
+                // Length prefix, so ("ab", "c") and ("a", "bc") differ; -1 for null.
+                String field = (part == null) ? "-1:" : part.length() + ":" + part;
+                digest.update(field.getBytes(StandardCharsets.UTF_8));
+            }
+
+            StringBuilder hex = new StringBuilder();
+
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+
+            return hex.substring(0, LENGTH);
+
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Computes the entity tag of a response.
+     *
+     * @param parts Endpoint and everything else the response depends on, besides grammar and response format.
+     * @return Weak entity tag, or null if the grammar version is unknown.
+     */
+    static String etag(final String... parts) {
+
+        String grammar = GrammarVersion.get();
+
+        if (grammar == null) {
+            return null;
+        }
+
+        String[] all = new String[parts.length + 2];
+        all[0] = grammar;
+        all[1] = Integer.toString(RESPONSE_VERSION);
+        System.arraycopy(parts, 0, all, 2, parts.length);
+
+        return "W/\"" + hash(all) + "\"";
+    }
+
+    /**
+     * Checks if an If-None-Match header matches an entity tag, using weak comparison.
+     *
+     * @param ifNoneMatch Value of header, or null if there is none.
+     * @param etag The entity tag.
+     * @return True if header is "*" or lists the tag.
+     */
+    static boolean matches(final String ifNoneMatch, final String etag) {
+
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        String opaque = etag.startsWith("W/") ? etag.substring(2) : etag;
+
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+
+            if (tag.equals("*") || (tag.startsWith("W/") ? tag.substring(2) : tag).equals(opaque)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Sends the caching headers of a response, and answers 304 if the client's copy is still valid.
+     *
+     * @param request The request.
+     * @param response The response.
+     * @param etag Entity tag of response, or null if it cannot be cached.
+     * @return True if 304 was sent and no body must follow.
+     */
+    static boolean notModified(final HttpServletRequest request, final HttpServletResponse response,
+                               final String etag) {
+
+        if (etag == null) {
+            response.setHeader("Cache-Control", "no-cache");
+            return false;
+        }
+
+        response.setHeader("ETag", etag);
+        response.addHeader("Vary", "Accept");
+        response.setHeader("Cache-Control", "public, max-age=" + Integer.getInteger("checker.cacheMaxAge",
+                DEFAULT_MAX_AGE));
+
+        if (matches(request.getHeader("If-None-Match"), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Stops a response from being cached, e.g. because computing it failed for reasons other than the inputs.
+     *
+     * @param response The response.
+     */
+    static void noStore(final HttpServletResponse response) {
+        response.setHeader("Cache-Control", "no-store");
+    }
+}
@@ -37,7 +37,7 @@ public final class Hydrate extends Formula {
     /**
      * Saved atom count.
      */
-    private HashMap<String, Fraction> savedAtomCount = null;
+    private volatile HashMap<String, Fraction> savedAtomCount = null;
 
     /**
      * Constructor function for hydrate.
@@ -49,6 +49,22 @@ public final class Hydrate extends Formula {
         this.waterCount = count;
     }
 
+    /**
+     * Getter function. Returns the salt compound of this hydrate.
+     * @return Compound of hydrate.
+     */
+    Compound getCompound() {
+        return compound;
+    }
+
+    /**
+     * Getter function. Returns the number of water molecules per formula.
+     * @return Water count of hydrate.
+     */
+    Integer getWaterCount() {
+        return waterCount;
+    }
+
     @Override
     public Fraction getCharge() {
         return new Fraction(0, 1);
@@ -58,20 +74,23 @@ public final class Hydrate extends Formula {
     public HashMap<String, Fraction> getAtomCount() {
 
         if (savedAtomCount == null) {
-            savedAtomCount = compound.getAtomCount();
+            // Copy, as the compound keeps its own count.
+            HashMap<String, Fraction> count = new HashMap<>(compound.getAtomCount());
 
             // Put water atoms...
-            if (savedAtomCount.containsKey("H")) {
-                savedAtomCount.put("H", savedAtomCount.get("H").plus(2 * waterCount));
+            if (count.containsKey("H")) {
+                count.put("H", count.get("H").plus(2 * waterCount));
             } else {
-                savedAtomCount.put("H", new Fraction(2 * waterCount, 1));
+                count.put("H", new Fraction(2 * waterCount, 1));
             }
 
-            if (savedAtomCount.containsKey("O")) {
-                savedAtomCount.put("O", savedAtomCount.get("O").plus(waterCount));
+            if (count.containsKey("O")) {
+                count.put("O", count.get("O").plus(waterCount));
             } else {
-                savedAtomCount.put("O", new Fraction(waterCount, 1));
+                count.put("O", new Fraction(waterCount, 1));
             }
+
+            savedAtomCount = count;
         }
 
         return savedAtomCount;
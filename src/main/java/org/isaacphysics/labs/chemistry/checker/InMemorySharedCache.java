@@ -0,0 +1,82 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared cache held in the memory of this JVM, standing in for a remote backend in tests and on a single machine.
+ * Entries are never evicted.
+ */
+public final class InMemorySharedCache implements SharedCache {
+
+    /**
+     * Entries, by key.
+     */
+    private final ConcurrentHashMap<String, byte[]> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Number of lookups.
+     */
+    private final AtomicLong gets = new AtomicLong();
+
+    /**
+     * Number of entries stored.
+     */
+    private final AtomicLong puts = new AtomicLong();
+
+    @Override
+    public byte[] get(final String key) {
+        gets.incrementAndGet();
+        return entries.get(key);
+    }
+
+    @Override
+    public void put(final String key, final byte[] value) {
+        puts.incrementAndGet();
+        entries.put(key, value);
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return Number of entries.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of lookups, i.e. of reads the backend would have served.
+     *
+     * @return Number of lookups.
+     */
+    public long getGets() {
+        return gets.get();
+    }
+
+    /**
+     * Returns the number of entries stored, including replaced ones.
+     *
+     * @return Number of entries stored.
+     */
+    public long getPuts() {
+        return puts.get();
+    }
+}
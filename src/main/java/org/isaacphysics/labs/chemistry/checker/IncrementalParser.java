@@ -0,0 +1,129 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import java_cup.runtime.DefaultSymbolFactory;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Parses successive versions of a document of ';'-separated statements, e.g. a worksheet in a live editor.
+ * <p>
+ *     The statements of the previous version are kept, keyed by their text. When a new version arrives, it is split
+ *     into statements by {@link StatementSplitter}, and only statements whose text is not in the previous version are
+ *     lexed and parsed; all others reuse the Statement objects parsed before. Editing one step of a long worksheet
+ *     therefore costs about as much as parsing one statement.
+ * </p>
+ * <p>
+ *     Parsed statements are treated as read-only, so sharing them between versions is safe.
+ * </p>
+ */
+final class IncrementalParser {
+
+    /**
+     * Statements of the previous version, keyed by their text.
+     * Statements which could not be parsed at all are stored as null.
+     */
+    private HashMap<String, Statement> previous = new HashMap<>();
+
+    /**
+     * Number of statements reused in last call to parse.
+     */
+    private int reused = 0;
+
+    /**
+     * Number of statements parsed in last call to parse.
+     */
+    private int parsed = 0;
+
+    /**
+     * Parses a single statement, without reporting syntax errors: callers may be many threads working in bulk, and
+     * errors are reported by the statement itself.
+     *
+     * @param s Text of statement.
+     * @return The parsed statement, or null if parser cannot parse it at all.
+     */
+    @SuppressWarnings({"deprecation", "unchecked"})
+    static Statement parseStatement(final String s) {
+        try {
+            ArrayList<Statement> statements = (ArrayList<Statement>) new ChemistryParser(
+                    new ChemistryLexer(new StringReader(s)), new DefaultSymbolFactory()).setQuiet(true).parse().value;
+
+            return statements.get(0);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parses a new version of the document.
+     *
+     * @param document Full text of the new version.
+     * @return Text and parsed statement (null if unparseable) of every statement in document, in order.
+     */
+    synchronized ArrayList<Pair<String, Statement>> parse(final String document) {
+
+        ArrayList<Pair<String, Statement>> result = new ArrayList<>();
+        HashMap<String, Statement> current = new HashMap<>();
+
+        reused = 0;
+        parsed = 0;
+
+        for (String segment : StatementSplitter.split(document)) {
+
+            Statement statement;
+
+            if (current.containsKey(segment)) {
+                statement = current.get(segment);
+                reused += 1;
+            } else if (previous.containsKey(segment)) {
+                statement = previous.get(segment);
+                reused += 1;
+            } else {
+                statement = parseStatement(segment);
+                parsed += 1;
+            }
+
+            current.put(segment, statement);
+            result.add(new Pair<>(segment, statement));
+        }
+
+        previous = current;
+
+        return result;
+    }
+
+    /**
+     * Returns the number of statements reused from the previous version in the last call to parse.
+     *
+     * @return Number of statements reused.
+     */
+    synchronized int getReused() {
+        return reused;
+    }
+
+    /**
+     * Returns the number of statements that had to be parsed in the last call to parse.
+     *
+     * @return Number of statements parsed.
+     */
+    synchronized int getParsed() {
+        return parsed;
+    }
+}
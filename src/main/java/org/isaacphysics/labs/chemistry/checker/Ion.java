@@ -38,7 +38,7 @@ public final class Ion extends Formula {
     /**
      * Saved atom count.
      */
-    private HashMap<String, Fraction> savedAtomicCount = null;
+    private volatile HashMap<String, Fraction> savedAtomicCount = null;
 
     /**
      * Constructor function of Ion.
@@ -142,16 +142,6 @@ public final class Ion extends Formula {
         return molecule.toString() + c;
     }
 
-    @Override
-    public Integer getAtomicNumber() throws NuclearException {
-        throw new NuclearException("Atomic number not defined for Ion.");
-    }
-
-    @Override
-    public Integer getMassNumber() throws NuclearException {
-        throw new NuclearException("Mass number not defined for Ion.");
-    }
-
     /**
      * @return Molecule associated with the ion.
      */
@@ -159,6 +149,13 @@ public final class Ion extends Formula {
         return molecule;
     }
 
+    /**
+     * @return Charge of ion, as given in its superscript.
+     */
+    Integer getIonCharge() {
+        return charge;
+    }
+
     @Override
     public int hashCode() {
         return toString().hashCode();
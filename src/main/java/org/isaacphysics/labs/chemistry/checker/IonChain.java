@@ -20,7 +20,7 @@ public final class IonChain extends Formula {
     /**
      * Saved atom count.
      */
-    private HashMap<String, Fraction> savedAtomCount = null;
+    private volatile HashMap<String, Fraction> savedAtomCount = null;
 
     /**
      * Constructor function of IonChain.
@@ -49,6 +49,15 @@ public final class IonChain extends Formula {
         Collections.reverse(formulas);
     }
 
+    /**
+     * Returns the formulas in IonChain, in order.
+     *
+     * @return Formulas of IonChain.
+     */
+    ArrayList<Formula> getFormulas() {
+        return formulas;
+    }
+
     @Override
     public Fraction getCharge() {
 
@@ -65,18 +74,20 @@ public final class IonChain extends Formula {
     public HashMap<String, Fraction> getAtomCount() {
 
         if (savedAtomCount == null) {
-            savedAtomCount = new HashMap<>();
+            HashMap<String, Fraction> count = new HashMap<>();
 
             for (Formula f : formulas) {
                 for (String e : f.getAtomCount().keySet()) {
 
-                    if (!savedAtomCount.containsKey(e)) {
-                        savedAtomCount.put(e, f.getAtomCount().get(e));
+                    if (!count.containsKey(e)) {
+                        count.put(e, f.getAtomCount().get(e));
                     } else {
-                        savedAtomCount.put(e, savedAtomCount.get(e).plus(f.getAtomCount().get(e)));
+                        count.put(e, count.get(e).plus(f.getAtomCount().get(e)));
                     }
                 }
             }
+
+            savedAtomCount = count;
         }
 
         return savedAtomCount;
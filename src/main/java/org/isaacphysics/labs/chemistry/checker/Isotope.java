@@ -24,39 +24,15 @@ import java.util.HashMap;
  */
 public final class Isotope extends Nuclear {
 
-    /**
-     * Maps elements to their corresponding atomic number.
-     */
-    private static HashMap<String, Integer> periodicTable;
-
     /**
      * Saved atom count.
      */
-    private HashMap<String, Fraction> savedAtomCount;
-
-    static {
-
-        periodicTable = new HashMap<>();
-
-        String[] elemList =
-            {"H", "He", "Li", "Be", "B", "C", "N", "O", "F", "Ne", "Na", "Mg", "Al", "Si", "P", "S", "Cl",
-                "Ar", "K", "Ca", "Sc", "Ti", "V", "Cr", "Mn", "Fe", "Co", "Ni", "Cu", "Zn", "Ga", "Ge", "As",
-                "Se", "Br", "Kr", "Rb", "Sr", "Y", "Zr", "Nb", "Mo", "Tc", "Ru", "Rh", "Pd", "Ag", "Cd", "In",
-                "Sn", "Sb", "Te", "I", "Xe", "Cs", "Ba", "La", "Ce", "Pr", "Nd", "Pm", "Sm", "Eu", "Gd", "Tb",
-                "Dy", "Ho", "Er", "Tm", "Yb", "Lu", "Hf", "Ta", "W", "Re", "Os", "Ir", "Pt", "Au", "Hg", "Tl",
-                "Pb", "Bi", "Po", "At", "Rn", "Fr", "Ra", "Ac", "Th", "Pa", "U", "Np", "Pu", "Am", "Cm", "Bk",
-                "Cf", "Es", "Fm", "Md", "No", "Lr", "Rf", "Db", "Sg", "Bh", "Hs", "Mt", "Ds", "Rg", "Cn", "Uut",
-                "Fl", "Uup", "Lv", "Uus", "Uuo"};
-
-        for (int i = 0; i < elemList.length; i++) {
-            periodicTable.put(elemList[i], i + 1);
-        }
-    }
+    private volatile HashMap<String, Fraction> savedAtomCount;
 
     /**
      * Mass number of isotope.
      */
-    private Integer mass,
+    private int mass,
 
     /**
      * Atomic number of isotope.
@@ -74,7 +50,7 @@ public final class Isotope extends Nuclear {
      * @param atom Atomic number of isotope.
      * @param f Atom/charged atom associated with the isotope.
      */
-    public Isotope(final Integer mass, final Integer atom, final Formula f) {
+    public Isotope(final int mass, final int atom, final Formula f) {
         super();
 
         this.mass = mass;
@@ -83,15 +59,24 @@ public final class Isotope extends Nuclear {
     }
 
     @Override
-    public Integer getMassNumber() {
+    public int getMassNumber() {
         return mass;
     }
 
     @Override
-    public Integer getAtomicNumber() {
+    public int getAtomicNumber() {
         return atom;
     }
 
+    /**
+     * Returns the atom/charged atom associated with the isotope.
+     *
+     * @return Formula of isotope.
+     */
+    Formula getFormula() {
+        return formula;
+    }
+
     @Override
     public Fraction getCharge() {
         return formula.getCharge();
@@ -111,8 +96,8 @@ public final class Isotope extends Nuclear {
         if (o instanceof Isotope) {
             Isotope i = (Isotope) o;
 
-            return (this.mass.equals(i.mass))
-                    && (this.atom.equals(i.atom))
+            return (this.mass == i.mass)
+                    && (this.atom == i.atom)
                     && (this.formula.equals(i.formula));
         }
 
@@ -121,7 +106,7 @@ public final class Isotope extends Nuclear {
 
     @Override
     public String toString() {
-        return "{}^{" + mass.toString() + "}_{" + atom.toString() + "}" + formula.toString();
+        return "{}^{" + mass + "}_{" + atom + "}" + formula.toString();
     }
 
     @Override
@@ -173,7 +158,7 @@ public final class Isotope extends Nuclear {
             at = (Element) formula;
         }
 
-        return periodicTable.containsKey(at.toString())
-                && periodicTable.get(at.toString()).equals(atom) && (mass >= atom);
+        return (at instanceof Element) && at.getNumber() == 1
+                && ((Element) at).getAtomicNumber() == atom && NuclideTable.isKnown(atom, mass);
     }
 }
@@ -0,0 +1,220 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reader for (possibly very large) UTF-8 files, which maps the file into memory window by window instead of
+ * copying it onto the heap through stream buffers.
+ * <p>
+ *     mhchem input is nearly always plain ASCII, so bytes are turned into characters directly as long as they are
+ *     ASCII. Only when a non-ASCII byte is met does the reader fall back to a UTF-8 decoder. Malformed input is
+ *     replaced by U+FFFD, as InputStreamReader would do.
+ * </p>
+ */
+final class MappedFileReader extends Reader {
+
+    /**
+     * Default size of mapped windows, in bytes.
+     */
+    static final int DEFAULT_WINDOW = 64 * 1024 * 1024;
+
+    /**
+     * Channel of the file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Size of the file, in bytes.
+     */
+    private final long size;
+
+    /**
+     * Size of mapped windows, in bytes.
+     */
+    private final int windowSize;
+
+    /**
+     * UTF-8 decoder for non-ASCII input.
+     */
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /**
+     * File position of the start of current window.
+     */
+    private long windowStart = 0;
+
+    /**
+     * Currently mapped window, or null if no window has been mapped yet.
+     */
+    private MappedByteBuffer window = null;
+
+    /**
+     * Low surrogate decoded but not returned yet, as the caller had room for one character only; or 0.
+     */
+    private char pendingSurrogate = 0;
+
+    /**
+     * Constructor method of MappedFileReader.
+     *
+     * @param path Path of the file.
+     * @param windowSize Size of mapped windows, in bytes.
+     * @throws IOException Failed to open the file.
+     */
+    MappedFileReader(final Path path, final int windowSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Constructor method of MappedFileReader, using windows of default size.
+     *
+     * @param path Path of the file.
+     * @throws IOException Failed to open the file.
+     */
+    MappedFileReader(final Path path) throws IOException {
+        this(path, DEFAULT_WINDOW);
+    }
+
+    /**
+     * Maps the window starting at the first byte not consumed yet, if current window has no bytes left.
+     *
+     * @param force Map a new window even if current window has bytes left.
+     * @return False if the end of file is reached.
+     * @throws IOException Failed to map the file.
+     */
+    private boolean nextWindow(final boolean force) throws IOException {
+
+        if (window != null && window.hasRemaining() && !force) {
+            return true;
+        }
+
+        long position = (window == null) ? 0 : windowStart + window.position();
+
+        if (position >= size) {
+            return false;
+        }
+
+        if (window != null && position == windowStart) {
+            // Window cannot make any progress; only happens if window size is below a UTF-8 sequence length.
+            throw new IOException("Mapped window too small");
+        }
+
+        windowStart = position;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowSize, size - position));
+        return true;
+    }
+
+    @Override
+    public int read(final char[] cbuf, final int off, final int len) throws IOException {
+
+        if (len == 0) {
+            return 0;
+        }
+
+        if (pendingSurrogate != 0) {
+            cbuf[off] = pendingSurrogate;
+            pendingSurrogate = 0;
+            return 1;
+        }
+
+        if (!nextWindow(false)) {
+            return -1;
+        }
+
+        int n = 0;
+
+        // Fast path: plain ASCII.
+        while (n < len && window.hasRemaining()) {
+
+            byte b = window.get(window.position());
+
+            if (b < 0) {
+                break;
+            }
+
+            window.position(window.position() + 1);
+            cbuf[off + n] = (char) b;
+            n++;
+        }
+
+        if (n > 0) {
+            return n;
+        }
+
+        // Slow path: non-ASCII input. The decoder keeps no state between calls, as an incomplete sequence stays in
+        // the window until the next call.
+        // Room for two characters is needed, in case the input encodes a surrogate pair.
+        CharBuffer out = (len > 1) ? CharBuffer.wrap(cbuf, off, len) : CharBuffer.allocate(2);
+        int start = out.position();
+        decode(out);
+
+        if (out.position() == start) {
+            // Incomplete UTF-8 sequence at end of window: continue in a window starting at that sequence.
+            nextWindow(true);
+            decode(out);
+        }
+
+        if (len > 1) {
+            return out.position() - start;
+        }
+
+        cbuf[off] = out.get(0);
+
+        if (out.position() > 1) {
+            pendingSurrogate = out.get(1);
+        }
+
+        return 1;
+    }
+
+    /**
+     * Decodes as much of current window as fits into the output.
+     *
+     * @param out Buffer to decode characters into.
+     */
+    private void decode(final CharBuffer out) {
+
+        boolean last = windowStart + window.limit() >= size;
+
+        decoder.reset();
+        decoder.decode(window, out, last);
+
+        if (last) {
+            decoder.flush(out);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
@@ -56,16 +56,14 @@ public abstract class Nuclear extends Formula {
      *
      * @return Mass number of nuclear particle.
      */
-    @Override
-    public abstract Integer getMassNumber();
+    public abstract int getMassNumber();
 
     /**
      * Getter method. Returns atomic number of given particle.
      *
      * @return Atomic number of nuclear particle.
      */
-    @Override
-    public abstract Integer getAtomicNumber();
+    public abstract int getAtomicNumber();
 
     @Override
     public abstract boolean isValidAtomicNumber();
@@ -88,47 +88,41 @@ public final class NuclearEquationStatement extends Statement {
         return this.right;
     }
 
+    /**
+     * Checks if all terms on both sides of equation are nuclear.
+     * In particular, this is false if equation contains error terms.
+     *
+     * @return True if all terms are nuclear.
+     */
+    boolean isNuclear() {
+        return left.isNuclear() && right.isNuclear();
+    }
+
     /**
      * Checks if mass numbers on both sides of equation are balanced.
      *
      * @return True if mass numbers are balanced.
+     * @throws ArithmeticException A total mass number does not fit in an int.
      */
     boolean isBalancedMass() {
-
-        try {
-
-            return !containsError() && left.getMassCount().equals(right.getMassCount());
-
-        } catch (NuclearException e) {
-
-            return false;
-
-        }
-
+        return isNuclear() && left.getMassCount() == right.getMassCount();
     }
 
     /**
      * Checks if atomic numbers on both sides of equation are balanced.
      *
      * @return True if atomic numbers are balanced.
+     * @throws ArithmeticException A total atomic number does not fit in an int.
      */
     boolean isBalancedAtom() {
-
-        try {
-
-            return !containsError() && left.getAtomicCount().equals(right.getAtomicCount());
-
-        } catch (NuclearException e) {
-
-            return false;
-
-        }
+        return isNuclear() && left.getAtomicCount() == right.getAtomicCount();
     }
 
     /**
      * Checks if both mass numbers and atomic numbers on both sides of equation are balanced.
      *
      * @return True if both mass numbers and atomic numbers are balanced.
+     * @throws ArithmeticException A total does not fit in an int.
      */
     boolean isBalanced() {
         return isBalancedAtom() && isBalancedMass();
@@ -143,6 +137,19 @@ public final class NuclearEquationStatement extends Statement {
         return left.isValidAtomicNumber() && right.isValidAtomicNumber();
     }
 
+    @Override
+    String getCanonicalForm() {
+
+        String l = left.getCanonicalForm();
+        String r = right.getCanonicalForm();
+
+        if (l == null || r == null) {
+            return null;
+        }
+
+        return l + " -> " + r;
+    }
+
     @Override
     String getDotCode() {
 
@@ -210,24 +217,16 @@ public final class NuclearEquationStatement extends Statement {
         if (!equationInput.isBalanced()) {
             if (!equationInput.isBalancedMass()) {
                 // Mass number not balanced.
-                try {
-                    System.out.printf("Total mass# LHS: %d\nTotal mass# RHS: %d\n",
-                            equationInput.left.getMassCount(), equationInput.right.getMassCount());
-                } catch (Exception e) {
-                    System.out.printf("Equation is not nuclear!");
-                }
+                System.out.printf("Total mass# LHS: %d\nTotal mass# RHS: %d\n",
+                        equationInput.left.getMassCount(), equationInput.right.getMassCount());
 
                 System.out.println("Mass numbers are unbalanced.");
 
             } else {
 
                 // Atomic number not balanced.
-                try {
-                    System.out.printf("Total atomic# LHS: %d\nTotal atomic# RHS: %d\n",
-                            equationInput.left.getAtomicCount(), equationInput.right.getAtomicCount());
-                } catch (Exception e) {
-                    System.out.printf("Equation is not nuclear!");
-                }
+                System.out.printf("Total atomic# LHS: %d\nTotal atomic# RHS: %d\n",
+                        equationInput.left.getAtomicCount(), equationInput.right.getAtomicCount());
 
                 System.out.println("Atomic numbers are unbalanced.");
             }
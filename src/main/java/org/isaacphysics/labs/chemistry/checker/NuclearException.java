@@ -1,36 +0,0 @@
-/**
- * Copyright 2016 Ryan Lau
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- *
- * You may obtain a copy of the License at
- * 		http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package org.isaacphysics.labs.chemistry.checker;
-
-/**
- * Exception class for nuclear terms.
- * Raised when methods like getAtomicNumber, getMassNumber are invoked on non-nuclear objects.
- *
- * Created by Ryan on 20/06/2016.
- */
-public class NuclearException extends Exception {
-
-    /**
-     * Constructor of an exception.
-     * Simply invokes superclass to help throwing the error message.
-     *
-     * @param e The error message that you want to show.
-     */
-    public NuclearException(final String e) {
-        super(e);
-    }
-}
@@ -33,7 +33,7 @@ public final class NuclearExpressionStatement extends Statement implements Count
     /**
      * Saved atom count.
      */
-    private HashMap<String, Fraction> savedAtomCount = null;
+    private volatile HashMap<String, Fraction> savedAtomCount = null;
 
     /**
      * Constructor method of ExpressionStatement.
@@ -93,6 +93,11 @@ public final class NuclearExpressionStatement extends Statement implements Count
         return this.expr;
     }
 
+    @Override
+    String getCanonicalForm() {
+        return expr.getCanonicalForm();
+    }
+
     @Override
     public String getDotCode() {
 
@@ -131,21 +136,23 @@ public final class NuclearExpressionStatement extends Statement implements Count
 
     /**
      * Returns the sum of atomic numbers in nuclear expression.
+     * Terms that are not nuclear (i.e. error terms) count as 0.
      *
      * @return Sum of atomic numbers in nuclear expression.
-     * @throws NuclearException Some terms are not nuclear.
+     * @throws ArithmeticException Sum does not fit in an int.
      */
-    Fraction getAtomicCount() throws NuclearException {
+    int getAtomicCount() {
         return expr.getAtomicCount();
     }
 
     /**
      * Returns the sum of mass numbers in nuclear expression.
+     * Terms that are not nuclear (i.e. error terms) count as 0.
      *
      * @return Sum of mass numbers in nuclear expression.
-     * @throws NuclearException Some terms are not nuclear.
+     * @throws ArithmeticException Sum does not fit in an int.
      */
-    Fraction getMassCount() throws NuclearException {
+    int getMassCount() {
         return expr.getMassCount();
     }
 
@@ -0,0 +1,319 @@
+/**
+ * Copyright 2016 Ryan Lau
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/**
+ * Table of all elements and their known nuclides, loaded once from the embedded resource nuclides.txt.
+ * <p>
+ *     Everything is stored in arrays indexed by atomic number, and element symbols are mapped to atomic numbers
+ *     through a dense code of their (at most three) letters, so every lookup takes constant time and no hashing
+ *     of strings is involved.
+ * </p>
+ */
+final class NuclideTable {
+
+    /**
+     * Name of resource containing the nuclide data.
+     */
+    private static final String RESOURCE = "/nuclides.txt";
+
+    /**
+     * Number of possible values of one letter in symbol code: absent, or one of 26 letters.
+     */
+    private static final int LETTERS = 27;
+
+    /**
+     * Element symbols, indexed by atomic number. Index 0 is unused.
+     */
+    private static final String[] SYMBOLS;
+
+    /**
+     * Smallest known mass number, indexed by atomic number.
+     */
+    private static final int[] MIN_MASS;
+
+    /**
+     * Largest known mass number, indexed by atomic number.
+     */
+    private static final int[] MAX_MASS;
+
+    /**
+     * Maps symbol code to atomic number, or 0 if no element has that symbol.
+     */
+    private static final byte[] ATOMIC_NUMBERS = new byte[26 * LETTERS * LETTERS];
+
+    /**
+     * Known nuclides: bit (atomic number * massStride + mass number) is set if the nuclide is known.
+     */
+    private static final BitSet KNOWN = new BitSet();
+
+    /**
+     * Number of bits reserved for each element in KNOWN.
+     */
+    private static final int MASS_STRIDE;
+
+    static {
+
+        ArrayList<String[]> rows = new ArrayList<>();
+        int maxMass = 0;
+
+        try (InputStream in = NuclideTable.class.getResourceAsStream(RESOURCE)) {
+
+            if (in == null) {
+                throw new IllegalStateException("Missing resource " + RESOURCE);
+            }
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII));
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+
+                line = line.trim();
+
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] row = line.split("\\s+");
+                rows.add(row);
+
+                for (String range : row[2].split(",")) {
+                    String[] bounds = range.split("-");
+                    maxMass = Math.max(maxMass, Integer.parseInt(bounds[bounds.length - 1]));
+                }
+            }
+
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read resource " + RESOURCE, e);
+        }
+
+        SYMBOLS = new String[rows.size() + 1];
+        MIN_MASS = new int[rows.size() + 1];
+        MAX_MASS = new int[rows.size() + 1];
+        MASS_STRIDE = maxMass + 1;
+
+        for (String[] row : rows) {
+
+            int atom = Integer.parseInt(row[0]);
+            String symbol = row[1].intern();
+
+            SYMBOLS[atom] = symbol;
+            ATOMIC_NUMBERS[symbolCode(symbol, 0, symbol.length())] = (byte) atom;
+            MIN_MASS[atom] = Integer.MAX_VALUE;
+
+            for (String range : row[2].split(",")) {
+
+                String[] bounds = range.split("-");
+                int from = Integer.parseInt(bounds[0]);
+                int to = Integer.parseInt(bounds[bounds.length - 1]);
+
+                KNOWN.set(atom * MASS_STRIDE + from, atom * MASS_STRIDE + to + 1);
+                MIN_MASS[atom] = Math.min(MIN_MASS[atom], from);
+                MAX_MASS[atom] = Math.max(MAX_MASS[atom], to);
+            }
+        }
+    }
+
+    /**
+     * Constructor method of NuclideTable.
+     * Set to private, because we don't want people to instantiate an utility class.
+     */
+    private NuclideTable() {
+        // Nothing here.
+    }
+
+    /**
+     * Computes dense code of an element symbol: an upper case letter, followed by at most two lower case letters.
+     *
+     * @param c0 First letter of symbol.
+     * @param c1 Second letter of symbol, or 0 if symbol has one letter.
+     * @param c2 Third letter of symbol, or 0 if symbol has at most two letters.
+     * @return Code of symbol, or -1 if arguments are not of the form of an element symbol.
+     */
+    static int symbolCode(final char c0, final char c1, final char c2) {
+
+        if (c0 < 'A' || c0 > 'Z' || (c1 == 0 && c2 != 0)) {
+            return -1;
+        }
+
+        int code1 = letterCode(c1);
+        int code2 = letterCode(c2);
+
+        if (code1 < 0 || code2 < 0) {
+            return -1;
+        }
+
+        return ((c0 - 'A') * LETTERS + code1) * LETTERS + code2;
+    }
+
+    /**
+     * Computes code of a trailing letter of an element symbol.
+     *
+     * @param c Lower case letter, or 0 for no letter.
+     * @return Code of letter, or -1 if argument is neither.
+     */
+    private static int letterCode(final char c) {
+
+        if (c == 0) {
+            return 0;
+        }
+
+        if (c < 'a' || c > 'z') {
+            return -1;
+        }
+
+        return c - 'a' + 1;
+    }
+
+    /**
+     * Computes dense code of an element symbol.
+     *
+     * @param s Characters containing the symbol.
+     * @param start Index of first character of symbol.
+     * @param end Index after last character of symbol.
+     * @return Code of symbol, or -1 if argument is not of the form of an element symbol.
+     */
+    static int symbolCode(final CharSequence s, final int start, final int end) {
+
+        int length = end - start;
+
+        if (length < 1 || length > 3) {
+            return -1;
+        }
+
+        char c1 = length > 1 ? s.charAt(start + 1) : 0;
+        char c2 = length > 2 ? s.charAt(start + 2) : 0;
+
+        return symbolCode(s.charAt(start), c1, c2);
+    }
+
+    /**
+     * Gives atomic number of an element, given the letters of its symbol.
+     *
+     * @param c0 First letter of symbol.
+     * @param c1 Second letter of symbol, or 0 if symbol has one letter.
+     * @param c2 Third letter of symbol, or 0 if symbol has at most two letters.
+     * @return Atomic number of element, or 0 if there is no such element.
+     */
+    static int atomicNumber(final char c0, final char c1, final char c2) {
+
+        int code = symbolCode(c0, c1, c2);
+
+        if (code < 0) {
+            return 0;
+        }
+
+        return ATOMIC_NUMBERS[code];
+    }
+
+    /**
+     * Gives atomic number of an element.
+     *
+     * @param s Characters containing the element symbol.
+     * @param start Index of first character of symbol.
+     * @param end Index after last character of symbol.
+     * @return Atomic number of element, or 0 if there is no such element.
+     */
+    static int atomicNumber(final CharSequence s, final int start, final int end) {
+
+        int code = symbolCode(s, start, end);
+
+        if (code < 0) {
+            return 0;
+        }
+
+        return ATOMIC_NUMBERS[code];
+    }
+
+    /**
+     * Gives atomic number of an element.
+     *
+     * @param symbol Element symbol, e.g. "Na".
+     * @return Atomic number of element, or 0 if there is no such element.
+     */
+    static int atomicNumber(final String symbol) {
+        return atomicNumber(symbol, 0, symbol.length());
+    }
+
+    /**
+     * Gives the (interned) symbol of an element.
+     *
+     * @param atom Atomic number of element.
+     * @return Symbol of element, or null if there is no such element.
+     */
+    static String symbol(final int atom) {
+
+        if (atom <= 0 || atom >= SYMBOLS.length) {
+            return null;
+        }
+
+        return SYMBOLS[atom];
+    }
+
+    /**
+     * Returns the number of elements in table.
+     *
+     * @return Largest atomic number in table.
+     */
+    static int size() {
+        return SYMBOLS.length - 1;
+    }
+
+    /**
+     * Gives smallest known mass number of an element.
+     *
+     * @param atom Atomic number of element.
+     * @return Smallest known mass number, or 0 if there is no such element.
+     */
+    static int minMass(final int atom) {
+        return (atom <= 0 || atom >= SYMBOLS.length) ? 0 : MIN_MASS[atom];
+    }
+
+    /**
+     * Gives largest known mass number of an element.
+     *
+     * @param atom Atomic number of element.
+     * @return Largest known mass number, or 0 if there is no such element.
+     */
+    static int maxMass(final int atom) {
+        return (atom <= 0 || atom >= SYMBOLS.length) ? 0 : MAX_MASS[atom];
+    }
+
+    /**
+     * Checks if a nuclide is known to exist.
+     *
+     * @param atom Atomic number of nuclide.
+     * @param mass Mass number of nuclide.
+     * @return True if the nuclide is known.
+     */
+    static boolean isKnown(final int atom, final int mass) {
+
+        if (atom <= 0 || atom >= SYMBOLS.length || mass < 0 || mass >= MASS_STRIDE) {
+            return false;
+        }
+
+        return KNOWN.get(atom * MASS_STRIDE + mass);
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Result of parsing a statement with {@link ChemistryChecker}.
+ * <p>
+ *     Holds the same information as a response of the /parse endpoint. Counts are given as strings, as fractions
+ *     like "1/2" may occur. Results are immutable, and can be shared between threads.
+ * </p>
+ */
+public final class ParseResult {
+
+    /**
+     * Description of statement, from {@link RunParser#describe}; never modified, and never handed out.
+     */
+    private final ObjectNode node;
+
+    /**
+     * Constructor method of ParseResult.
+     *
+     * @param node Description of statement; not modified afterwards.
+     */
+    ParseResult(final ObjectNode node) {
+        this.node = node;
+    }
+
+    /**
+     * Reads a map of counts from a description.
+     *
+     * @param counts JSON object mapping names to counts.
+     * @return Unmodifiable map of counts, in order of the object.
+     */
+    private static Map<String, String> counts(final JsonNode counts) {
+
+        LinkedHashMap<String, String> map = new LinkedHashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> fields = counts.fields();
+
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            map.put(field.getKey(), field.getValue().asText());
+        }
+
+        return Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * Returns the type of statement: "expression", "equation", "nuclearexpression" or "nuclearequation".
+     *
+     * @return Type of statement.
+     */
+    public String getType() {
+        return node.get("type").asText();
+    }
+
+    /**
+     * Returns the statement, as given.
+     *
+     * @return The input.
+     */
+    public String getInput() {
+        return node.get("input").asText();
+    }
+
+    /**
+     * Returns the parsed statement, in mhchem format.
+     *
+     * @return The parsed statement.
+     */
+    public String getResult() {
+        return node.get("result").asText();
+    }
+
+    /**
+     * Determines if the statement contains error terms.
+     *
+     * @return True if statement contains error terms.
+     */
+    public boolean containsError() {
+        return node.get("containsError").asBoolean();
+    }
+
+    /**
+     * Returns the total charge of a chemical expression.
+     *
+     * @return Charge, or null for other types of statement.
+     */
+    public String getCharge() {
+        JsonNode charge = node.get("charge");
+        return (charge == null) ? null : charge.asText();
+    }
+
+    /**
+     * Returns the number of atoms of each element in an expression.
+     *
+     * @return Map from element symbol to count; empty for equations, whose sides are counted separately.
+     */
+    public Map<String, String> getAtomCount() {
+        return counts(node.path("atom_count"));
+    }
+
+    /**
+     * Returns the number of atoms of each element on one side of an equation.
+     *
+     * @param left True for the left hand side, false for the right hand side.
+     * @return Map from element symbol to count; empty for expressions.
+     */
+    public Map<String, String> getAtomCount(final boolean left) {
+        return counts(node.path(left ? "left" : "right").path("atom_count"));
+    }
+
+    /**
+     * Determines if an equation is balanced.
+     *
+     * @return True if equation is balanced, or null for expressions.
+     */
+    public Boolean isBalanced() {
+        JsonNode balanced = node.get("balanced");
+        return (balanced == null) ? null : balanced.asBoolean();
+    }
+
+    /**
+     * Returns the result as a JSON object, in the shape of a /parse response.
+     *
+     * @return A copy of the result, which may be modified.
+     */
+    public ObjectNode toJson() {
+        return node.deepCopy();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        return o instanceof ParseResult && node.equals(((ParseResult) o).node);
+    }
+
+    @Override
+    public int hashCode() {
+        return node.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return node.toString();
+    }
+}
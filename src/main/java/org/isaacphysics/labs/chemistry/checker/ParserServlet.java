@@ -16,12 +16,11 @@
 
 package org.isaacphysics.labs.chemistry.checker;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.util.HashMap;
 
@@ -33,28 +32,56 @@ import java.util.HashMap;
  */
 public class ParserServlet extends HttpServlet {
 
+    /**
+     * Same as POST, with test as query parameter, so results can be cached by browsers and proxies.
+     * See {@link HttpCaching}.
+     *
+     * @param request The request.
+     * @param response The response.
+     * @throws IOException Failed to write response.
+     */
     @Override
-    protected void doPost(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+    protected void doGet(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
 
-        System.out.println("==================================================");
+        String test = request.getParameter("test");
+        WireFormat format = WireFormat.ofAccept(request.getHeader("Accept"));
+
+        if (test == null) {
+            response.setStatus(400);
+            format.write(response, WireFormat.error("No input!"));
+            return;
+        }
+
+        String etag = GradingCore.getShared().parseTag(format.getMediaType(), test);
+
+        if (HttpCaching.notModified(request, response, etag)) {
+            return;
+        }
+
+        try {
+            format.write(response, GradingCore.getShared().parse(test));
+        } catch (Exception e) {
+            HttpCaching.noStore(response);
+            format.write(response, WireFormat.error("Can't parse input!"));
+        }
+    }
 
-        BufferedReader requestStringReader = request.getReader();
-        String requestString = "";
-        String line;
+    @Override
+    protected void doPost(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
 
-        // Read the JSON object
-        while ((line = requestStringReader.readLine()) != null) {
+        System.out.println("==================================================");
 
-            requestString += line;
+        WireFormat format = WireFormat.ofAccept(request.getHeader("Accept"));
 
+        if (format.refuseContentType(request, response)) {
+            return;
         }
 
-        ObjectMapper mapper = new ObjectMapper();
         String testMhchemExpression = null;
 
         try {
-            @SuppressWarnings("unchecked")
-            HashMap<String, String> req = mapper.readValue(requestString, HashMap.class);
+            // Read the request object
+            HashMap<String, String> req = WireFormat.readRequest(request);
 
             if (req.containsKey("description")) {
                 System.out.println(req.get("description"));
@@ -62,36 +89,34 @@ public class ParserServlet extends HttpServlet {
             }
 
             if (req.containsKey("test")) {
-                // Get mhchem expressions from JSON object
+                // Get mhchem expressions from request object
                 testMhchemExpression = req.get("test");
 
                 // Debug print
                 System.out.println("Input string: " + testMhchemExpression);
 
-                String result = RunParser.parseFromString(testMhchemExpression);
+                ObjectNode result = GradingCore.getShared().parse(testMhchemExpression);
 
                 // Return
-                response.getWriter().println(result);
+                format.write(response, result);
 
-                if (result.contains("ERROR")) {
+                if (result.toString().contains("ERROR")) {
                     System.out.println("Parse success, but input contained errors.");
                 } else {
                     System.out.println("Parse success!");
                 }
 
             } else {
-                response.getWriter().println("{\"error\" : \"No input!\"}");
                 response.setStatus(400);
+                format.write(response, WireFormat.error("No input!"));
                 System.out.println("ERROR: No input!");
             }
-            response.setContentType("application/json");
 
         } catch (Exception e) {
 
             // Got an exception when checking expressions.
-            response.getWriter().println("{\"error\" : \"Can't parse input!\", "
-                    + "\"input\": \"" + testMhchemExpression + "\"}");
-            
+            format.write(response, WireFormat.error("Can't parse input!").put("input", testMhchemExpression));
+
             System.out.println("ERROR: Parser cannot parse input!");
 
         }
@@ -0,0 +1,44 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * This servlet responds 200 OK once the checker has warmed up (see {@link WarmUp}), and 503 before that, so load
+ * balancers only send traffic to warm nodes. Unlike {@link StatusServlet}, it is not meant for liveness checks.
+ */
+public class ReadinessServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+
+        response.setContentType("application/json");
+
+        if (WarmUp.isDone()) {
+            response.setStatus(200);
+            response.getWriter().println("{\"code\" : 200, \"ready\" : true}");
+        } else {
+            response.setStatus(503);
+            response.getWriter().println("{\"code\" : 503, \"ready\" : false}");
+        }
+    }
+
+}
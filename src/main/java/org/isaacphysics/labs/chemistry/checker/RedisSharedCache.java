@@ -0,0 +1,423 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared cache in a server speaking the Redis protocol (RESP), e.g. Redis, Valkey or KeyDB.
+ * <p>
+ *     Only GET and SET with an expiry are used, so the client needs no library. Lookups borrow one of a small pool
+ *     of connections, so lookups of different threads run side by side, and wait at most the timeout for a free
+ *     connection. Stores are queued and sent by a background thread, so grading never waits for them; stores are
+ *     dropped while {@value #MAX_PENDING_STORES} are queued already. If the server cannot be reached or fails,
+ *     lookups miss and stores are dropped, and connecting is retried after {@value #RETRY_MILLIS} ms.
+ * </p>
+ */
+public final class RedisSharedCache implements SharedCache {
+
+    /**
+     * Default number of connections to server.
+     */
+    static final int DEFAULT_CONNECTIONS = 4;
+
+    /**
+     * Time before a failed connection is retried, in ms.
+     */
+    private static final long RETRY_MILLIS = 5000;
+
+    /**
+     * Number of stores that may be waiting to be sent.
+     */
+    private static final int MAX_PENDING_STORES = 1000;
+
+    /**
+     * Host of server.
+     */
+    private final String host;
+
+    /**
+     * Port of server.
+     */
+    private final int port;
+
+    /**
+     * Time entries are kept, in s.
+     */
+    private final int ttlSeconds;
+
+    /**
+     * Time to wait for connecting, for a free connection and for answers, in ms.
+     */
+    private final int timeoutMillis;
+
+    /**
+     * Connections not in use.
+     */
+    private final ArrayBlockingQueue<Connection> idle;
+
+    /**
+     * Permits to use a connection, one per connection in the pool.
+     */
+    private final Semaphore permits;
+
+    /**
+     * Thread sending stores.
+     */
+    private final ThreadPoolExecutor writer;
+
+    /**
+     * Time before which no connection is attempted, from System.nanoTime(), after a failure.
+     */
+    private volatile long retryAt = 0;
+
+    /**
+     * Whether the last command failed, so failures are reported once until the server is back.
+     */
+    private volatile boolean failing = false;
+
+    /**
+     * Constructor method of RedisSharedCache, with {@value #DEFAULT_CONNECTIONS} connections. Connects on first use.
+     *
+     * @param host Host of server.
+     * @param port Port of server.
+     * @param ttlSeconds Time entries are kept, in s.
+     * @param timeoutMillis Time to wait for connecting, for a free connection and for answers, in ms.
+     */
+    public RedisSharedCache(final String host, final int port, final int ttlSeconds, final int timeoutMillis) {
+        this(host, port, ttlSeconds, timeoutMillis, DEFAULT_CONNECTIONS);
+    }
+
+    /**
+     * Constructor method of RedisSharedCache. Connects on first use.
+     *
+     * @param host Host of server.
+     * @param port Port of server.
+     * @param ttlSeconds Time entries are kept, in s.
+     * @param timeoutMillis Time to wait for connecting, for a free connection and for answers, in ms.
+     * @param connections Maximum number of connections to server.
+     */
+    public RedisSharedCache(final String host, final int port, final int ttlSeconds, final int timeoutMillis,
+                            final int connections) {
+
+        if (connections < 1) {
+            throw new IllegalArgumentException("At least one connection is needed, got " + connections);
+        }
+
+        this.host = host;
+        this.port = port;
+        this.ttlSeconds = ttlSeconds;
+        this.timeoutMillis = timeoutMillis;
+        this.idle = new ArrayBlockingQueue<>(connections);
+        this.permits = new Semaphore(connections);
+        this.writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_PENDING_STORES), r -> {
+                    Thread t = new Thread(r, "shared-cache-writer");
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    /**
+     * Borrows a connection, connecting if none is idle, unless waiting to retry.
+     *
+     * @return The connection, or null if none is available within the timeout.
+     */
+    private Connection borrow() {
+
+        if (System.nanoTime() - retryAt < 0) {
+            return null;
+        }
+
+        try {
+            if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+
+        Connection connection = idle.poll();
+
+        if (connection != null) {
+            return connection;
+        }
+
+        try {
+            return new Connection(host, port, timeoutMillis);
+        } catch (IOException e) {
+            permits.release();
+            fail(e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns a connection to the pool, or closes it if it failed.
+     *
+     * @param connection The connection.
+     * @param ok Whether the last command on it succeeded.
+     */
+    private void release(final Connection connection, final boolean ok) {
+
+        if (ok) {
+            idle.offer(connection);
+        } else {
+            connection.close();
+        }
+
+        permits.release();
+    }
+
+    /**
+     * Closes idle connections after a failure, and reports the failure unless it was reported already.
+     *
+     * @param e The failure.
+     */
+    private void fail(final IOException e) {
+
+        if (!failing) {
+            System.out.println("WARN: Shared cache " + host + ":" + port + " unavailable, retrying in "
+                    + RETRY_MILLIS + " ms: " + e);
+            failing = true;
+        }
+
+        retryAt = System.nanoTime() + RETRY_MILLIS * 1000000;
+
+        for (Connection connection = idle.poll(); connection != null; connection = idle.poll()) {
+            connection.close();
+        }
+    }
+
+    /**
+     * Sends a command on a borrowed connection and reads the answer.
+     *
+     * @param args Command and arguments.
+     * @return Value of a bulk string answer; null for a nil answer, or if the command could not be sent.
+     */
+    private byte[] execute(final byte[]... args) {
+
+        Connection connection = borrow();
+
+        if (connection == null) {
+            return null;
+        }
+
+        try {
+            connection.send(args);
+            byte[] value = connection.readReply();
+            failing = false;
+            release(connection, true);
+            return value;
+        } catch (IOException | NumberFormatException e) {
+            release(connection, false);
+            fail((e instanceof IOException) ? (IOException) e : new IOException(e));
+            return null;
+        }
+    }
+
+    @Override
+    public byte[] get(final String key) {
+        return execute("GET".getBytes(StandardCharsets.US_ASCII), key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void put(final String key, final byte[] value) {
+
+        if (System.nanoTime() - retryAt < 0) {
+            return;
+        }
+
+        writer.execute(() -> execute("SET".getBytes(StandardCharsets.US_ASCII), key.getBytes(StandardCharsets.UTF_8),
+                value, "EX".getBytes(StandardCharsets.US_ASCII),
+                Integer.toString(ttlSeconds).getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    /**
+     * Waits until the stores queued so far are sent, or dropped.
+     *
+     * @throws InterruptedException Interrupted while waiting.
+     */
+    void flush() throws InterruptedException {
+        try {
+            writer.submit(() -> { }).get();
+        } catch (ExecutionException e) {
+            // A no-op cannot fail.
+        }
+    }
+
+    /**
+     * Connection to a server speaking RESP.
+     */
+    private static final class Connection {
+
+        /**
+         * Socket of connection.
+         */
+        private final Socket socket;
+
+        /**
+         * Stream of answers of server.
+         */
+        private final InputStream in;
+
+        /**
+         * Stream of commands to server.
+         */
+        private final OutputStream out;
+
+        /**
+         * Constructor method of Connection. Connects to server.
+         *
+         * @param host Host of server.
+         * @param port Port of server.
+         * @param timeoutMillis Time to wait for connecting and for answers, in ms.
+         * @throws IOException Failed to connect.
+         */
+        Connection(final String host, final int port, final int timeoutMillis) throws IOException {
+            this.socket = new Socket();
+
+            try {
+                socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+                socket.setSoTimeout(timeoutMillis);
+                socket.setTcpNoDelay(true);
+                this.in = new BufferedInputStream(socket.getInputStream());
+                this.out = new BufferedOutputStream(socket.getOutputStream());
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        /**
+         * Closes the connection.
+         */
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Closing anyway.
+            }
+        }
+
+        /**
+         * Sends a command as an array of bulk strings.
+         *
+         * @param args Command and arguments.
+         * @throws IOException Failed to send.
+         */
+        void send(final byte[]... args) throws IOException {
+
+            out.write(("*" + args.length + "\r\n").getBytes(StandardCharsets.US_ASCII));
+
+            for (byte[] arg : args) {
+                out.write(("$" + arg.length + "\r\n").getBytes(StandardCharsets.US_ASCII));
+                out.write(arg);
+                out.write('\r');
+                out.write('\n');
+            }
+
+            out.flush();
+        }
+
+        /**
+         * Reads a line of an answer, without its CRLF.
+         *
+         * @return The line.
+         * @throws IOException Failed to read, or connection closed.
+         */
+        private String readLine() throws IOException {
+
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int c;
+
+            while ((c = in.read()) != '\r') {
+                if (c < 0) {
+                    throw new EOFException("Connection closed by server");
+                }
+
+                line.write(c);
+            }
+
+            in.read();
+            return new String(line.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Reads an answer from the connection.
+         *
+         * @return Value of a bulk string answer, null for a nil answer, empty for other answers.
+         * @throws IOException Failed to read, or server answered with an error.
+         */
+        byte[] readReply() throws IOException {
+
+            int type = in.read();
+            String line = readLine();
+
+            switch (type) {
+                case '$':
+                    int length = Integer.parseInt(line);
+
+                    if (length < 0) {
+                        return null;
+                    }
+
+                    byte[] value = new byte[length];
+                    int read = 0;
+
+                    while (read < length) {
+                        int n = in.read(value, read, length - read);
+
+                        if (n < 0) {
+                            throw new EOFException("Connection closed by server");
+                        }
+
+                        read += n;
+                    }
+
+                    readLine();
+                    return value;
+
+                case '+':
+                case ':':
+                    return new byte[0];
+
+                case '-':
+                    throw new IOException("Server error: " + line);
+
+                default:
+                    throw new IOException("Unexpected answer: " + (char) type + line);
+            }
+        }
+    }
+}
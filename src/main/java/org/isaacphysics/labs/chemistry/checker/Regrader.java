@@ -0,0 +1,412 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Command line tool regrading a log of answers offline, with the same results as the /check endpoint.
+ * <p>
+ *     Usage: <code>Regrader answers.(jsonl|csv) results.jsonl [threads]</code>.
+ * </p>
+ * <p>
+ *     Every input row holds questionId, target and test: either as a JSON object per line, or as CSV columns in that
+ *     order (an optional header row is skipped). Rows are read in batches; identical (target, test) pairs are graded
+ *     only once, both within a batch and across recent batches, and the distinct pairs of a batch are graded in
+ *     parallel. Every input row gets one line in the results, in input order:
+ *     <code>{"row": ..., "questionId": ..., "result": {...}}</code>, where result is the /check response.
+ *     Malformed rows are skipped: their result only has an error field, and their questionId is empty.
+ * </p>
+ * <p>
+ *     After each batch, the number of rows done and the size of the results file are saved to
+ *     results.jsonl.checkpoint. A run that finds a checkpoint resumes after the last completed batch.
+ * </p>
+ */
+public final class Regrader {
+
+    /**
+     * Number of rows graded between checkpoints.
+     */
+    private static final int BATCH_SIZE = 10000;
+
+    /**
+     * Number of graded pairs remembered across batches.
+     */
+    private static final int CACHE_SIZE = 100000;
+
+    /**
+     * Object mapper used to read rows and write results.
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Constructor method of Regrader.
+     * Set to private, because we don't want people to instantiate an utility class.
+     */
+    private Regrader() {
+        // Nothing here.
+    }
+
+    /**
+     * Grades a single answer. Never throws: inputs the parser cannot handle give an error result.
+     *
+     * @param target Target string.
+     * @param test User-inputted string.
+     * @return JSON object containing information about the matching.
+     */
+    static ObjectNode grade(final String target, final String test) {
+        try {
+            return RunParser.toCheckResult(RunParser.compare(MAPPER, test, target, null));
+        } catch (Exception e) {
+            ObjectNode node = MAPPER.createObjectNode();
+            node.put("error", e.getClass().getSimpleName());
+            return node;
+        }
+    }
+
+    /**
+     * Splits a CSV record into fields. Fields may be quoted with '"', and quotes inside quoted fields are doubled.
+     *
+     * @param record The record.
+     * @return Fields of record, or null if record ends inside a quoted field.
+     */
+    static ArrayList<String> splitCsv(final String record) {
+
+        ArrayList<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < record.length(); i++) {
+
+            char c = record.charAt(i);
+
+            if (quoted) {
+                if (c == '"' && i + 1 < record.length() && record.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+
+        if (quoted) {
+            return null;
+        }
+
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * Makes the row standing in for a malformed row of input.
+     *
+     * @param error Name of the problem with the row.
+     * @return Array of an empty questionId and error.
+     */
+    private static String[] malformed(final String error) {
+        return new String[] {"", error};
+    }
+
+    /**
+     * Reads the next row of input.
+     *
+     * @param reader Reader for the input.
+     * @param csv True if input is CSV, false if it is JSON lines.
+     * @return Array of questionId, target and test; array of an empty questionId and an error name if the row is
+     *         malformed; or null at end of input.
+     * @throws IOException Failed to read input.
+     */
+    static String[] readRow(final BufferedReader reader, final boolean csv) throws IOException {
+
+        String line;
+
+        do {
+            line = reader.readLine();
+
+            if (line == null) {
+                return null;
+            }
+        } while (line.trim().isEmpty());
+
+        if (!csv) {
+            JsonNode row;
+
+            try {
+                row = MAPPER.readTree(line);
+            } catch (JsonProcessingException e) {
+                return malformed(e.getClass().getSimpleName());
+            }
+
+            return new String[] {row.path("questionId").asText(), row.path("target").asText(),
+                    row.path("test").asText()};
+        }
+
+        StringBuilder record = new StringBuilder(line);
+        ArrayList<String> fields;
+
+        // Quoted fields may span several lines.
+        while ((fields = splitCsv(record.toString())) == null) {
+            line = reader.readLine();
+
+            if (line == null) {
+                return malformed("UnterminatedQuote");
+            }
+
+            record.append('\n').append(line);
+        }
+
+        if (fields.size() < 3) {
+            return malformed("MissingColumns");
+        }
+
+        return new String[] {fields.get(0), fields.get(1), fields.get(2)};
+    }
+
+    /**
+     * Grades a batch of rows, grading every distinct (target, test) pair once.
+     *
+     * @param rows Rows of batch; malformed rows get an error result.
+     * @param cache Results of recently graded pairs; updated with the results of this batch.
+     * @param executor Executor to grade on.
+     * @param threads Number of threads of executor.
+     * @return Results of rows, in order.
+     * @throws InterruptedException Interrupted while waiting for grading.
+     * @throws ExecutionException Grading failed unexpectedly.
+     */
+    private static ArrayList<ObjectNode> gradeBatch(final List<String[]> rows,
+                                                    final LinkedHashMap<Pair<String, String>, ObjectNode> cache,
+                                                    final ExecutorService executor, final int threads)
+            throws InterruptedException, ExecutionException {
+
+        ArrayList<Pair<String, String>> todo = new ArrayList<>();
+        LinkedHashMap<Pair<String, String>, ObjectNode> graded = new LinkedHashMap<>();
+
+        for (String[] row : rows) {
+            if (row.length < 3) {
+                continue;
+            }
+
+            Pair<String, String> key = new Pair<>(row[1], row[2]);
+
+            if (!graded.containsKey(key)) {
+                ObjectNode cached = cache.get(key);
+                graded.put(key, cached);
+
+                if (cached == null) {
+                    todo.add(key);
+                }
+            }
+        }
+
+        // Grade distinct pairs in contiguous slices, one or more per thread.
+        ArrayList<Future<ArrayList<ObjectNode>>> futures = new ArrayList<>();
+        int slice = Math.max(1, (todo.size() + threads * 4 - 1) / (threads * 4));
+
+        for (int from = 0; from < todo.size(); from += slice) {
+
+            final List<Pair<String, String>> part = todo.subList(from, Math.min(from + slice, todo.size()));
+
+            futures.add(executor.submit(() -> {
+                ArrayList<ObjectNode> results = new ArrayList<>(part.size());
+
+                for (Pair<String, String> p : part) {
+                    results.add(grade(p.getFirst(), p.getSecond()));
+                }
+
+                return results;
+            }));
+        }
+
+        int i = 0;
+
+        for (Future<ArrayList<ObjectNode>> future : futures) {
+            for (ObjectNode result : future.get()) {
+                graded.put(todo.get(i), result);
+                cache.put(todo.get(i), result);
+                i++;
+            }
+        }
+
+        ArrayList<ObjectNode> results = new ArrayList<>(rows.size());
+
+        for (String[] row : rows) {
+            if (row.length < 3) {
+                results.add(MAPPER.createObjectNode().put("error", row[1]));
+            } else {
+                results.add(graded.get(new Pair<>(row[1], row[2])));
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Saves progress, replacing the checkpoint file atomically.
+     *
+     * @param checkpoint Path of checkpoint file.
+     * @param rowsDone Number of input rows whose results are written.
+     * @param outputSize Size of results file after writing those rows.
+     * @throws IOException Failed to write checkpoint.
+     */
+    private static void saveCheckpoint(final Path checkpoint, final long rowsDone, final long outputSize)
+            throws IOException {
+        Path temporary = Paths.get(checkpoint + ".tmp");
+        Files.write(temporary, (rowsDone + " " + outputSize + "\n").getBytes(StandardCharsets.US_ASCII));
+        Files.move(temporary, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Main method of Regrader.
+     *
+     * @param args Path of input, path of results, and optionally number of threads.
+     * @throws Exception Failed to read input or write results.
+     */
+    public static void main(final String[] args) throws Exception {
+
+        if (args.length < 2) {
+            System.out.println("Usage: Regrader answers.(jsonl|csv) results.jsonl [threads]");
+            return;
+        }
+
+        Path input = Paths.get(args[0]);
+        Path output = Paths.get(args[1]);
+        Path checkpoint = Paths.get(args[1] + ".checkpoint");
+        boolean csv = args[0].toLowerCase().endsWith(".csv");
+        int threads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        long rowsDone = 0;
+        long outputSize = 0;
+
+        if (Files.exists(checkpoint) && Files.exists(output)) {
+            String[] saved = new String(Files.readAllBytes(checkpoint), StandardCharsets.US_ASCII).trim().split(" ");
+            rowsDone = Long.parseLong(saved[0]);
+            outputSize = Long.parseLong(saved[1]);
+            System.out.println("Resuming after " + rowsDone + " rows.");
+        }
+
+        LinkedHashMap<Pair<String, String>, ObjectNode> cache =
+                new LinkedHashMap<Pair<String, String>, ObjectNode>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(final Map.Entry<Pair<String, String>, ObjectNode> eldest) {
+                        return size() > CACHE_SIZE;
+                    }
+                };
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        long rowsRead = 0;
+        long rowsSkipped = 0;
+
+        try (BufferedReader reader = new BufferedReader(new MappedFileReader(input));
+             FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+
+            // Drop anything written after the last checkpoint.
+            channel.truncate(outputSize);
+            channel.position(outputSize);
+            Writer out = new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8);
+
+            ArrayList<String[]> batch = new ArrayList<>(BATCH_SIZE);
+            String[] row;
+
+            do {
+                row = readRow(reader, csv);
+
+                if (row != null && rowsRead == 0 && csv && "questionId".equals(row[0])) {
+                    // Header row.
+                    row = readRow(reader, csv);
+                }
+
+                if (row != null) {
+                    rowsRead += 1;
+
+                    if (rowsRead <= rowsDone) {
+                        continue;
+                    }
+
+                    if (row.length < 3) {
+                        System.out.println("WARN: Skipping malformed row " + (rowsRead - 1) + ": " + row[1]);
+                        rowsSkipped += 1;
+                    }
+
+                    batch.add(row);
+                }
+
+                if (batch.size() == BATCH_SIZE || (row == null && !batch.isEmpty())) {
+
+                    ArrayList<ObjectNode> results = gradeBatch(batch, cache, executor, threads);
+
+                    for (int i = 0; i < batch.size(); i++) {
+                        ObjectNode line = MAPPER.createObjectNode();
+                        line.put("row", rowsDone + i);
+                        line.put("questionId", batch.get(i)[0]);
+                        line.set("result", results.get(i));
+                        out.write(MAPPER.writeValueAsString(line));
+                        out.write('\n');
+                    }
+
+                    out.flush();
+                    rowsDone += batch.size();
+                    saveCheckpoint(checkpoint, rowsDone, channel.position());
+                    batch.clear();
+
+                    System.out.println("Graded " + rowsDone + " rows.");
+                }
+            } while (row != null);
+
+        } finally {
+            executor.shutdown();
+        }
+
+        Files.deleteIfExists(checkpoint);
+        System.out.println("Regraded " + rowsDone + " rows in " + (System.nanoTime() - start) / 1000000 + " ms, "
+                + rowsSkipped + " of them malformed.");
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates concurrent identical computations: while a result for a key is being computed, further requests for
+ * the same key wait for that computation and share its result instead of starting their own.
+ * <p>
+ *     Nothing is kept once a computation completes, so this is not a cache: a request arriving after the result is
+ *     out computes it afresh (and usually finds the statements in {@link StatementCache}). Results are handed to
+ *     every waiting request, so callers must not modify them.
+ * </p>
+ *
+ * @param <K> Type of keys.
+ * @param <V> Type of results.
+ */
+final class RequestCoalescer<K, V> {
+
+    /**
+     * Pending computations by key.
+     */
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Number of computations run.
+     */
+    private final AtomicLong computed = new AtomicLong();
+
+    /**
+     * Number of requests that shared the result of a computation already in flight.
+     */
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Gets the result for a key, joining a computation in flight for that key, or running one.
+     *
+     * @param key The key.
+     * @param task Computes the result; only called if no computation for key is in flight.
+     * @return Result for key.
+     * @throws Exception Exception thrown by the computation, or interrupted while waiting for it.
+     */
+    V get(final K key, final Callable<V> task) throws Exception {
+
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> pending = inFlight.putIfAbsent(key, future);
+
+        if (pending != null) {
+            coalesced.incrementAndGet();
+
+            try {
+                return pending.get();
+            } catch (ExecutionException e) {
+                // Waiters see the same exception as the request that ran the computation.
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+
+                throw (Error) e.getCause();
+            }
+        }
+
+        computed.incrementAndGet();
+
+        try {
+            V result = task.call();
+            future.complete(result);
+            return result;
+        } catch (Exception | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * Gets the result for a key without blocking, joining a computation in flight for that key, or starting one.
+     *
+     * @param key The key.
+     * @param task Starts the computation; only called if no computation for key is in flight.
+     * @return Future result for key.
+     */
+    CompletableFuture<V> getAsync(final K key, final Supplier<CompletableFuture<V>> task) {
+
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> pending = inFlight.putIfAbsent(key, future);
+
+        if (pending != null) {
+            coalesced.incrementAndGet();
+            return pending;
+        }
+
+        computed.incrementAndGet();
+
+        try {
+            task.get().whenComplete((result, error) -> {
+                inFlight.remove(key, future);
+
+                if (error == null) {
+                    future.complete(result);
+                } else {
+                    future.completeExceptionally(error);
+                }
+            });
+        } catch (RuntimeException | Error e) {
+            inFlight.remove(key, future);
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+    /**
+     * Gets the number of computations run.
+     *
+     * @return Number of computations.
+     */
+    long getComputed() {
+        return computed.get();
+    }
+
+    /**
+     * Gets the number of requests that shared the result of a computation already in flight.
+     *
+     * @return Number of coalesced requests.
+     */
+    long getCoalesced() {
+        return coalesced.get();
+    }
+}
@@ -0,0 +1,368 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Standalone proxy spreading requests over several checker nodes with a {@link ConsistentHashRouter}, for setups
+ * without a gateway that embeds the router.
+ * <p>
+ *     Usage: <code>RoutingProxy port http://node1:5000 http://node2:5000 ...</code>. Every request is forwarded to
+ *     the node chosen for its key, made from the fields questionId, target and test of the body (or of the query, for
+ *     GET). Bodies that are not JSON, Smile or CBOR are keyed by their whole text. The ring is tuned by
+ *     checker.routerReplicas (default {@value ConsistentHashRouter#DEFAULT_REPLICAS}) and checker.routerLoadFactor
+ *     (default {@value ConsistentHashRouter#DEFAULT_LOAD_FACTOR}).
+ * </p>
+ * <p>
+ *     GET /router reports the nodes, their loads and how many requests were spilled over to a neighbour. A node that
+ *     cannot be reached gives 502, and one that does not connect within checker.proxyConnectTimeout ms (default
+ *     {@value #DEFAULT_CONNECT_TIMEOUT}) or answer within checker.proxyReadTimeout ms (default
+ *     {@value #DEFAULT_READ_TIMEOUT}) gives 504; there is no failover, so health checks stay with the load balancer
+ *     in front.
+ * </p>
+ */
+public final class RoutingProxy extends AbstractHandler {
+
+    /**
+     * Largest request body accepted, in bytes. Same as the default of CheckerServer.
+     */
+    private static final int MAX_REQUEST_SIZE = 65536;
+
+    /**
+     * Default time to wait for connecting to a node, in ms.
+     */
+    static final int DEFAULT_CONNECT_TIMEOUT = 1000;
+
+    /**
+     * Default time to wait for a node to answer, in ms.
+     */
+    static final int DEFAULT_READ_TIMEOUT = 30000;
+
+    /**
+     * Request headers passed on to nodes.
+     */
+    private static final String[] REQUEST_HEADERS = {"Content-Type", "Accept", "Accept-Encoding", "If-None-Match"};
+
+    /**
+     * Response headers passed back to clients.
+     */
+    private static final String[] RESPONSE_HEADERS = {"Content-Type", "Content-Encoding", "ETag", "Cache-Control",
+            "Vary"};
+
+    /**
+     * Router choosing the node of each request.
+     */
+    private final ConsistentHashRouter router;
+
+    /**
+     * Time to wait for connecting to a node, in ms.
+     */
+    private final int connectTimeout;
+
+    /**
+     * Time to wait for a node to answer, in ms.
+     */
+    private final int readTimeout;
+
+    /**
+     * Constructor method of RoutingProxy.
+     * Timeouts are read from checker.proxyConnectTimeout and checker.proxyReadTimeout.
+     *
+     * @param router Router choosing the node of each request.
+     */
+    RoutingProxy(final ConsistentHashRouter router) {
+        this(router, Integer.getInteger("checker.proxyConnectTimeout", DEFAULT_CONNECT_TIMEOUT),
+                Integer.getInteger("checker.proxyReadTimeout", DEFAULT_READ_TIMEOUT));
+    }
+
+    /**
+     * Constructor method of RoutingProxy.
+     *
+     * @param router Router choosing the node of each request.
+     * @param connectTimeout Time to wait for connecting to a node, in ms.
+     * @param readTimeout Time to wait for a node to answer, in ms.
+     */
+    RoutingProxy(final ConsistentHashRouter router, final int connectTimeout, final int readTimeout) {
+        this.router = router;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Reads a request body.
+     *
+     * @param request The request.
+     * @return The body, empty if there is none.
+     * @throws IOException Failed to read body, or body is larger than MAX_REQUEST_SIZE.
+     */
+    private static byte[] readBody(final HttpServletRequest request) throws IOException {
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        InputStream in = request.getInputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+
+        while ((read = in.read(buffer)) > 0) {
+            body.write(buffer, 0, read);
+
+            if (body.size() > MAX_REQUEST_SIZE) {
+                throw new IOException("Request body larger than " + MAX_REQUEST_SIZE + " bytes");
+            }
+        }
+
+        return body.toByteArray();
+    }
+
+    /**
+     * Builds the routing key of a request, as {@link ConsistentHashRouter#key(String, String)}.
+     *
+     * @param request The request.
+     * @param body Body of request.
+     * @return The key.
+     */
+    static String routingKey(final HttpServletRequest request, final byte[] body) {
+
+        if (body.length == 0) {
+            String target = request.getParameter("target");
+            return ConsistentHashRouter.key(request.getParameter("questionId"),
+                    (target == null) ? request.getParameter("test") : target);
+        }
+
+        WireFormat format = WireFormat.ofContentType(request.getContentType());
+
+        try {
+            JsonNode fields = (format == null) ? null : format.getMapper().readTree(body);
+
+            if (fields != null && fields.isObject()) {
+                return ConsistentHashRouter.key(fields.path("questionId").asText(null),
+                        fields.has("target") ? fields.get("target").asText() : fields.path("test").asText(null));
+            }
+        } catch (IOException e) {
+            // Forms and documents are keyed by their text below.
+        }
+
+        return ConsistentHashRouter.key(null, new String(body, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Forwards a request to a node, and copies the answer back.
+     *
+     * @param node Base URL of node.
+     * @param request The request.
+     * @param body Body of request.
+     * @param response Response to the client.
+     * @throws SocketTimeoutException Node did not connect or answer in time.
+     * @throws IOException Node cannot be reached.
+     */
+    private void forward(final String node, final HttpServletRequest request, final byte[] body,
+                                final HttpServletResponse response) throws IOException {
+
+        String query = request.getQueryString();
+        URL url = new URL(node + request.getRequestURI() + ((query == null) ? "" : "?" + query));
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.setRequestMethod(request.getMethod());
+
+        for (String header : REQUEST_HEADERS) {
+            String value = request.getHeader(header);
+
+            if (value != null) {
+                connection.setRequestProperty(header, value);
+            }
+        }
+
+        if (body.length > 0) {
+            connection.setDoOutput(true);
+
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+        }
+
+        int code = connection.getResponseCode();
+        response.setStatus(code);
+
+        for (String header : RESPONSE_HEADERS) {
+            String value = connection.getHeaderField(header);
+
+            if (value != null) {
+                response.setHeader(header, value);
+            }
+        }
+
+        InputStream in = (code < 400) ? connection.getInputStream() : connection.getErrorStream();
+
+        if (in != null) {
+            try (InputStream answer = in) {
+                OutputStream out = response.getOutputStream();
+                byte[] buffer = new byte[4096];
+                int read;
+
+                while ((read = answer.read(buffer)) > 0) {
+                    out.write(buffer, 0, read);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reports the state of the router.
+     *
+     * @return Object with routed and spilled counts, and the load of every node.
+     */
+    ObjectNode getStatus() {
+
+        ObjectNode status = JsonNodeFactory.instance.objectNode();
+        status.put("routed", router.getRouted());
+        status.put("spilled", router.getSpilled());
+        ArrayNode nodes = status.putArray("nodes");
+
+        for (String node : router.getNodes()) {
+            nodes.addObject().put("node", node).put("load", router.getLoad(node));
+        }
+
+        return status;
+    }
+
+    @Override
+    public void handle(final String target, final Request baseRequest, final HttpServletRequest request,
+                       final HttpServletResponse response) throws IOException {
+
+        baseRequest.setHandled(true);
+
+        if ("/router".equals(target)) {
+            WireFormat.JSON.write(response, getStatus());
+            return;
+        }
+
+        byte[] body;
+
+        try {
+            body = readBody(request);
+        } catch (IOException e) {
+            response.sendError(413);
+            return;
+        }
+
+        String node = router.acquire(routingKey(request, body));
+
+        try {
+            forward(node, request, body, response);
+        } catch (SocketTimeoutException e) {
+            System.out.println("WARN: Checker node " + node + " timed out: " + e);
+            fail(response, 504, "Checker node timed out");
+        } catch (IOException e) {
+            System.out.println("WARN: Cannot reach checker node " + node + ": " + e);
+            fail(response, 502, "Checker node unavailable");
+        } finally {
+            router.release(node);
+        }
+    }
+
+    /**
+     * Answers with an error, unless part of the answer of the node was sent already.
+     *
+     * @param response Response to the client.
+     * @param code Status code.
+     * @param message Error message.
+     * @throws IOException Failed to write response.
+     */
+    private static void fail(final HttpServletResponse response, final int code, final String message)
+            throws IOException {
+
+        if (!response.isCommitted()) {
+            response.reset();
+            response.setStatus(code);
+            WireFormat.JSON.write(response, WireFormat.error(message));
+        }
+    }
+
+    /**
+     * Builds a proxy server, with timeouts from system properties.
+     *
+     * @param port Port to listen on; 0 for any free port.
+     * @param router Router choosing the node of each request.
+     * @return The server, not started yet.
+     */
+    static Server createServer(final int port, final ConsistentHashRouter router) {
+        return createServer(port, new RoutingProxy(router));
+    }
+
+    /**
+     * Builds a proxy server.
+     *
+     * @param port Port to listen on; 0 for any free port.
+     * @param proxy The proxy.
+     * @return The server, not started yet.
+     */
+    static Server createServer(final int port, final RoutingProxy proxy) {
+
+        Server server = new Server();
+        ServerConnector connector = new ServerConnector(server);
+        connector.setPort(port);
+        server.addConnector(connector);
+        server.setHandler(proxy);
+        return server;
+    }
+
+    /**
+     * Main method of RoutingProxy.
+     *
+     * @param args Port, and base URLs of nodes.
+     * @throws Exception Proxy failed to start.
+     */
+    public static void main(final String[] args) throws Exception {
+
+        if (args.length < 2) {
+            System.out.println("Usage: RoutingProxy port http://node1:5000 [http://node2:5000 ...]");
+            return;
+        }
+
+        ConsistentHashRouter router = new ConsistentHashRouter(Arrays.asList(args).subList(1, args.length),
+                Integer.getInteger("checker.routerReplicas", ConsistentHashRouter.DEFAULT_REPLICAS),
+                Double.parseDouble(System.getProperty("checker.routerLoadFactor",
+                        String.valueOf(ConsistentHashRouter.DEFAULT_LOAD_FACTOR))));
+
+        Server server = createServer(Integer.parseInt(args[0]), router);
+        server.start();
+        System.out.println("Routing port " + ((ServerConnector) server.getConnectors()[0]).getLocalPort() + " to "
+                + router.getNodes());
+        server.join();
+    }
+}
@@ -22,9 +22,8 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import java_cup.runtime.DefaultSymbolFactory;
 
-import java.io.FileInputStream;
-import java.io.InputStreamReader;
 import java.io.StringReader;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
 
@@ -63,15 +62,13 @@ public final class RunParser {
      * @throws Exception Parser has trouble parsing a few terms.
      */
     public static void main(final String[] args) throws Exception {
-        //noinspection deprecation (We know DefaultSymbolFactory is depracated!)
-        @SuppressWarnings("unchecked")
-        ArrayList<Statement> statements = (ArrayList<Statement>) new ChemistryParser(new ChemistryLexer(
-            new InputStreamReader(new FileInputStream("src/test.txt")))).parse().value;
-        System.err.flush();
-        System.out.flush();
-        System.out.println();
-
-        for (Statement statement : statements) {
+        // Statements are read one at a time, so files of any size can be processed.
+        StatementIterator statements = new StatementIterator(new MappedFileReader(Paths.get("src/test.txt")));
+
+        while (statements.hasNext()) {
+            Statement statement = statements.next();
+            System.err.flush();
+            System.out.flush();
             System.out.println(statement);
 
             if (statement.containsError()) {
@@ -145,120 +142,148 @@ public final class RunParser {
      */
     static String parseFromString(final String statementString) {
         try {
-            @SuppressWarnings("unchecked, deprecation")
-            ArrayList<Statement> statements = (ArrayList<Statement>) new ChemistryParser(
-                    new ChemistryLexer(new StringReader(statementString))).parse().value;
-
-            Statement statement = statements.get(0);
             ObjectMapper mapper = new ObjectMapper();
             mapper.enable(SerializationFeature.INDENT_OUTPUT);
+
+            return mapper.writeValueAsString(parse(mapper, statementString));
+        } catch (Exception e) {
+            return "{\"input\" : \"" + statementString + "\", \"error\" : true}";
+        }
+    }
+
+    /**
+     * Parses a mhchem expression into the JSON object returned by {@link #parseFromString(String)}.
+     *
+     * @param mapper Object mapper used to create the JSON object.
+     * @param statementString A single mhchem statement in string form.
+     * @return JSON object describing the statement, or holding input and error fields if it cannot be parsed.
+     */
+    static ObjectNode parse(final ObjectMapper mapper, final String statementString) {
+        try {
+            return describe(mapper, StatementCache.getShared().parse(statementString), statementString);
+        } catch (Exception e) {
             ObjectNode node = mapper.createObjectNode();
+            node.put("input", statementString);
+            node.put("error", true);
+            return node;
+        }
+    }
 
-            if (statement instanceof ExpressionStatement) {
+    /**
+     * Builds the JSON object describing a parsed statement, as returned by {@link #parseFromString(String)}.
+     *
+     * @param mapper Object mapper used to create the JSON object.
+     * @param statement The parsed statement.
+     * @param statementString The string the statement was parsed from.
+     * @return JSON object, describing the statement.
+     */
+    static ObjectNode describe(final ObjectMapper mapper, final Statement statement, final String statementString) {
 
-                ExpressionStatement exprStatement = (ExpressionStatement) statement;
-                node.put("type", "expression");
-                node.put("input", statementString);
-                node.put("result", exprStatement.toString());
-                node.put("containsError", exprStatement.containsError());
-                node.put("charge", exprStatement.getCharge().toString());
-                HashMap<String, Fraction> atomCount = exprStatement.getAtomCount();
-                ObjectNode atomCountNode = node.putObject("atom_count");
+        ObjectNode node = mapper.createObjectNode();
 
-                for (String element : atomCount.keySet()) {
-                    atomCountNode.put(element, atomCount.get(element).toString());
-                }
+        if (statement instanceof ExpressionStatement) {
 
-            } else if (statement instanceof EquationStatement) {
+            ExpressionStatement exprStatement = (ExpressionStatement) statement;
+            node.put("type", "expression");
+            node.put("input", statementString);
+            node.put("result", exprStatement.toString());
+            node.put("containsError", exprStatement.containsError());
+            node.put("charge", exprStatement.getCharge().toString());
+            HashMap<String, Fraction> atomCount = exprStatement.getAtomCount();
+            ObjectNode atomCountNode = node.putObject("atom_count");
 
-                EquationStatement eqnStatement = (EquationStatement) statement;
-                node.put("type", "equation");
-                node.put("input", statementString);
-                node.put("result", eqnStatement.toString());
-                node.put("containsError", eqnStatement.containsError());
-                node.put("balanced", eqnStatement.isBalanced());
-                node.put("balancedAtoms", eqnStatement.isBalancedAtoms());
-                node.put("balancedCharge", eqnStatement.isBalancedCharge());
-
-                ObjectNode leftHandSide = node.putObject("left");
-                Expression left = eqnStatement.getLeftExpression();
-                leftHandSide.put("containsError", left.containsError());
-                leftHandSide.put("charge", left.getCharge().toString());
-                HashMap<String, Fraction> atomCountLeft = left.getAtomCount();
-                ObjectNode atomCountLeftNode = leftHandSide.putObject("atom_count");
-
-                for (String element : atomCountLeft.keySet()) {
-                    atomCountLeftNode.put(element, atomCountLeft.get(element).toString());
-                }
-
-                ObjectNode rightHandSide = node.putObject("right");
-                Expression right = eqnStatement.getRightExpression();
-                rightHandSide.put("containsError", right.containsError());
-                rightHandSide.put("charge", right.getCharge().toString());
-                HashMap<String, Fraction> atomCountRight = right.getAtomCount();
-                ObjectNode atomCountRightNode = rightHandSide.putObject("atom_count");
-
-                for (String element : atomCountRight.keySet()) {
-                    atomCountRightNode.put(element, atomCountRight.get(element).toString());
-                }
+            for (String element : atomCount.keySet()) {
+                atomCountNode.put(element, atomCount.get(element).toString());
+            }
 
-            } else if (statement instanceof NuclearExpressionStatement) {
+        } else if (statement instanceof EquationStatement) {
+
+            EquationStatement eqnStatement = (EquationStatement) statement;
+            node.put("type", "equation");
+            node.put("input", statementString);
+            node.put("result", eqnStatement.toString());
+            node.put("containsError", eqnStatement.containsError());
+            node.put("balanced", eqnStatement.isBalanced());
+            node.put("balancedAtoms", eqnStatement.isBalancedAtoms());
+            node.put("balancedCharge", eqnStatement.isBalancedCharge());
+
+            ObjectNode leftHandSide = node.putObject("left");
+            Expression left = eqnStatement.getLeftExpression();
+            leftHandSide.put("containsError", left.containsError());
+            leftHandSide.put("charge", left.getCharge().toString());
+            HashMap<String, Fraction> atomCountLeft = left.getAtomCount();
+            ObjectNode atomCountLeftNode = leftHandSide.putObject("atom_count");
+
+            for (String element : atomCountLeft.keySet()) {
+                atomCountLeftNode.put(element, atomCountLeft.get(element).toString());
+            }
 
-                NuclearExpressionStatement exprStatement = (NuclearExpressionStatement) statement;
-                node.put("type", "nuclearexpression");
-                node.put("input", statementString);
-                node.put("result", exprStatement.toString());
-                node.put("containsError", exprStatement.containsError());
-                node.put("massCount", exprStatement.getMassCount().toString());
-                node.put("atomCount", exprStatement.getAtomicCount().toString());
+            ObjectNode rightHandSide = node.putObject("right");
+            Expression right = eqnStatement.getRightExpression();
+            rightHandSide.put("containsError", right.containsError());
+            rightHandSide.put("charge", right.getCharge().toString());
+            HashMap<String, Fraction> atomCountRight = right.getAtomCount();
+            ObjectNode atomCountRightNode = rightHandSide.putObject("atom_count");
 
-                HashMap<String, Fraction> atomCount = exprStatement.getAtomCount();
-                ObjectNode atomCountNode = node.putObject("atom_count");
+            for (String element : atomCountRight.keySet()) {
+                atomCountRightNode.put(element, atomCountRight.get(element).toString());
+            }
 
-                for (String element : atomCount.keySet()) {
-                    atomCountNode.put(element, atomCount.get(element).toString());
-                }
+        } else if (statement instanceof NuclearExpressionStatement) {
 
-            } else {
+            NuclearExpressionStatement exprStatement = (NuclearExpressionStatement) statement;
+            node.put("type", "nuclearexpression");
+            node.put("input", statementString);
+            node.put("result", exprStatement.toString());
+            node.put("containsError", exprStatement.containsError());
+            node.put("massCount", String.valueOf(exprStatement.getMassCount()));
+            node.put("atomCount", String.valueOf(exprStatement.getAtomicCount()));
+
+            HashMap<String, Fraction> atomCount = exprStatement.getAtomCount();
+            ObjectNode atomCountNode = node.putObject("atom_count");
 
-                // Statement is an instance of NuclearEquationStatement
-                NuclearEquationStatement eqnStatement = (NuclearEquationStatement) statement;
-                node.put("type", "nuclearequation");
-                node.put("input", statementString);
-                node.put("result", eqnStatement.toString());
-                node.put("containsError", eqnStatement.containsError());
-                node.put("balanced", eqnStatement.isBalanced());
-                node.put("balancedAtom", eqnStatement.isBalancedAtom());
-                node.put("balancedMass", eqnStatement.isBalancedMass());
-
-                ObjectNode leftHandSide = node.putObject("left");
-                Expression left = eqnStatement.getLeftExpression();
-                leftHandSide.put("containsError", left.containsError());
-                leftHandSide.put("massCount", left.getMassCount().toString());
-                leftHandSide.put("atomCount", left.getAtomicCount().toString());
-                HashMap<String, Fraction> atomCountLeft = left.getAtomCount();
-                ObjectNode atomCountLeftNode = leftHandSide.putObject("atom_count");
-
-                for (String element : atomCountLeft.keySet()) {
-                    atomCountLeftNode.put(element, atomCountLeft.get(element).toString());
-                }
-
-                ObjectNode rightHandSide = node.putObject("right");
-                Expression right = eqnStatement.getRightExpression();
-                rightHandSide.put("containsError", right.containsError());
-                rightHandSide.put("massCount", right.getMassCount().toString());
-                rightHandSide.put("atomCount", right.getAtomicCount().toString());
-                HashMap<String, Fraction> atomCountRight = right.getAtomCount();
-                ObjectNode atomCountRightNode = rightHandSide.putObject("atom_count");
-
-                for (String element : atomCountRight.keySet()) {
-                    atomCountRightNode.put(element, atomCountRight.get(element).toString());
-                }
+            for (String element : atomCount.keySet()) {
+                atomCountNode.put(element, atomCount.get(element).toString());
+            }
+
+        } else {
+
+            // Statement is an instance of NuclearEquationStatement
+            NuclearEquationStatement eqnStatement = (NuclearEquationStatement) statement;
+            node.put("type", "nuclearequation");
+            node.put("input", statementString);
+            node.put("result", eqnStatement.toString());
+            node.put("containsError", eqnStatement.containsError());
+            node.put("balanced", eqnStatement.isBalanced());
+            node.put("balancedAtom", eqnStatement.isBalancedAtom());
+            node.put("balancedMass", eqnStatement.isBalancedMass());
+
+            ObjectNode leftHandSide = node.putObject("left");
+            Expression left = eqnStatement.getLeftExpression();
+            leftHandSide.put("containsError", left.containsError());
+            leftHandSide.put("massCount", String.valueOf(left.getMassCount()));
+            leftHandSide.put("atomCount", String.valueOf(left.getAtomicCount()));
+            HashMap<String, Fraction> atomCountLeft = left.getAtomCount();
+            ObjectNode atomCountLeftNode = leftHandSide.putObject("atom_count");
+
+            for (String element : atomCountLeft.keySet()) {
+                atomCountLeftNode.put(element, atomCountLeft.get(element).toString());
+            }
+
+            ObjectNode rightHandSide = node.putObject("right");
+            Expression right = eqnStatement.getRightExpression();
+            rightHandSide.put("containsError", right.containsError());
+            rightHandSide.put("massCount", String.valueOf(right.getMassCount()));
+            rightHandSide.put("atomCount", String.valueOf(right.getAtomicCount()));
+            HashMap<String, Fraction> atomCountRight = right.getAtomCount();
+            ObjectNode atomCountRightNode = rightHandSide.putObject("atom_count");
+
+            for (String element : atomCountRight.keySet()) {
+                atomCountRightNode.put(element, atomCountRight.get(element).toString());
             }
-            return mapper.writeValueAsString(node);
-        } catch (Exception e) {
-            return "{\"input\" : \"" + statementString + "\", \"error\" : true}";
         }
+
+        return node;
     }
 
     /**
@@ -301,44 +326,143 @@ public final class RunParser {
      * @throws Exception Parser having trouble reading strings.
      */
     public static String check(final String testString, final String targetString) throws Exception {
+        return check(testString, targetString, null);
+    }
+
+    /**
+     * Same as {@link #check(String, String)}, but first looks the user input up in a catalogue of known wrong answers.
+     * <p>
+     *     If the input is a known wrong answer of the target, the full comparison is skipped, and the JSON object
+     *     only contains testString, targetString, test, target, containsError, equal, as well as:
+     *     <ul>
+     *         <li>knownWrongAnswer: Always true.</li>
+     *         <li>feedback: Feedback stored in the catalogue for this wrong answer.</li>
+     *     </ul>
+     * </p>
+     *
+     * @param testString User-inputted string
+     * @param targetString String to be matched with.
+     * @param catalogue Catalogue of known wrong answers, or null if there is none.
+     * @return JSON object containing information about the matching.
+     * @throws Exception Parser having trouble reading strings.
+     */
+    static String check(final String testString, final String targetString, final WrongAnswerCatalogue catalogue)
+            throws Exception {
 
         System.out.println("Parse Expressions");
-        @SuppressWarnings("unchecked, deprecation")
-            ArrayList<Statement> testStatements = (ArrayList<Statement>) new ChemistryParser(
-                    new ChemistryLexer(new StringReader(testString))).parse().value;
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.enable(SerializationFeature.INDENT_OUTPUT);
+        return mapper.writeValueAsString(report(compare(mapper, testString, targetString, catalogue), targetString));
+    }
 
-        @SuppressWarnings("unchecked, deprecation")
-            ArrayList<Statement> targetStatements = (ArrayList<Statement>) new ChemistryParser(
-                    new ChemistryLexer(new StringReader(targetString))).parse().value;
+    /**
+     * Logs the result of {@link #compare(ObjectMapper, String, String, WrongAnswerCatalogue)} and turns it into the
+     * object returned by {@link #check(String, String, WrongAnswerCatalogue)}.
+     *
+     * @param node Result of comparison; field targetContainsError is removed.
+     * @param targetString String matched with.
+     * @return The node.
+     */
+    static ObjectNode report(final ObjectNode node, final String targetString) {
 
-        Statement testStatement = testStatements.get(0);
-        Statement targetStatement = targetStatements.get(0);
+        System.out.println("Parsed target: '" + node.get("target").asText() + "'");
+        System.out.println("Parsed test: '" + node.get("test").asText() + "'");
+
+        if (node.has("knownWrongAnswer")) {
+            System.out.println("Known wrong answer: " + node.get("feedback").asText());
+            return node;
+        }
+
+        if (node.get("targetContainsError").asBoolean()) {
+            System.out.println("ERROR: Trusted string contains error!");
+            System.out.println("\t\"" + targetString + "\"");
+            System.out.println("\t\"" + node.get("target").asText() + "\"");
+        }
+
+        toCheckResult(node);
+        System.out.println("Equality:");
+        System.out.println("\tEqual: " + node.get("equal"));
+        System.out.println("\tWeakly equivalent: " + node.get("weaklyEquivalent"));
+        System.out.println("\tContains Error: " + node.get("containsError"));
+
+        return node;
+    }
+
+    /**
+     * Turns the result of {@link #compare(ObjectMapper, String, String, WrongAnswerCatalogue)} into the object
+     * returned by {@link #check(String, String, WrongAnswerCatalogue)}, without logging anything.
+     *
+     * @param node Result of comparison; field targetContainsError is removed.
+     * @return The node.
+     */
+    static ObjectNode toCheckResult(final ObjectNode node) {
+        node.remove("targetContainsError");
+        return node;
+    }
+
+    /**
+     * Compares user input against target string without logging anything, for bulk use.
+     * Gives the same JSON object as {@link #check(String, String, WrongAnswerCatalogue)}, except that it has the
+     * extra field targetContainsError unless the input is a known wrong answer.
+     *
+     * @param mapper Object mapper used to create the JSON object.
+     * @param testString User-inputted string
+     * @param targetString String to be matched with.
+     * @param catalogue Catalogue of known wrong answers, or null if there is none.
+     * @return JSON object containing information about the matching.
+     * @throws Exception Parser having trouble reading strings.
+     */
+    static ObjectNode compare(final ObjectMapper mapper, final String testString, final String targetString,
+                              final WrongAnswerCatalogue catalogue) throws Exception {
+
+        // Targets and popular answers recur, so statements come from the shared cache.
+        return compare(mapper, testString, targetString, catalogue, StatementCache.getShared());
+    }
+
+    /**
+     * Same as {@link #compare(ObjectMapper, String, String, WrongAnswerCatalogue)}, with statements from a given cache.
+     *
+     * @param mapper Object mapper used to create the JSON object.
+     * @param testString User-inputted string
+     * @param targetString String to be matched with.
+     * @param catalogue Catalogue of known wrong answers, or null if there is none.
+     * @param cache Cache to parse both strings with.
+     * @return JSON object containing information about the matching.
+     * @throws Exception Parser having trouble reading strings.
+     */
+    static ObjectNode compare(final ObjectMapper mapper, final String testString, final String targetString,
+                              final WrongAnswerCatalogue catalogue, final StatementCache cache) throws Exception {
+
+        Statement testStatement = cache.parse(testString);
+        Statement targetStatement = cache.parse(targetString);
 
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.enable(SerializationFeature.INDENT_OUTPUT);
         ObjectNode node = mapper.createObjectNode();
         node.put("testString", testString);
         node.put("targetString", targetString);
         node.put("test", testStatement.toString());
         node.put("target", targetStatement.toString());
-        System.out.println("Parsed target: '" + targetStatement.toString() + "'");
-        System.out.println("Parsed test: '" + testStatement.toString() + "'");
 
-        if (targetStatement.containsError()) {
-            System.out.println("ERROR: Trusted string contains error!");
-            System.out.println("\t\"" + targetString + "\"");
-            System.out.println("\t\"" + targetStatement.toString() + "\"");
+        if (catalogue != null) {
+
+            String feedback = catalogue.getFeedback(targetStatement, testStatement);
+
+            if (feedback != null) {
+                node.put("containsError", false);
+                node.put("equal", false);
+                node.put("knownWrongAnswer", true);
+                node.put("feedback", feedback);
+
+                return node;
+            }
         }
+
+        node.put("targetContainsError", targetStatement.containsError());
         node.put("containsError", testStatement.containsError());
         node.put("equal", targetStatement.equals(testStatement));
         node.put("typeMismatch", !targetStatement.getClass().equals(testStatement.getClass()));
         node.put("expectedType", targetStatement.getClass().getSimpleName().replace("Statement", "").toLowerCase());
         node.put("receivedType", testStatement.getClass().getSimpleName().replace("Statement", "").toLowerCase());
         node.put("weaklyEquivalent", targetStatement.weaklyEquivalent(testStatement));
-        System.out.println("Equality:");
-        System.out.println("\tEqual: " + node.get("equal"));
-        System.out.println("\tWeakly equivalent: " + node.get("weaklyEquivalent"));
-        System.out.println("\tContains Error: " + node.get("containsError"));
 
         if (targetStatement instanceof ExpressionStatement) {
 
@@ -393,7 +517,7 @@ public final class RunParser {
 
         node.putArray("wrongTerms").addAll(array);
 
-        return mapper.writeValueAsString(node);
+        return node;
     }
 
     /**
@@ -0,0 +1,314 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Second cache level behind the per-node caches, shared by all nodes through a {@link SharedCache}, so a node that
+ * has just been started fetches the statements and results other nodes already computed.
+ * <p>
+ *     Two kinds of entry are shared:
+ *     <ul>
+ *         <li>Parsed statements, encoded by {@link StatementCodec}, looked up by {@link StatementCache} on a miss.
+ *         The statement cache itself is their near cache.</li>
+ *         <li>Results of comparisons, as compact JSON, looked up by {@link GradingCore}. Results read or computed
+ *         are kept in a near cache of checker.nearCacheSize results (default 10000), so popular results are only
+ *         read from the shared cache once per node.</li>
+ *     </ul>
+ *     Keys start with the {@link GrammarVersion} and the version of their encoding, so nodes of different versions
+ *     can share a backend without reading each other's entries. Without a known grammar version nothing is shared.
+ * </p>
+ * <p>
+ *     The backend is chosen by system property checker.sharedCache:
+ *     <ul>
+ *         <li>unset: no second level.</li>
+ *         <li>redis://host:port: a {@link RedisSharedCache}, keeping entries for checker.sharedCacheTtl seconds
+ *         (default 86400), over at most checker.sharedCacheConnections connections (default 4).</li>
+ *         <li>memory: an {@link InMemorySharedCache}, for tests.</li>
+ *         <li>Any other value: name of a class implementing {@link SharedCache}.</li>
+ *     </ul>
+ * </p>
+ */
+final class SecondLevelCache {
+
+    /**
+     * Default number of results kept in the near cache.
+     */
+    private static final int DEFAULT_NEAR_CACHE_SIZE = 10000;
+
+    /**
+     * Default time entries are kept in Redis, in s.
+     */
+    private static final int DEFAULT_TTL = 86400;
+
+    /**
+     * Time to wait for Redis, in ms. A slow shared cache must not be slower than grading.
+     */
+    private static final int REDIS_TIMEOUT = 200;
+
+    /**
+     * Object mapper encoding results, without indentation.
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Second level used by the servlets, or null if there is none.
+     */
+    private static SecondLevelCache shared = null;
+
+    /**
+     * Whether shared has been created.
+     */
+    private static boolean sharedCreated = false;
+
+    /**
+     * The backend.
+     */
+    private final SharedCache backend;
+
+    /**
+     * Start of keys of statements.
+     */
+    private final String statementPrefix;
+
+    /**
+     * Start of keys of results.
+     */
+    private final String resultPrefix;
+
+    /**
+     * Results recently read or stored, in access order.
+     */
+    private final LinkedHashMap<String, ObjectNode> nearResults;
+
+    /**
+     * Number of lookups answered by the near cache.
+     */
+    private final AtomicLong nearHits = new AtomicLong();
+
+    /**
+     * Number of lookups answered by the backend.
+     */
+    private final AtomicLong remoteHits = new AtomicLong();
+
+    /**
+     * Number of lookups neither could answer.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructor method of SecondLevelCache.
+     *
+     * @param backend The backend.
+     * @param grammarVersion Version of grammar.
+     * @param nearCacheSize Number of results kept in the near cache.
+     */
+    SecondLevelCache(final SharedCache backend, final String grammarVersion, final int nearCacheSize) {
+        this.backend = backend;
+        this.statementPrefix = "chemistry-checker:" + grammarVersion + ":statement:" + StatementCache.FORMAT + "."
+                + StatementCodec.VERSION + ":";
+        this.resultPrefix = "chemistry-checker:" + grammarVersion + ":check:" + HttpCaching.RESPONSE_VERSION + ":";
+        this.nearResults = new LinkedHashMap<String, ObjectNode>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, ObjectNode> eldest) {
+                return size() > nearCacheSize;
+            }
+        };
+    }
+
+    /**
+     * Creates the backend named by a value of checker.sharedCache.
+     *
+     * @param spec Value of checker.sharedCache.
+     * @return The backend.
+     * @throws ReflectiveOperationException Backend class cannot be instantiated.
+     */
+    static SharedCache backend(final String spec) throws ReflectiveOperationException {
+
+        if ("memory".equals(spec)) {
+            return new InMemorySharedCache();
+        }
+
+        if (spec.startsWith("redis://")) {
+            URI uri = URI.create(spec);
+            return new RedisSharedCache(uri.getHost(), (uri.getPort() < 0) ? 6379 : uri.getPort(),
+                    Integer.getInteger("checker.sharedCacheTtl", DEFAULT_TTL), REDIS_TIMEOUT,
+                    Integer.getInteger("checker.sharedCacheConnections", RedisSharedCache.DEFAULT_CONNECTIONS));
+        }
+
+        return (SharedCache) Class.forName(spec).getConstructor().newInstance();
+    }
+
+    /**
+     * Returns the second level used by the servlets, creating it on first use.
+     *
+     * @return The second level, or null if checker.sharedCache is unset, cannot be created, or the grammar version
+     *         is unknown.
+     */
+    static synchronized SecondLevelCache getShared() {
+
+        if (!sharedCreated) {
+            sharedCreated = true;
+            String spec = System.getProperty("checker.sharedCache");
+            String grammarVersion = GrammarVersion.get();
+
+            if (spec != null && grammarVersion != null) {
+                try {
+                    shared = new SecondLevelCache(backend(spec), grammarVersion,
+                            Integer.getInteger("checker.nearCacheSize", DEFAULT_NEAR_CACHE_SIZE));
+                    System.out.println("Sharing statements and results through " + spec);
+                } catch (ReflectiveOperationException | ClassCastException | IllegalArgumentException e) {
+                    System.out.println("WARN: Cannot use shared cache " + spec + ", not sharing: " + e);
+                }
+            }
+        }
+
+        return shared;
+    }
+
+    /**
+     * Looks up a parsed statement.
+     *
+     * @param input Normalized input, see {@link StatementCache#normalize(String)}.
+     * @return The statement, or null if it is not shared.
+     */
+    Statement getStatement(final String input) {
+
+        byte[] encoded = backend.get(statementPrefix + HttpCaching.hash(input));
+
+        if (encoded != null) {
+            try {
+                Statement statement = StatementCodec.decode(encoded);
+                remoteHits.incrementAndGet();
+                return statement;
+            } catch (IllegalArgumentException malformed) {
+                // Parsed again and replaced below.
+            }
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Shares a parsed statement.
+     *
+     * @param input Normalized input.
+     * @param statement The statement parsed from input.
+     */
+    void putStatement(final String input, final Statement statement) {
+        backend.put(statementPrefix + HttpCaching.hash(input), StatementCodec.encode(statement));
+    }
+
+    /**
+     * Builds the key of the result of a comparison.
+     *
+     * @param catalogueVersion Hash of the catalogue of known wrong answers, or null if there is none.
+     * @param target Normalized target.
+     * @param test Normalized user input.
+     * @return The key.
+     */
+    String resultKey(final String catalogueVersion, final String target, final String test) {
+        return resultPrefix + HttpCaching.hash((catalogueVersion == null) ? "" : catalogueVersion, target, test);
+    }
+
+    /**
+     * Looks up the result of a comparison, first in the near cache and then in the backend.
+     *
+     * @param key Key from {@link #resultKey(String, String, String)}.
+     * @return The result, to be treated as read-only; or null if it is not shared.
+     */
+    ObjectNode getResult(final String key) {
+
+        synchronized (nearResults) {
+            ObjectNode near = nearResults.get(key);
+
+            if (near != null) {
+                nearHits.incrementAndGet();
+                return near;
+            }
+        }
+
+        byte[] encoded = backend.get(key);
+
+        if (encoded != null) {
+            try {
+                JsonNode result = MAPPER.readTree(encoded);
+
+                if (result instanceof ObjectNode) {
+                    remoteHits.incrementAndGet();
+
+                    synchronized (nearResults) {
+                        nearResults.put(key, (ObjectNode) result);
+                    }
+
+                    return (ObjectNode) result;
+                }
+            } catch (IOException malformed) {
+                // Computed again and replaced below.
+            }
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Shares the result of a comparison, and keeps it in the near cache.
+     *
+     * @param key Key from {@link #resultKey(String, String, String)}.
+     * @param result The result; not modified afterwards.
+     */
+    void putResult(final String key, final ObjectNode result) {
+
+        synchronized (nearResults) {
+            nearResults.put(key, result);
+        }
+
+        try {
+            backend.put(key, MAPPER.writeValueAsBytes(result));
+        } catch (IOException impossible) {
+            throw new IllegalStateException(impossible);
+        }
+    }
+
+    /**
+     * Reports the metrics of this cache.
+     *
+     * @return Object with counts of lookups answered by the near cache and the backend, and of misses.
+     */
+    ObjectNode getMetrics() {
+
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("nearHits", nearHits.get());
+        node.put("remoteHits", remoteHits.get());
+        node.put("misses", misses.get());
+
+        return node;
+    }
+}
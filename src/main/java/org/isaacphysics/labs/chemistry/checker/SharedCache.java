@@ -0,0 +1,50 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.isaacphysics.labs.chemistry.checker;
+
+/**
+ * Service provider interface of the second-level cache shared by all checker nodes, see {@link SecondLevelCache}.
+ * <p>
+ *     A shared cache maps string keys to opaque byte arrays, e.g. in Redis, memcached or a key-value store of the
+ *     deployment. Implementations must be thread-safe, and must treat their backend as optional: when it cannot be
+ *     reached, {@link #get(String)} answers null and {@link #put(String, byte[])} drops the entry, so grading carries
+ *     on without the shared cache. Entries may be evicted at any time.
+ * </p>
+ * <p>
+ *     Implementations other than those bundled are named by class in checker.sharedCache, and need a public
+ *     constructor without arguments.
+ * </p>
+ */
+public interface SharedCache {
+
+    /**
+     * Looks up an entry.
+     *
+     * @param key Key of entry.
+     * @return Value of entry, or null if there is none or the backend cannot be reached.
+     */
+    byte[] get(String key);
+
+    /**
+     * Stores an entry, replacing any entry with the same key.
+     *
+     * @param key Key of entry.
+     * @param value Value of entry; not modified afterwards.
+     */
+    void put(String key, byte[] value);
+}
@@ -19,93 +19,208 @@ package org.isaacphysics.labs.chemistry.checker;
 import java.util.HashMap;
 
 /**
- * Base class for special types of nuclear particles, such as electrons, gamma rays.
- * These particles have very similar behaviours, so base class is made to avoid reinventing the wheel.
+ * Special types of nuclear particles, such as electrons, gamma rays.
+ * <p>
+ *     All particles behave the same way and only differ in the constants listed in {@link Kind}. Particles written
+ *     with their correct mass and atomic numbers are by far the most common, so {@link #of(Kind, int, int)} hands
+ *     out one shared immutable instance per kind for them. Those instances compare by identity, and their string
+ *     form, hash code, charge and DOT label are computed only once. As a shared instance may appear in several
+ *     terms, its DOT node id is taken from the owning term, see {@link #getDotId(AbstractTerm)}.
+ * </p>
  *
  * Created by Ryan on 22/06/2016.
  */
-public abstract class SpecialNuclear extends Nuclear {
+public final class SpecialNuclear extends Nuclear {
+
     /**
-     * Mass number (correct answer).
+     * Kinds of special nuclear particles, together with their correct mass and atomic numbers.
      */
-    private Integer mass;
+    public enum Kind {
+        /** Alpha particle. */
+        ALPHA(4, 2, 2, "Alpha particle", "alphaparticle", "&#945;"),
+        /** Beta particle. */
+        BETA(0, -1, -1, "Beta particle", "betaparticle", "&#946;"),
+        /** Gamma ray. */
+        GAMMA(0, 0, 0, "Gamma ray", "gammaray", "&#947;"),
+        /** Neutrino. */
+        NEUTRINO(0, 0, 0, "Neutrino", "neutrino", "&#957;&zwj;e&zwnj;"),
+        /** Antineutrino. */
+        ANTI_NEUTRINO(0, 0, 0, "Antineutrino", "antineutrino", "&#957;&zwj;e&zwnj;"),
+        /** Electron, as a nuclear particle. */
+        ELECTRON(0, -1, -1, "Electron", "electron", "e&zwj;&zwj;-&zwnj;"),
+        /** Positron. */
+        POSITRON(0, 1, 1, "Positron", "positron", "e&zwj;&zwj;+&zwnj;"),
+        /** Neutron. */
+        NEUTRON(1, 0, 0, "Neutron", "neutron", "n"),
+        /** Proton. */
+        PROTON(1, 1, 1, "Proton", "proton", "p");
+
+        /**
+         * Mass number (correct answer).
+         */
+        private final int mass;
+
+        /**
+         * Atomic number (correct answer).
+         */
+        private final int atom;
+
+        /**
+         * Fraction form of charge.
+         */
+        private final Fraction charge;
+
+        /**
+         * Name of subparticle.
+         */
+        private final String name;
+
+        /**
+         * (mhchem) Syntax of subparticle.
+         */
+        private final String syntax;
+
+        /**
+         * Abbreviation of subparticle.
+         */
+        private final String abbr;
+
+        /**
+         * Constructor method of Kind.
+         *
+         * @param mass Correct mass number
+         * @param atom Correct atomic number
+         * @param charge Charge
+         * @param name Name of nuclear particle
+         * @param syntax (mhchem) Syntax of subparticle
+         * @param abbr Abbreviation of nuclear particle
+         */
+        Kind(final int mass, final int atom, final int charge, final String name, final String syntax,
+             final String abbr) {
+            this.mass = mass;
+            this.atom = atom;
+            this.charge = new Fraction(charge, 1);
+            this.name = name;
+            this.syntax = syntax;
+            this.abbr = abbr;
+        }
+    }
 
     /**
-     * Atomic number (correct answer).
+     * Shared instances of particles with correct mass and atomic numbers, indexed by ordinal of kind.
      */
-    private Integer atom;
+    private static final SpecialNuclear[] CANONICAL = new SpecialNuclear[Kind.values().length];
 
     /**
-     * Actual atomic number (user input).
+     * Saved atom count.
      */
-    private Integer actualAtom;
+    private static HashMap<String, Fraction> atomCount = new HashMap<>();
+
+    static {
+        for (Kind k : Kind.values()) {
+            CANONICAL[k.ordinal()] = new SpecialNuclear(k, k.mass, k.atom);
+        }
+    }
+
+    /**
+     * Kind of this particle.
+     */
+    private final Kind kind;
 
     /**
      * Actual mass number (user input).
      */
-    private Integer actualMass;
+    private final int actualMass;
 
     /**
-     * Name of subparticle.
+     * Actual atomic number (user input).
      */
-    private String name;
+    private final int actualAtom;
 
     /**
-     * Syntax of subparticle.
+     * Precomputed string form.
      */
-    private String syntax;
+    private final String string;
 
     /**
-     * Abbreviation of subparticle.
+     * Precomputed hash code.
      */
-    private String abbr;
+    private final int hash;
 
     /**
-     * Fraction form of charge.
+     * Precomputed DOT string.
      */
-    private Fraction chargeFrac;
+    private final String dotString;
 
     /**
-     * Saved atom count.
+     * Precomputed DOT code following the node id.
      */
-    private static HashMap<String, Fraction> atomCount = new HashMap<>();
+    private final String dotLabel;
 
     /**
-     * Constructor method of SpecialNuclear.
-     * @param mass Actual mass number
-     * @param atom Actual atomic number
+     * Constructor method of SpecialNuclear. Use {@link #of(Kind, int, int)} instead.
+     *
+     * @param kind Kind of particle
      * @param actualMass Mass number inputted by student
      * @param actualAtom Atom number inputted by student
-     * @param charge Charge
-     * @param name Name of nuclear particle
-     * @param syntax (mhchem) Syntax of subparticle
-     * @param abbr Abbreviation of nuclear particle
      */
-    public SpecialNuclear(final Integer mass, final Integer atom, final Integer actualMass, final Integer actualAtom,
-                          final Integer charge, final String name, final String syntax, final String abbr) {
-        this.mass = mass;
-        this.atom = atom;
+    private SpecialNuclear(final Kind kind, final int actualMass, final int actualAtom) {
+        super();
+
+        this.kind = kind;
         this.actualMass = actualMass;
         this.actualAtom = actualAtom;
-        this.name = name;
-        this.syntax = syntax;
-        this.abbr = abbr;
-        this.chargeFrac = new Fraction(charge, 1);
+
+        this.string = "{}^{" + actualMass + "}" + "_{" + actualAtom + "}" + "\\" + kind.syntax;
+        this.hash = string.hashCode();
+        this.dotString = "&zwj;&zwj;" + actualMass + "&zwnj;&zwj;" + actualAtom + "&zwnj;" + kind.abbr;
+        this.dotLabel = " [label=\"{&zwj;&zwj;&zwj;&zwj;" + kind.name + "&zwnj;|\\n"
+                + dotString
+                + "\\n\\n|&zwj;&zwj;&zwj;atomic #&zwnj;: " + actualAtom
+                + "\\n|&zwj;&zwj;&zwj;mass #&zwnj;: " + actualMass
+                + "}\",color=\"#4c7fbe\"];\n";
+    }
+
+    /**
+     * Gives a particle of given kind, with mass and atomic numbers as written by student.
+     * Returns the shared instance of the kind if numbers are correct.
+     *
+     * @param kind Kind of particle
+     * @param mass Mass number inputted by student
+     * @param atom Atom number inputted by student
+     * @return Particle of given kind.
+     */
+    public static SpecialNuclear of(final Kind kind, final int mass, final int atom) {
+
+        if (mass == kind.mass && atom == kind.atom) {
+            return CANONICAL[kind.ordinal()];
+        }
+
+        return new SpecialNuclear(kind, mass, atom);
+    }
+
+    /**
+     * Getter method. Returns kind of this particle.
+     *
+     * @return Kind of particle.
+     */
+    public Kind getKind() {
+        return kind;
     }
 
     @Override
-    public Integer getMassNumber() {
+    public int getMassNumber() {
         return actualMass;
     }
 
     @Override
-    public Integer getAtomicNumber() {
+    public int getAtomicNumber() {
         return actualAtom;
     }
 
     @Override
     public Fraction getCharge() {
-        return chargeFrac;
+        return kind.charge;
     }
 
     @Override
@@ -114,41 +229,67 @@ public abstract class SpecialNuclear extends Nuclear {
     }
 
     @Override
-    public abstract boolean equals(Object o);
+    public boolean equals(final Object o) {
+
+        if (o == this) {
+            return true;
+        }
+
+        if (!(o instanceof SpecialNuclear)) {
+            return false;
+        }
+
+        SpecialNuclear p = (SpecialNuclear) o;
+        return p.kind == kind && p.actualAtom == actualAtom && p.actualMass == actualMass;
+    }
 
     @Override
     public String toString() {
-        return "{}^{" + actualMass + "}" + "_{" + actualAtom + "}" + "\\" + syntax;
+        return string;
     }
 
     @Override
     public String getDotId() {
-        return syntax + "_" + getdotId();
+        return kind.syntax + "_" + getdotId();
     }
 
     @Override
     public String getDotCode() {
-        return "\t"
-                + getDotId()
-                + " [label=\"{&zwj;&zwj;&zwj;&zwj;" + name + "&zwnj;|\\n"
-                + getDotString()
-                + "\\n\\n|&zwj;&zwj;&zwj;atomic #&zwnj;: " + actualAtom
-                + "\\n|&zwj;&zwj;&zwj;mass #&zwnj;: " + actualMass
-                + "}\",color=\"#4c7fbe\"];\n";
+        return "\t" + getDotId() + dotLabel;
+    }
+
+    /**
+     * Returns the DOT node id of this particle as the formula of a term, unique per term even for shared instances.
+     *
+     * @param owner Term this particle is the formula of.
+     * @return DOT node id.
+     */
+    String getDotId(final AbstractTerm owner) {
+        return kind.syntax + "_term_" + owner.getdotId();
+    }
+
+    /**
+     * Returns the DOT code of this particle as the formula of a term, see {@link #getDotId(AbstractTerm)}.
+     *
+     * @param owner Term this particle is the formula of.
+     * @return DOT code.
+     */
+    String getDotCode(final AbstractTerm owner) {
+        return "\t" + getDotId(owner) + dotLabel;
     }
 
     @Override
     public String getDotString() {
-        return "&zwj;&zwj;" + actualMass + "&zwnj;&zwj;" + actualAtom + "&zwnj;" + abbr;
+        return dotString;
     }
 
     @Override
     public boolean isValidAtomicNumber() {
-        return actualAtom.equals(atom) && actualMass.equals(mass);
+        return actualAtom == kind.atom && actualMass == kind.mass;
     }
 
     @Override
     public int hashCode() {
-        return toString().hashCode();
+        return hash;
     }
 }
@@ -0,0 +1,281 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * Measures startup of the checker server with and without a class-data-sharing archive, and provides the training
+ * run the archive is built from (see the "cds" profile in pom.xml).
+ * <p>
+ *     Usage:
+ *     <ul>
+ *         <li><code>StartupBenchmark train</code>: Starts the server in this JVM, sends every statement of the
+ *         warm-up corpus to /parse and /check over HTTP, and exits. Run with -XX:DumpLoadedClassList to record the
+ *         classes a working server loads.</li>
+ *         <li><code>StartupBenchmark checker.jar checker.jsa [runs]</code>: Starts the server from the jar in fresh
+ *         JVMs, with and without the archive, and reports the median time from process start to the first successful
+ *         response of /check.</li>
+ *     </ul>
+ * </p>
+ */
+public final class StartupBenchmark {
+
+    /**
+     * Default number of runs with and without archive.
+     */
+    private static final int DEFAULT_RUNS = 5;
+
+    /**
+     * Time between attempts to reach a starting server, in ms.
+     */
+    private static final int POLL_INTERVAL = 5;
+
+    /**
+     * Time after which a starting server is given up on, in ms.
+     */
+    private static final long START_TIMEOUT = 60000;
+
+    /**
+     * Object mapper used to build requests.
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Constructor method of StartupBenchmark.
+     * Set to private, because we don't want people to instantiate an utility class.
+     */
+    private StartupBenchmark() {
+        // Nothing here.
+    }
+
+    /**
+     * Sends a request and reads the whole response.
+     *
+     * @param url URL of request.
+     * @param body Body of POST request, or null for GET.
+     * @return Status code of response.
+     * @throws IOException Server cannot be reached.
+     */
+    static int request(final URL url, final String body) throws IOException {
+
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+
+        try {
+            if (body != null) {
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", "application/json");
+
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+
+            int code = connection.getResponseCode();
+            InputStream in = (code < 400) ? connection.getInputStream() : connection.getErrorStream();
+
+            if (in != null) {
+                try (InputStream response = in) {
+                    byte[] buffer = new byte[4096];
+
+                    while (response.read(buffer) > 0) {
+                        // Drain, so the connection can be reused.
+                    }
+                }
+            }
+
+            return code;
+
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Builds the body of a /check request.
+     *
+     * @param target Target string.
+     * @param test User-inputted string.
+     * @return JSON body.
+     * @throws IOException Failed to write JSON.
+     */
+    private static String checkBody(final String target, final String test) throws IOException {
+        ObjectNode node = MAPPER.createObjectNode();
+        node.put("target", target);
+        node.put("test", test);
+        return MAPPER.writeValueAsString(node);
+    }
+
+    /**
+     * Training run: serves the warm-up corpus over HTTP from a server in this JVM.
+     *
+     * @throws Exception Server failed.
+     */
+    private static void train() throws Exception {
+
+        Server server = CheckerServer.createServer(0);
+        server.start();
+
+        try {
+            String base = "http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+            ArrayList<String> corpus = WarmUp.corpus();
+
+            request(new URL(base + "/"), null);
+            request(new URL(base + "/ready"), null);
+
+            for (int i = 0; i < corpus.size(); i++) {
+                ObjectNode parse = MAPPER.createObjectNode();
+                parse.put("test", corpus.get(i));
+                request(new URL(base + "/parse"), MAPPER.writeValueAsString(parse));
+                request(new URL(base + "/check"),
+                        checkBody(corpus.get(i), corpus.get((i + 1) % corpus.size())));
+            }
+
+            System.out.println("Trained on " + corpus.size() + " statements.");
+
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Starts the server from a jar in a fresh JVM, and measures the time until it first answers /check.
+     *
+     * @param jar Path of executable jar.
+     * @param archive Path of class-data-sharing archive, or null to run without.
+     * @return Time to first response, in ms.
+     * @throws Exception Server failed to start.
+     */
+    private static long timeToFirstResponse(final String jar, final String archive) throws Exception {
+
+        int port;
+
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        ArrayList<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+
+        if (archive != null) {
+            command.add("-XX:SharedArchiveFile=" + archive);
+            command.add("-Xshare:auto");
+        }
+
+        command.add("-Dchecker.port=" + port);
+        command.add("-Dchecker.warmupRounds=0");
+        command.add("-jar");
+        command.add(jar);
+
+        URL url = new URL("http://localhost:" + port + "/check");
+        String body = checkBody("2H2 + O2 -> 2H2O", "O2 + 2H2 -> 2H2O");
+
+        File log = File.createTempFile("checker", ".log");
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start();
+
+        try {
+            while ((System.nanoTime() - start) / 1000000 < START_TIMEOUT) {
+                try {
+                    if (request(url, body) == 200) {
+                        return (System.nanoTime() - start) / 1000000;
+                    }
+                } catch (IOException e) {
+                    // Not listening yet.
+                }
+
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("Server exited with code " + process.exitValue());
+                }
+
+                Thread.sleep(POLL_INTERVAL);
+            }
+
+            throw new IllegalStateException("Server did not answer within " + START_TIMEOUT + " ms");
+
+        } finally {
+            process.destroy();
+            process.waitFor();
+            Files.delete(log.toPath());
+        }
+    }
+
+    /**
+     * Measures the median time to first response over a number of runs.
+     *
+     * @param jar Path of executable jar.
+     * @param archive Path of class-data-sharing archive, or null to run without.
+     * @param runs Number of runs.
+     * @return Median time to first response, in ms.
+     * @throws Exception Server failed to start.
+     */
+    private static long median(final String jar, final String archive, final int runs) throws Exception {
+
+        ArrayList<Long> times = new ArrayList<>();
+
+        for (int i = 0; i < runs; i++) {
+            times.add(timeToFirstResponse(jar, archive));
+        }
+
+        Collections.sort(times);
+        System.out.println((archive == null ? "Without" : "With") + " archive: " + times + " ms");
+        return times.get(runs / 2);
+    }
+
+    /**
+     * Main method of StartupBenchmark.
+     *
+     * @param args "train", or path of jar, path of archive and optionally number of runs.
+     * @throws Exception Server failed.
+     */
+    public static void main(final String[] args) throws Exception {
+
+        if (args.length == 1 && "train".equals(args[0])) {
+            train();
+            // Warm-up may still be running in the background.
+            System.exit(0);
+        }
+
+        if (args.length < 2) {
+            System.out.println("Usage: StartupBenchmark train | StartupBenchmark checker.jar checker.jsa [runs]");
+            return;
+        }
+
+        int runs = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_RUNS;
+        long without = median(args[0], null, runs);
+        long with = median(args[0], args[1], runs);
+
+        System.out.println("Median time to first response: " + without + " ms without archive, " + with
+                + " ms with archive.");
+    }
+}
@@ -67,6 +67,16 @@ abstract class Statement {
      */
     public abstract ArrayList<Term> getWrongTerms(Statement e);
 
+    /**
+     * Returns a canonical fingerprint of the statement: its mhchem form with terms sorted, so that two statements
+     * have the same fingerprint exactly when they are equal.
+     * <p>
+     *     For instance, both H2O + CO2 and CO2+H2O have fingerprint CO2 + H2O.
+     *
+     * @return Canonical form of the statement, or null if the statement contains error terms.
+     */
+    abstract String getCanonicalForm();
+
     @Override
     public int hashCode() {
         return toString().hashCode();
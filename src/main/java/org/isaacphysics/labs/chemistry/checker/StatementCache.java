@@ -0,0 +1,615 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import java_cup.runtime.DefaultSymbolFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of parsed statements, keyed by normalised input, which can be persisted so it survives restarts.
+ * <p>
+ *     Statements are kept in memory in least recently used order. If a store file is given, every newly parsed
+ *     input is also appended to it together with its statement, encoded by {@link StatementCodec}, by a background
+ *     thread, so parsing never waits for the disk. The store is loaded again when the cache is created, decoding the
+ *     statements straight from the mapped file, so a restarted node serves popular inputs without parsing them.
+ * </p>
+ * <p>
+ *     The store starts with a header holding the format, the codec version and the {@link GrammarVersion}. A store
+ *     written by another format, codec or grammar is discarded at load time, as is a record cut short by a crash.
+ *     The store is rewritten with only the cached statements whenever it holds more than twice as many records as
+ *     the cache can hold, at load time and while running, so it never grows much beyond the cache.
+ * </p>
+ * <p>
+ *     Cached statements are shared between threads, and must be treated as read-only.
+ * </p>
+ */
+final class StatementCache {
+
+    /**
+     * Default maximum number of statements cached.
+     */
+    static final int DEFAULT_CAPACITY = 100000;
+
+    /**
+     * Version of the store format, and of the keys built by {@link #normalize(String)}.
+     */
+    static final int FORMAT = 3;
+
+    /**
+     * Number of records that may be waiting to be written; further records are not persisted.
+     */
+    private static final int MAX_PENDING_WRITES = 10000;
+
+    /**
+     * Start of header of store.
+     */
+    private static final String MAGIC = "chemistry-checker statement cache";
+
+    /**
+     * Cache shared by the servlets, or null if it has not been created yet.
+     */
+    private static StatementCache shared = null;
+
+    /**
+     * Maximum number of statements cached.
+     */
+    private final int capacity;
+
+    /**
+     * Cached statements, in access order.
+     */
+    private final LinkedHashMap<String, Statement> statements;
+
+    /**
+     * Path of store, or null if the cache is not persisted.
+     */
+    private final Path store;
+
+    /**
+     * Header of store, holding format and grammar version.
+     */
+    private final String header;
+
+    /**
+     * If true, the parser does not report syntax errors on the console.
+     */
+    private final boolean quiet;
+
+    /**
+     * Cache shared with other nodes, asked before parsing; or null if there is none.
+     */
+    private final SecondLevelCache secondLevel;
+
+    /**
+     * Thread writing to store, or null if the cache is not persisted.
+     */
+    private final ThreadPoolExecutor writer;
+
+    /**
+     * Stream appending to store, or null if nothing is persisted. Only used by the writer once loaded.
+     */
+    private DataOutputStream out = null;
+
+    /**
+     * Number of records in store, including duplicates. Only used by the writer once loaded.
+     */
+    private long stored = 0;
+
+    /**
+     * Number of inputs found in cache.
+     */
+    private long hits = 0;
+
+    /**
+     * Number of inputs that had to be parsed.
+     */
+    private long misses = 0;
+
+    /**
+     * Constructor method of StatementCache.
+     *
+     * @param store Path of store, or null if the cache is not to be persisted.
+     * @param capacity Maximum number of statements cached.
+     * @param grammarVersion Version of grammar; if null, the cache is not persisted.
+     * @throws IOException Failed to read or write store.
+     */
+    StatementCache(final Path store, final int capacity, final String grammarVersion) throws IOException {
+        this(store, capacity, grammarVersion, false, null);
+    }
+
+    /**
+     * Constructor method of StatementCache.
+     *
+     * @param store Path of store, or null if the cache is not to be persisted.
+     * @param capacity Maximum number of statements cached.
+     * @param grammarVersion Version of grammar; if null, the cache is not persisted.
+     * @param quiet If true, the parser does not report syntax errors on the console.
+     * @param secondLevel Cache shared with other nodes, or null if there is none.
+     * @throws IOException Failed to read or write store.
+     */
+    StatementCache(final Path store, final int capacity, final String grammarVersion, final boolean quiet,
+                   final SecondLevelCache secondLevel) throws IOException {
+
+        this.capacity = capacity;
+        this.quiet = quiet;
+        this.secondLevel = secondLevel;
+        this.statements = new LinkedHashMap<String, Statement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Statement> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.store = (grammarVersion == null) ? null : store;
+        this.header = MAGIC + " " + FORMAT + "." + StatementCodec.VERSION + " " + grammarVersion;
+
+        if (this.store != null) {
+            load();
+            this.writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(MAX_PENDING_WRITES), r -> {
+                        Thread t = new Thread(r, "statement-cache-writer");
+                        t.setDaemon(true);
+                        return t;
+                    }, new ThreadPoolExecutor.DiscardPolicy());
+        } else {
+            this.writer = null;
+        }
+    }
+
+    /**
+     * Constructor method of StatementCache, for the grammar the parser was generated from.
+     *
+     * @param store Path of store, or null if the cache is not to be persisted.
+     * @param capacity Maximum number of statements cached.
+     * @throws IOException Failed to read or write store.
+     */
+    StatementCache(final Path store, final int capacity) throws IOException {
+        this(store, capacity, GrammarVersion.get());
+    }
+
+    /**
+     * Creates a cache that is only kept in memory, and never writes to the console.
+     *
+     * @param capacity Maximum number of statements cached.
+     * @return The cache.
+     */
+    static StatementCache inMemory(final int capacity) {
+        try {
+            return new StatementCache(null, capacity, null, true, null);
+        } catch (IOException impossible) {
+            throw new IllegalStateException(impossible);
+        }
+    }
+
+    /**
+     * Returns the cache shared by the servlets, creating it on first use.
+     * The path of the store is taken from system property "checker.cache" (not persisted if unset), the
+     * capacity from "checker.cacheSize", and the second level from "checker.sharedCache" (see
+     * {@link SecondLevelCache}).
+     *
+     * @return The shared cache.
+     */
+    static synchronized StatementCache getShared() {
+
+        if (shared == null) {
+            String path = System.getProperty("checker.cache");
+            int size = Integer.getInteger("checker.cacheSize", DEFAULT_CAPACITY);
+            SecondLevelCache secondLevel = SecondLevelCache.getShared();
+
+            try {
+                shared = new StatementCache((path == null) ? null : Paths.get(path), size, GrammarVersion.get(), false,
+                        secondLevel);
+            } catch (IOException e) {
+                System.out.println("Cannot use statement cache " + path + ", not persisting statements: " + e);
+
+                try {
+                    shared = new StatementCache(null, size, null, false, secondLevel);
+                } catch (IOException impossible) {
+                    throw new IllegalStateException(impossible);
+                }
+            }
+        }
+
+        return shared;
+    }
+
+    /**
+     * Normalises an input, so inputs that only differ in white space share one entry.
+     * <p>
+     *     Only characters the lexer skips as white space are folded. A run of them becomes a single space, or a single
+     *     new line if it contains a line break, as a line break ends a // comment. Inputs with the same key therefore
+     *     parse to the same statement.
+     * </p>
+     *
+     * @param input The input.
+     * @return Input, trimmed, with every run of white space replaced by a single space or new line.
+     */
+    static String normalize(final String input) {
+
+        StringBuilder normalized = new StringBuilder(input.length());
+        boolean space = false;
+        boolean lineBreak = false;
+
+        for (int i = 0; i < input.length(); i++) {
+
+            char c = input.charAt(i);
+
+            if (c == '\r' || c == '\n') {
+                lineBreak = normalized.length() > 0;
+            } else if (c == ' ' || c == '\t' || c == '\f' || c == '\u000B') {
+                space = normalized.length() > 0;
+            } else {
+                if (lineBreak) {
+                    normalized.append('\n');
+                } else if (space) {
+                    normalized.append(' ');
+                }
+
+                space = false;
+                lineBreak = false;
+                normalized.append(c);
+            }
+        }
+
+        return normalized.toString();
+    }
+
+    /**
+     * Parses the first statement of a string, without looking at the cache.
+     *
+     * @param s The string to be parsed.
+     * @return The first statement of string.
+     * @throws Exception Parser cannot parse string.
+     */
+    @SuppressWarnings({"deprecation", "unchecked"})
+    private Statement parseUncached(final String s) throws Exception {
+        ArrayList<Statement> parsed = (ArrayList<Statement>) new ChemistryParser(
+                new ChemistryLexer(new StringReader(s)), new DefaultSymbolFactory()).setQuiet(quiet).parse().value;
+
+        return parsed.get(0);
+    }
+
+    /**
+     * Returns the first statement of an input, parsing it only if it is neither cached here nor in the second level.
+     * Inputs the parser cannot parse are not cached.
+     *
+     * @param input The input.
+     * @return The first statement of input.
+     * @throws Exception Parser cannot parse input.
+     */
+    Statement parse(final String input) throws Exception {
+
+        String key = normalize(input);
+
+        synchronized (this) {
+            Statement statement = statements.get(key);
+
+            if (statement != null) {
+                hits += 1;
+                return statement;
+            }
+
+            misses += 1;
+        }
+
+        Statement statement = (secondLevel == null) ? null : secondLevel.getStatement(key);
+
+        if (statement == null) {
+            statement = parseUncached(key);
+
+            if (secondLevel != null) {
+                secondLevel.putStatement(key, statement);
+            }
+        }
+
+        boolean added;
+
+        synchronized (this) {
+            // Another thread may have parsed the same input meanwhile.
+            added = statements.put(key, statement) == null;
+        }
+
+        if (added && writer != null) {
+            Statement parsed = statement;
+            writer.execute(() -> append(key, parsed));
+        }
+
+        return statement;
+    }
+
+    /**
+     * Reads a length-prefixed UTF-8 string from the store.
+     *
+     * @param buffer Buffer holding the store.
+     * @return The string, or null if the store ends before it is complete.
+     */
+    private static String readString(final ByteBuffer buffer) {
+
+        if (buffer.remaining() < 4) {
+            return null;
+        }
+
+        int length = buffer.getInt();
+
+        if (length < 0 || length > buffer.remaining()) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads length-prefixed bytes from the store, without copying them.
+     *
+     * @param buffer Buffer holding the store.
+     * @return View of the bytes, or null if the store ends before they are complete.
+     */
+    private static ByteBuffer readBytes(final ByteBuffer buffer) {
+
+        if (buffer.remaining() < 4) {
+            return null;
+        }
+
+        int length = buffer.getInt();
+
+        if (length < 0 || length > buffer.remaining()) {
+            return null;
+        }
+
+        ByteBuffer bytes = buffer.slice();
+        bytes.limit(length);
+        buffer.position(buffer.position() + length);
+        return bytes;
+    }
+
+    /**
+     * Writes a record to the store: the input, followed by the encoding of its statement.
+     *
+     * @param stream Stream writing to the store.
+     * @param key Normalised input.
+     * @param statement Statement of input.
+     * @throws IOException Failed to write store.
+     */
+    private static void writeRecord(final DataOutputStream stream, final String key, final Statement statement)
+            throws IOException {
+        byte[] encoded = StatementCodec.encode(statement);
+        writeString(stream, key);
+        stream.writeInt(encoded.length);
+        stream.write(encoded);
+    }
+
+    /**
+     * Writes a length-prefixed UTF-8 string to the store.
+     *
+     * @param stream Stream writing to the store.
+     * @param s The string.
+     * @throws IOException Failed to write store.
+     */
+    private static void writeString(final DataOutputStream stream, final String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        stream.writeInt(bytes.length);
+        stream.write(bytes);
+    }
+
+    /**
+     * Loads the store into memory, and opens it for appending.
+     *
+     * @throws IOException Failed to read or write store.
+     */
+    private void load() throws IOException {
+
+        long start = System.nanoTime();
+        boolean rewrite = true;
+        long records = 0;
+
+        // Encoded statements of store, most recently appended last.
+        LinkedHashMap<String, ByteBuffer> encoded = new LinkedHashMap<>();
+
+        if (Files.exists(store)) {
+            try (FileChannel channel = FileChannel.open(store, StandardOpenOption.READ)) {
+
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+                if (header.equals(readString(buffer))) {
+                    String key;
+                    ByteBuffer bytes;
+
+                    while ((key = readString(buffer)) != null && (bytes = readBytes(buffer)) != null) {
+                        encoded.remove(key);
+                        encoded.put(key, bytes);
+                        records += 1;
+                    }
+
+                    rewrite = buffer.hasRemaining() || records > 2L * Math.min(encoded.size(), capacity);
+                } else {
+                    System.out.println("Statement cache " + store + " is from another version, discarding it.");
+                }
+            }
+        }
+
+        int skip = encoded.size() - capacity;
+
+        for (Map.Entry<String, ByteBuffer> e : encoded.entrySet()) {
+
+            if (skip-- > 0) {
+                continue;
+            }
+
+            Statement statement;
+
+            try {
+                statement = StatementCodec.decode(e.getValue());
+            } catch (IllegalArgumentException malformed) {
+                try {
+                    statement = parseUncached(e.getKey());
+                } catch (Exception unparseable) {
+                    continue;
+                }
+
+                rewrite = true;
+            }
+
+            statements.put(e.getKey(), statement);
+        }
+
+        if (rewrite) {
+            writeStore(statements);
+        } else {
+            stored = records;
+        }
+
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(store,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+
+        System.out.println("Loaded " + statements.size() + " statements from " + store + " in "
+                + (System.nanoTime() - start) / 1000000 + " ms.");
+    }
+
+    /**
+     * Replaces the store by one holding only the given statements, written to a temporary file first.
+     *
+     * @param entries Statements by normalised input.
+     * @throws IOException Failed to write store.
+     */
+    private void writeStore(final Map<String, Statement> entries) throws IOException {
+
+        Path temporary = Paths.get(store + ".tmp");
+
+        try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temporary)))) {
+
+            writeString(stream, header);
+
+            for (Map.Entry<String, Statement> e : entries.entrySet()) {
+                writeRecord(stream, e.getKey(), e.getValue());
+            }
+        }
+
+        Files.move(temporary, store, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        stored = entries.size();
+    }
+
+    /**
+     * Appends a newly parsed input to the store, on the writer, and compacts the store once it holds more than
+     * twice as many records as the cache. If the store cannot be written, the cache carries on without persisting.
+     *
+     * @param key Normalised input.
+     * @param statement Statement of input.
+     */
+    private void append(final String key, final Statement statement) {
+
+        if (out == null) {
+            return;
+        }
+
+        try {
+            writeRecord(out, key, statement);
+            stored += 1;
+
+            if (stored > 2L * capacity) {
+                LinkedHashMap<String, Statement> cached;
+
+                synchronized (this) {
+                    cached = new LinkedHashMap<>(statements);
+                }
+
+                out.close();
+                out = null;
+                writeStore(cached);
+                out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(store,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+            } else if (writer.getQueue().isEmpty()) {
+                out.flush();
+            }
+        } catch (IOException e) {
+            System.out.println("Cannot write statement cache " + store + ", not persisting statements: " + e);
+            out = null;
+        }
+    }
+
+    /**
+     * Returns the number of statements cached.
+     *
+     * @return Number of statements cached.
+     */
+    synchronized int size() {
+        return statements.size();
+    }
+
+    /**
+     * Returns the number of inputs found in cache so far.
+     *
+     * @return Number of cache hits.
+     */
+    synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of inputs that had to be parsed so far.
+     *
+     * @return Number of cache misses.
+     */
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Closes the store, once the records waiting to be written are written. The cache can still be used, but nothing
+     * more is persisted.
+     *
+     * @throws IOException Failed to close store.
+     */
+    void close() throws IOException {
+
+        if (writer == null) {
+            return;
+        }
+
+        writer.shutdown();
+
+        try {
+            writer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+}
@@ -0,0 +1,633 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Compact binary encoding of parsed statements, for caching and shipping statements without parsing them again.
+ * <p>
+ *     Every node of the statement tree is written as a one byte tag, followed by its fields. Numbers are written as
+ *     zigzag varints, so the usual small counts and charges take a single byte, and element symbols are written as
+ *     their atomic number. The commonest fields are folded into the tag or into a neighbouring number: the state of
+ *     a term into its tag, a subscript of 1 into the tag of its element, and the bracket of a compound into its
+ *     number. Decoding reads straight from a ByteBuffer, which may be a memory-mapped file, and builds
+ *     the statement through the same constructors as the parser, so the result equals the parsed statement.
+ * </p>
+ * <p>
+ *     Any change to the encoding must change {@link #VERSION}, so stored encodings are not misread.
+ * </p>
+ */
+final class StatementCodec {
+
+    /**
+     * Version of the encoding.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * Tag of ExpressionStatement.
+     */
+    private static final byte EXPRESSION_STATEMENT = 1;
+
+    /**
+     * Tag of EquationStatement with a single arrow.
+     */
+    private static final byte EQUATION_STATEMENT = 2;
+
+    /**
+     * Tag of EquationStatement with a double arrow.
+     */
+    private static final byte DOUBLE_EQUATION_STATEMENT = 3;
+
+    /**
+     * Tag of NuclearExpressionStatement.
+     */
+    private static final byte NUCLEAR_EXPRESSION_STATEMENT = 4;
+
+    /**
+     * Tag of NuclearEquationStatement.
+     */
+    private static final byte NUCLEAR_EQUATION_STATEMENT = 5;
+
+    /**
+     * Tag of Term without state; Term with state has this tag plus the code of its state.
+     */
+    private static final byte TERM = 6;
+
+    /**
+     * Tag of ErrorTerm.
+     */
+    private static final byte ERROR_TERM = 12;
+
+    /**
+     * Tag of Element.
+     */
+    private static final byte ELEMENT = 13;
+
+    /**
+     * Tag of Element with subscript 1.
+     */
+    private static final byte SINGLE_ELEMENT = 14;
+
+    /**
+     * Tag of Compound.
+     */
+    private static final byte COMPOUND = 15;
+
+    /**
+     * Tag of Ion.
+     */
+    private static final byte ION = 16;
+
+    /**
+     * Tag of IonChain.
+     */
+    private static final byte ION_CHAIN = 17;
+
+    /**
+     * Tag of Hydrate.
+     */
+    private static final byte HYDRATE = 18;
+
+    /**
+     * Tag of Isotope.
+     */
+    private static final byte ISOTOPE = 19;
+
+    /**
+     * Tag of SpecialNuclear.
+     */
+    private static final byte SPECIAL_NUCLEAR = 20;
+
+    /**
+     * Tag of ChemicalElectron.
+     */
+    private static final byte CHEMICAL_ELECTRON = 21;
+
+    /**
+     * Physical states, indexed by their code minus one; code 0 means no state.
+     */
+    private static final Term.PhysicalState[] STATES = Term.PhysicalState.values();
+
+    /**
+     * Bracket types, indexed by their code minus one; code 0 means no bracket.
+     */
+    private static final Compound.BracketType[] BRACKETS = Compound.BracketType.values();
+
+    /**
+     * Kinds of particles, indexed by their code.
+     */
+    private static final SpecialNuclear.Kind[] KINDS = SpecialNuclear.Kind.values();
+
+    /**
+     * Constructor method of StatementCodec.
+     * Set to private, because we don't want people to instantiate an utility class.
+     */
+    private StatementCodec() {
+        // Nothing here.
+    }
+
+    /**
+     * Growable byte array the encoding is written to.
+     */
+    private static final class Output {
+
+        /**
+         * Bytes written so far, followed by free space.
+         */
+        private byte[] bytes = new byte[64];
+
+        /**
+         * Number of bytes written.
+         */
+        private int size = 0;
+
+        /**
+         * Writes a byte.
+         *
+         * @param b The byte.
+         */
+        void write(final int b) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size * 2);
+            }
+
+            bytes[size++] = (byte) b;
+        }
+
+        /**
+         * Writes a non-negative number as a varint: 7 bits per byte, low bits first.
+         *
+         * @param n The number.
+         */
+        void writeVarint(final long n) {
+
+            long v = n;
+
+            while ((v & ~0x7fL) != 0) {
+                write((int) (v & 0x7f) | 0x80);
+                v >>>= 7;
+            }
+
+            write((int) v);
+        }
+
+        /**
+         * Writes an integer as a zigzag varint, with the sign in the lowest bit.
+         *
+         * @param n The integer.
+         */
+        void writeInt(final int n) {
+            writeVarint(zigzag(n));
+        }
+
+        /**
+         * Writes a string as its length followed by its UTF-8 bytes.
+         *
+         * @param s The string.
+         */
+        void writeString(final String s) {
+
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            writeInt(utf8.length);
+
+            for (byte b : utf8) {
+                write(b);
+            }
+        }
+
+        /**
+         * Returns the bytes written.
+         *
+         * @return Copy of bytes written.
+         */
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+
+    /**
+     * Maps an integer to a non-negative number, so that integers close to 0 give small numbers.
+     *
+     * @param n The integer.
+     * @return 2n if n is non-negative, -2n - 1 otherwise.
+     */
+    private static long zigzag(final int n) {
+        return ((long) n << 1) ^ (n >> 31);
+    }
+
+    /**
+     * Reverses {@link #zigzag(int)}.
+     *
+     * @param v Non-negative number.
+     * @return The integer.
+     */
+    private static int unzigzag(final long v) {
+        return (int) ((v >>> 1) ^ -(v & 1));
+    }
+
+    /**
+     * Encodes a statement.
+     *
+     * @param statement The statement.
+     * @return Encoding of statement.
+     */
+    static byte[] encode(final Statement statement) {
+
+        Output out = new Output();
+
+        if (statement instanceof ExpressionStatement) {
+            out.write(EXPRESSION_STATEMENT);
+            encode(((ExpressionStatement) statement).getExpression(), out);
+
+        } else if (statement instanceof EquationStatement) {
+            EquationStatement s = (EquationStatement) statement;
+            out.write(s.getArrow() instanceof DoubleArrow ? DOUBLE_EQUATION_STATEMENT : EQUATION_STATEMENT);
+            encode(s.getLeftExpression(), out);
+            encode(s.getRightExpression(), out);
+
+        } else if (statement instanceof NuclearExpressionStatement) {
+            out.write(NUCLEAR_EXPRESSION_STATEMENT);
+            encode(((NuclearExpressionStatement) statement).getExpression(), out);
+
+        } else {
+            NuclearEquationStatement s = (NuclearEquationStatement) statement;
+            out.write(NUCLEAR_EQUATION_STATEMENT);
+            encode(s.getLeftExpression(), out);
+            encode(s.getRightExpression(), out);
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes an expression as its number of terms followed by its terms.
+     *
+     * @param expression The expression.
+     * @param out Output to write to.
+     */
+    private static void encode(final Expression expression, final Output out) {
+
+        out.writeInt(expression.getTerms().size());
+
+        for (AbstractTerm t : expression.getTerms()) {
+
+            if (t instanceof ErrorTerm) {
+                out.write(ERROR_TERM);
+                continue;
+            }
+
+            Term term = (Term) t;
+            out.write(TERM + (term.getState() == null ? 0 : term.getState().ordinal() + 1));
+            encode(term.getNumber(), out);
+            encode(term.getFormula(), out);
+        }
+    }
+
+    /**
+     * Encodes a coefficient as a varint, whose lowest bit tells whether numerator and denominator follow.
+     *
+     * @param coefficient The coefficient.
+     * @param out Output to write to.
+     */
+    private static void encode(final Coefficient coefficient, final Output out) {
+
+        if (coefficient instanceof IntCoeff) {
+            out.writeVarint(zigzag(((IntCoeff) coefficient).getCoefficient()) << 1);
+        } else {
+            FracCoeff f = (FracCoeff) coefficient;
+            out.writeVarint(1);
+            out.writeInt(f.getNumerator());
+            out.writeInt(f.getDenominator());
+        }
+    }
+
+    /**
+     * Encodes a formula.
+     *
+     * @param formula The formula.
+     * @param out Output to write to.
+     */
+    private static void encode(final Formula formula, final Output out) {
+
+        if (formula instanceof Element) {
+            Element e = (Element) formula;
+            boolean single = e.getNumber() == 1;
+            out.write(single ? SINGLE_ELEMENT : ELEMENT);
+            out.writeInt(e.getAtomicNumber());
+
+            if (e.getAtomicNumber() == 0) {
+                // Not in the periodic table: write the symbol itself.
+                out.writeString(e.getSymbol());
+            }
+
+            if (!single) {
+                out.writeInt(e.getNumber());
+            }
+
+        } else if (formula instanceof Compound) {
+            Compound c = (Compound) formula;
+            out.write(COMPOUND);
+            out.writeInt(c.getGroups().size());
+
+            for (Molecule m : c.getGroups()) {
+                encode(m, out);
+            }
+
+            int bracket = (c.getBracketType() == null) ? 0 : c.getBracketType().ordinal() + 1;
+            out.writeVarint(zigzag(c.getNumber()) << 2 | bracket);
+
+        } else if (formula instanceof Ion) {
+            Ion i = (Ion) formula;
+            out.write(ION);
+            encode(i.getMolecule(), out);
+            out.writeInt(i.getIonCharge());
+
+        } else if (formula instanceof IonChain) {
+            IonChain i = (IonChain) formula;
+            out.write(ION_CHAIN);
+            out.writeInt(i.getFormulas().size());
+
+            for (Formula f : i.getFormulas()) {
+                encode(f, out);
+            }
+
+        } else if (formula instanceof Hydrate) {
+            Hydrate h = (Hydrate) formula;
+            out.write(HYDRATE);
+            encode(h.getCompound(), out);
+            out.writeInt(h.getWaterCount());
+
+        } else if (formula instanceof Isotope) {
+            Isotope i = (Isotope) formula;
+            out.write(ISOTOPE);
+            out.writeInt(i.getMassNumber());
+            out.writeInt(i.getAtomicNumber());
+            encode(i.getFormula(), out);
+
+        } else if (formula instanceof SpecialNuclear) {
+            SpecialNuclear s = (SpecialNuclear) formula;
+            out.write(SPECIAL_NUCLEAR);
+            out.writeInt(s.getKind().ordinal());
+            out.writeInt(s.getMassNumber());
+            out.writeInt(s.getAtomicNumber());
+
+        } else if (formula instanceof ChemicalElectron) {
+            out.write(CHEMICAL_ELECTRON);
+
+        } else {
+            throw new IllegalArgumentException("Cannot encode " + formula.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Decodes a statement, starting at the position of a buffer. The position is moved past the statement.
+     *
+     * @param in Buffer holding the encoding.
+     * @return The decoded statement.
+     * @throws IllegalArgumentException Buffer does not hold a valid encoding.
+     */
+    static Statement decode(final ByteBuffer in) {
+        try {
+            return decodeStatement(in);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | ClassCastException e) {
+            throw new IllegalArgumentException("Malformed statement encoding", e);
+        }
+    }
+
+    /**
+     * Decodes a statement.
+     *
+     * @param in Buffer holding the encoding.
+     * @return The decoded statement.
+     */
+    private static Statement decodeStatement(final ByteBuffer in) {
+
+        byte tag = in.get();
+
+        switch (tag) {
+            case EXPRESSION_STATEMENT:
+                return new ExpressionStatement(decodeExpression(in));
+            case EQUATION_STATEMENT:
+                return new EquationStatement(decodeExpression(in), SingleArrow.getSingleArrow(),
+                        decodeExpression(in));
+            case DOUBLE_EQUATION_STATEMENT:
+                return new EquationStatement(decodeExpression(in), DoubleArrow.getDoubleArrow(),
+                        decodeExpression(in));
+            case NUCLEAR_EXPRESSION_STATEMENT:
+                return new NuclearExpressionStatement(decodeExpression(in));
+            case NUCLEAR_EQUATION_STATEMENT:
+                return new NuclearEquationStatement(decodeExpression(in), decodeExpression(in));
+            default:
+                throw new IllegalArgumentException("Unknown statement tag " + tag);
+        }
+    }
+
+    /**
+     * Decodes a statement from a byte array.
+     *
+     * @param bytes Encoding of statement.
+     * @return The decoded statement.
+     * @throws IllegalArgumentException Array does not hold a valid encoding.
+     */
+    static Statement decode(final byte[] bytes) {
+        return decode(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Reads a varint.
+     *
+     * @param in Buffer holding the encoding.
+     * @return The non-negative number.
+     */
+    private static long readVarint(final ByteBuffer in) {
+
+        long v = 0;
+
+        for (int shift = 0; shift < 63; shift += 7) {
+            byte b = in.get();
+            v |= (long) (b & 0x7f) << shift;
+
+            if (b >= 0) {
+                return v;
+            }
+        }
+
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    /**
+     * Reads a zigzag varint.
+     *
+     * @param in Buffer holding the encoding.
+     * @return The integer.
+     */
+    private static int readInt(final ByteBuffer in) {
+        return unzigzag(readVarint(in));
+    }
+
+    /**
+     * Reads a string written by {@link Output#writeString(String)}.
+     *
+     * @param in Buffer holding the encoding.
+     * @return The string.
+     */
+    private static String readString(final ByteBuffer in) {
+
+        int length = readInt(in);
+
+        if (length < 0 || length > in.remaining()) {
+            throw new IllegalArgumentException("Malformed string");
+        }
+
+        byte[] utf8 = new byte[length];
+        in.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decodes an expression.
+     *
+     * @param in Buffer holding the encoding.
+     * @return The decoded expression.
+     */
+    private static Expression decodeExpression(final ByteBuffer in) {
+
+        int count = readInt(in);
+
+        if (count < 1) {
+            throw new IllegalArgumentException("Expression without terms");
+        }
+
+        Expression expression = new Expression(decodeTerm(in));
+
+        for (int i = 1; i < count; i++) {
+            expression.add(decodeTerm(in));
+        }
+
+        return expression;
+    }
+
+    /**
+     * Decodes a term.
+     *
+     * @param in Buffer holding the encoding.
+     * @return The decoded term.
+     */
+    private static AbstractTerm decodeTerm(final ByteBuffer in) {
+
+        byte tag = in.get();
+
+        if (tag == ERROR_TERM) {
+            return new ErrorTerm();
+        }
+
+        int state = tag - TERM;
+
+        if (state < 0 || state > STATES.length) {
+            throw new IllegalArgumentException("Unknown term tag " + tag);
+        }
+
+        Coefficient coefficient = decodeCoefficient(in);
+        Formula formula = decodeFormula(in);
+
+        return new Term(coefficient, formula, state == 0 ? null : STATES[state - 1].name());
+    }
+
+    /**
+     * Decodes a coefficient.
+     *
+     * @param in Buffer holding the encoding.
+     * @return The decoded coefficient.
+     */
+    private static Coefficient decodeCoefficient(final ByteBuffer in) {
+
+        long v = readVarint(in);
+
+        if ((v & 1) == 0) {
+            return new IntCoeff(unzigzag(v >>> 1));
+        }
+
+        return new FracCoeff(readInt(in), readInt(in));
+    }
+
+    /**
+     * Decodes a formula.
+     *
+     * @param in Buffer holding the encoding.
+     * @return The decoded formula.
+     */
+    private static Formula decodeFormula(final ByteBuffer in) {
+
+        byte tag = in.get();
+
+        switch (tag) {
+            case ELEMENT:
+            case SINGLE_ELEMENT: {
+                int atom = readInt(in);
+                String symbol = (atom == 0) ? readString(in) : NuclideTable.symbol(atom);
+                return new Element(symbol, (tag == SINGLE_ELEMENT) ? 1 : readInt(in));
+            }
+            case COMPOUND: {
+                int count = readInt(in);
+                Compound compound = new Compound(null);
+
+                for (int i = 0; i < count; i++) {
+                    compound.add((Molecule) decodeFormula(in));
+                }
+
+                long numberAndBracket = readVarint(in);
+                int bracket = (int) (numberAndBracket & 3);
+                compound.setNumber(unzigzag(numberAndBracket >>> 2));
+                compound.setBracketType(bracket == 0 ? null : BRACKETS[bracket - 1]);
+                return compound;
+            }
+            case ION:
+                return new Ion((Molecule) decodeFormula(in), readInt(in));
+            case ION_CHAIN: {
+                int count = readInt(in);
+                IonChain chain = new IonChain(decodeFormula(in));
+
+                for (int i = 1; i < count; i++) {
+                    chain.add(decodeFormula(in));
+                }
+
+                return chain;
+            }
+            case HYDRATE:
+                return new Hydrate((Compound) decodeFormula(in), readInt(in));
+            case ISOTOPE: {
+                int mass = readInt(in);
+                int atom = readInt(in);
+                return new Isotope(mass, atom, decodeFormula(in));
+            }
+            case SPECIAL_NUCLEAR: {
+                SpecialNuclear.Kind kind = KINDS[readInt(in)];
+                int mass = readInt(in);
+                return SpecialNuclear.of(kind, mass, readInt(in));
+            }
+            case CHEMICAL_ELECTRON:
+                return new ChemicalElectron();
+            default:
+                throw new IllegalArgumentException("Unknown formula tag " + tag);
+        }
+    }
+}
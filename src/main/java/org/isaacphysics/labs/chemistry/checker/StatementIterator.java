@@ -0,0 +1,174 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import java_cup.runtime.DefaultSymbolFactory;
+import java_cup.runtime.Scanner;
+import java_cup.runtime.Symbol;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads ';'-separated statements from a reader one at a time, instead of parsing the whole input into a list.
+ * <p>
+ *     A single ChemistryLexer runs over the whole input. Its tokens are handed to a fresh ChemistryParser per
+ *     statement, with the END token that separates statements turned into end of input. Only one statement is held
+ *     in memory at any time, and the first statement is available as soon as it has been read.
+ * </p>
+ * <p>
+ *     Empty statements are skipped. A statement the parser cannot recover from is returned as an expression holding
+ *     a single error term, and reading carries on with the next statement.
+ * </p>
+ */
+final class StatementIterator implements Iterator<Statement> {
+
+    /**
+     * Lexer running over the whole input.
+     */
+    private final ChemistryLexer lexer;
+
+    /**
+     * Token read ahead from lexer but not passed to parser yet, or null.
+     */
+    private Symbol lookahead = null;
+
+    /**
+     * True if the end of current statement has been passed to parser.
+     */
+    private boolean atEnd = false;
+
+    /**
+     * Scanner feeding the parser with the tokens of current statement only.
+     */
+    private final Scanner statementScanner = new Scanner() {
+        @Override
+        public Symbol next_token() throws Exception {
+
+            if (atEnd) {
+                return new Symbol(sym.EOF);
+            }
+
+            Symbol token = nextToken();
+
+            if (token.sym == sym.END || token.sym == sym.EOF) {
+                atEnd = true;
+                return new Symbol(sym.EOF);
+            }
+
+            return token;
+        }
+    };
+
+    /**
+     * Constructor method of StatementIterator.
+     *
+     * @param input Reader for the mhchem statements.
+     */
+    StatementIterator(final Reader input) {
+        lexer = new ChemistryLexer(input);
+    }
+
+    /**
+     * Returns the next token from lexer, taking the token read ahead first.
+     *
+     * @return The next token.
+     * @throws IOException Failed to read input.
+     */
+    private Symbol nextToken() throws IOException {
+
+        if (lookahead != null) {
+            Symbol token = lookahead;
+            lookahead = null;
+            return token;
+        }
+
+        return lexer.next_token();
+    }
+
+    @Override
+    public boolean hasNext() {
+
+        try {
+            // Skip empty statements.
+            Symbol token = nextToken();
+
+            while (token.sym == sym.END) {
+                token = lexer.next_token();
+            }
+
+            lookahead = token;
+            return token.sym != sym.EOF;
+
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings({"deprecation", "unchecked"})
+    public Statement next() {
+
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        atEnd = false;
+
+        try {
+            ArrayList<Statement> statements = (ArrayList<Statement>) new ChemistryParser(
+                    statementScanner, new DefaultSymbolFactory()).parse().value;
+
+            return statements.get(0);
+
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (Exception e) {
+
+            // Parser gave up on this statement: skip the rest of it.
+            try {
+                while (!atEnd) {
+                    int kind = nextToken().sym;
+                    atEnd = kind == sym.END || kind == sym.EOF;
+                }
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+
+            return new ExpressionStatement(new Expression(new ErrorTerm()));
+        }
+    }
+
+    /**
+     * Reads statements from a reader lazily, as a sequential stream.
+     *
+     * @param input Reader for the mhchem statements.
+     * @return Stream of statements in input, in order.
+     */
+    static Stream<Statement> stream(final Reader input) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new StatementIterator(input),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+}
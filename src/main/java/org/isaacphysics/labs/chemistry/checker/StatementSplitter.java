@@ -0,0 +1,225 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+
+/**
+ * Splits a document of ';'-separated statements into the text of the individual statements, without parsing them.
+ * <p>
+ *     Comments are recognised the same way as in ChemistryLexer.lex: a ';' inside a comment does not end a statement.
+ *     Comments are replaced by a single space, so two segments that only differ in comments have the same text.
+ * </p>
+ * <p>
+ *     The document is read as a stream, so only the statement being split is held in memory.
+ * </p>
+ */
+final class StatementSplitter {
+
+    /**
+     * Size of read buffer.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Reader for the document.
+     */
+    private final Reader input;
+
+    /**
+     * Read buffer.
+     */
+    private final char[] buffer = new char[BUFFER_SIZE];
+
+    /**
+     * Position of next character in read buffer.
+     */
+    private int position = 0;
+
+    /**
+     * Number of characters in read buffer.
+     */
+    private int limit = 0;
+
+    /**
+     * Text to be read again before the rest of input, or null.
+     * Used when an unterminated comment turns out not to be a comment.
+     */
+    private String pushedBack = null;
+
+    /**
+     * Position of next character in pushedBack.
+     */
+    private int pushedBackPosition = 0;
+
+    /**
+     * Constructor method of StatementSplitter.
+     *
+     * @param input Reader for the document.
+     */
+    StatementSplitter(final Reader input) {
+        this.input = input;
+    }
+
+    /**
+     * Returns next character of document.
+     *
+     * @return Next character, or -1 at end of document.
+     * @throws IOException Failed to read document.
+     */
+    private int read() throws IOException {
+
+        if (pushedBack != null) {
+
+            if (pushedBackPosition < pushedBack.length()) {
+                return pushedBack.charAt(pushedBackPosition++);
+            }
+
+            pushedBack = null;
+        }
+
+        if (position == limit) {
+            limit = input.read(buffer, 0, BUFFER_SIZE);
+            position = 0;
+
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+
+        return buffer[position++];
+    }
+
+    /**
+     * Returns next character of document without consuming it.
+     *
+     * @return Next character, or -1 at end of document.
+     * @throws IOException Failed to read document.
+     */
+    private int peek() throws IOException {
+
+        if (pushedBack != null && pushedBackPosition < pushedBack.length()) {
+            return pushedBack.charAt(pushedBackPosition);
+        }
+
+        int c = read();
+
+        if (c >= 0) {
+            if (pushedBack != null) {
+                pushedBackPosition--;
+            } else {
+                position--;
+            }
+        }
+
+        return c;
+    }
+
+    /**
+     * Reads the next statement of document. Segments containing only white space (or comments) are left out.
+     *
+     * @return Trimmed text of next statement, or null at end of document.
+     * @throws IOException Failed to read document.
+     */
+    String next() throws IOException {
+
+        StringBuilder current = new StringBuilder();
+        int c;
+
+        while ((c = read()) >= 0) {
+
+            if (c == '/' && peek() == '/') {
+
+                // End of line comment: skip up to, but not including, the line terminator.
+                while ((c = peek()) >= 0 && c != '\n' && c != '\r') {
+                    read();
+                }
+
+                current.append(' ');
+
+            } else if (c == '/' && peek() == '*') {
+
+                read();
+
+                // Traditional comment: skip up to and including "*/".
+                StringBuilder comment = new StringBuilder();
+                int previous = 0;
+
+                while ((c = read()) >= 0 && !(c == '/' && previous == '*')) {
+                    comment.append((char) c);
+                    previous = c;
+                }
+
+                if (c < 0) {
+                    // Unterminated: not a comment after all, so read it again as ordinary text.
+                    current.append('/');
+                    pushedBack = "*" + comment;
+                    pushedBackPosition = 0;
+                } else {
+                    current.append(' ');
+                }
+
+            } else if (c == ';') {
+
+                String text = current.toString().trim();
+                current.setLength(0);
+
+                if (!text.isEmpty()) {
+                    return text;
+                }
+
+            } else {
+
+                current.append((char) c);
+
+            }
+        }
+
+        String text = current.toString().trim();
+        return text.isEmpty() ? null : text;
+    }
+
+    /**
+     * Splits document into statements. Segments containing only white space (or comments) are left out.
+     *
+     * @param document Document of mhchem statements, separated by ';'.
+     * @return Trimmed text of every statement in document, in order.
+     */
+    static ArrayList<String> split(final String document) {
+
+        ArrayList<String> segments = new ArrayList<>();
+        StatementSplitter splitter = new StatementSplitter(new StringReader(document));
+
+        try {
+            String segment;
+
+            while ((segment = splitter.next()) != null) {
+                segments.add(segment);
+            }
+        } catch (IOException e) {
+            // Cannot happen when reading from a string.
+            throw new UncheckedIOException(e);
+        }
+
+        return segments;
+    }
+}
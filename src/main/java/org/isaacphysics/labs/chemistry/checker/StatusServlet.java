@@ -17,6 +17,8 @@
 package org.isaacphysics.labs.chemistry.checker;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -27,6 +29,7 @@ import java.util.HashMap;
 
 /**
  * This servlet responds 200 OK when pinged, for monitoring the status of the checker.
+ * The response also holds the metrics of the shared grading core, see {@link GradingCore#getMetrics()}.
  *
  * Created by jps79 on 20/07/2016.
  */
@@ -36,7 +39,9 @@ public class StatusServlet extends HttpServlet {
     protected void doGet(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
 
         response.setContentType("application/json");
-        response.getWriter().println("{\"code\" : 200}");
+        ObjectNode status = JsonNodeFactory.instance.objectNode().put("code", 200);
+        status.setAll(GradingCore.getShared().getMetrics());
+        response.getWriter().println(GradingCore.toJson(status));
         response.setStatus(200);
 
     }
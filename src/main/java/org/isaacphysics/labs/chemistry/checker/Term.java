@@ -69,13 +69,26 @@ public final class Term extends AbstractTerm {
      */
     private PhysicalState state;
 
+    /**
+     * True if this term is nuclear, i.e. a nuclear formula with an integer coefficient.
+     */
+    private boolean nuclear;
+
+    /**
+     * Number of nuclear particles in this term, or 0 if this term is not nuclear.
+     */
+    private int nuclearCount;
+
     /**
      * Saved atom count.
      */
-    private HashMap<String, Fraction> savedAtomCount = null;
+    private volatile HashMap<String, Fraction> savedAtomCount = null;
 
     /**
      * Constructor function of Term.
+     * A nuclear formula with an integer coefficient, including 0, makes a nuclear term. A fractional coefficient,
+     * which the parser never puts before a nuclear formula, makes the term non-nuclear: expressions containing it are
+     * not nuclear, and equations containing it are reported as unbalanced.
      * @param n Coefficient of term
      * @param m Chemical formula involved in the term
      * @param s State of the formula
@@ -91,6 +104,9 @@ public final class Term extends AbstractTerm {
         } else {
             this.state = PhysicalState.valueOf(s);
         }
+
+        this.nuclear = m instanceof Nuclear && n instanceof IntCoeff;
+        this.nuclearCount = nuclear ? ((IntCoeff) n).getCoefficient() : 0;
     }
 
     @Override
@@ -135,24 +151,53 @@ public final class Term extends AbstractTerm {
     }
 
     @Override
-    public Fraction getMassNumber() throws NuclearException {
-        return coefficient.toFraction().times(formula.getMassNumber());
+    public boolean isNuclear() {
+        return nuclear;
+    }
+
+    /**
+     * Returns the mass number of all particles of this term.
+     *
+     * @return Mass number of term, or 0 if term is not nuclear.
+     * @throws ArithmeticException Mass number does not fit in an int, e.g. for a huge coefficient.
+     */
+    @Override
+    public int getMassNumber() {
+
+        if (!nuclear) {
+            return 0;
+        }
+
+        return Math.multiplyExact(nuclearCount, ((Nuclear) formula).getMassNumber());
     }
 
+    /**
+     * Returns the atomic number of all particles of this term.
+     *
+     * @return Atomic number of term, or 0 if term is not nuclear.
+     * @throws ArithmeticException Atomic number does not fit in an int, e.g. for a huge coefficient.
+     */
     @Override
-    public Fraction getAtomicNumber() throws NuclearException {
-        return coefficient.toFraction().times(formula.getAtomicNumber());
+    public int getAtomicNumber() {
+
+        if (!nuclear) {
+            return 0;
+        }
+
+        return Math.multiplyExact(nuclearCount, ((Nuclear) formula).getAtomicNumber());
     }
 
     @Override
     public HashMap<String, Fraction> getAtomCount() {
 
         if (savedAtomCount == null) {
-            savedAtomCount = new HashMap<>();
+            HashMap<String, Fraction> count = new HashMap<>();
 
             for (String element: formula.getAtomCount().keySet()) {
-                savedAtomCount.put(element, formula.getAtomCount().get(element).times(coefficient.toFraction()));
+                count.put(element, formula.getAtomCount().get(element).times(coefficient.toFraction()));
             }
+
+            savedAtomCount = count;
         }
 
         return savedAtomCount;
@@ -212,13 +257,16 @@ public final class Term extends AbstractTerm {
 
         result.append("|&zwj;&zwj;&zwj;formula&zwnj;}\",color=\"#49902a\"];\n");
 
+        // Shared particles appear in several terms, so their node is named after this term.
+        boolean shared = formula instanceof SpecialNuclear;
+
         result.append("\t");
         result.append(getDotId());
         result.append(":s -> ");
-        result.append(formula.getDotId());
+        result.append(shared ? ((SpecialNuclear) formula).getDotId(this) : formula.getDotId());
         result.append(":n;\n");
 
-        result.append(formula.getDotCode());
+        result.append(shared ? ((SpecialNuclear) formula).getDotCode(this) : formula.getDotCode());
         result.append("\n");
         return result.toString();
     }
@@ -0,0 +1,224 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Warms the checker up at startup, so the first real requests do not pay for class loading and an un-JITted parser.
+ * <p>
+ *     A bundled corpus (src/test.txt and a list of common targets) is replayed for a number of rounds on as many
+ *     threads as there are processors: every statement is parsed and described, and checked against itself and
+ *     against its neighbour. Parsing bypasses the statement cache, so the parser itself gets compiled.
+ * </p>
+ * <p>
+ *     Warm-up runs in the background once the web application has started. {@link ReadinessServlet} reports ready
+ *     only once it is done, while {@link StatusServlet} keeps reporting that the node is alive. The number of rounds
+ *     is taken from system property "checker.warmupRounds" (default 20); 0 disables warm-up.
+ * </p>
+ */
+public class WarmUp implements ServletContextListener {
+
+    /**
+     * Default number of times the corpus is replayed on every thread.
+     */
+    private static final int DEFAULT_ROUNDS = 20;
+
+    /**
+     * Class path resources of the corpus.
+     */
+    private static final String[] CORPUS = {"/warmup/test.txt", "/warmup-targets.txt"};
+
+    /**
+     * True once warm-up has finished, or if there is none.
+     */
+    private static volatile boolean done = false;
+
+    /**
+     * Thread running warm-up, or null if it is not running.
+     */
+    private Thread thread = null;
+
+    /**
+     * Checks if warm-up has finished.
+     *
+     * @return True if the checker is warm.
+     */
+    static boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Reads the statements of the bundled corpus.
+     *
+     * @return Statements of corpus, in order.
+     * @throws IOException Failed to read corpus.
+     */
+    static ArrayList<String> corpus() throws IOException {
+
+        ArrayList<String> statements = new ArrayList<>();
+
+        for (String resource : CORPUS) {
+            try (InputStream in = WarmUp.class.getResourceAsStream(resource)) {
+
+                if (in == null) {
+                    System.out.println("Missing warm-up resource " + resource);
+                    continue;
+                }
+
+                StatementSplitter splitter = new StatementSplitter(
+                        new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+                String statement;
+
+                while ((statement = splitter.next()) != null) {
+                    statements.add(statement);
+                }
+            }
+        }
+
+        return statements;
+    }
+
+    /**
+     * Replays a corpus once.
+     *
+     * @param statements Statements of corpus.
+     * @param mapper Object mapper used to describe and compare statements.
+     * @return Number of statements the parser could parse.
+     */
+    static int replay(final List<String> statements, final ObjectMapper mapper) {
+
+        int parsed = 0;
+
+        for (int i = 0; i < statements.size(); i++) {
+
+            String text = statements.get(i);
+            Statement statement = IncrementalParser.parseStatement(text);
+
+            if (statement == null) {
+                continue;
+            }
+
+            parsed += 1;
+            RunParser.describe(mapper, statement, text);
+            statement.getCanonicalForm();
+
+            String neighbour = statements.get((i + 1) % statements.size());
+
+            try {
+                mapper.writeValueAsString(RunParser.compare(mapper, text, text, null));
+                mapper.writeValueAsString(RunParser.compare(mapper, neighbour, text, null));
+            } catch (Exception e) {
+                // Unparseable neighbour, or counts too large: the same as for real requests.
+            }
+        }
+
+        return parsed;
+    }
+
+    /**
+     * Replays the bundled corpus for a number of rounds, on a number of threads.
+     *
+     * @param rounds Number of times the corpus is replayed on every thread.
+     * @param threads Number of threads.
+     * @return Total number of statements parsed.
+     * @throws Exception Failed to read corpus, or interrupted.
+     */
+    static long run(final int rounds, final int threads) throws Exception {
+
+        final ArrayList<String> statements = corpus();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<Long>> futures = new ArrayList<>();
+
+        try {
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    ObjectMapper mapper = new ObjectMapper();
+                    long parsed = 0;
+
+                    for (int r = 0; r < rounds; r++) {
+                        parsed += replay(statements, mapper);
+                    }
+
+                    return parsed;
+                }));
+            }
+
+            long parsed = 0;
+
+            for (Future<Long> future : futures) {
+                parsed += future.get();
+            }
+
+            return parsed;
+
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void contextInitialized(final ServletContextEvent event) {
+
+        final int rounds = Integer.getInteger("checker.warmupRounds", DEFAULT_ROUNDS);
+
+        if (rounds <= 0) {
+            done = true;
+            return;
+        }
+
+        thread = new Thread(() -> {
+            long start = System.nanoTime();
+
+            try {
+                long parsed = run(rounds, Runtime.getRuntime().availableProcessors());
+                System.out.println("Warm-up parsed " + parsed + " statements in "
+                        + (System.nanoTime() - start) / 1000000 + " ms.");
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                // A failed warm-up leaves the node cold, not broken.
+                System.out.println("Warm-up failed: " + e);
+            }
+
+            done = true;
+        }, "warm-up");
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void contextDestroyed(final ServletContextEvent event) {
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+}
@@ -0,0 +1,293 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+
+/**
+ * Encodings of requests and responses of the checker endpoints, negotiated by Content-Type and Accept.
+ * <p>
+ *     Requests and responses have the same schema in every format. JSON is the default: requests without a
+ *     Content-Type of a binary format are read as JSON, as clients have always sent JSON with whatever Content-Type
+ *     they liked, and responses are JSON unless Accept prefers an available binary format. JSON responses are
+ *     pretty-printed, as before.
+ * </p>
+ * <p>
+ *     Smile and CBOR need jackson-dataformat-smile and jackson-dataformat-cbor on the class path, which the
+ *     binary-formats profile of pom.xml adds. Without them, requests in these formats are refused with 415 and
+ *     Accept falls back to JSON.
+ * </p>
+ */
+enum WireFormat {
+
+    /**
+     * JSON text.
+     */
+    JSON("application/json", null),
+
+    /**
+     * Jackson's binary JSON.
+     */
+    SMILE("application/x-jackson-smile", "com.fasterxml.jackson.dataformat.smile.SmileFactory"),
+
+    /**
+     * Concise Binary Object Representation, RFC 7049.
+     */
+    CBOR("application/cbor", "com.fasterxml.jackson.dataformat.cbor.CBORFactory");
+
+    /**
+     * Media type of format.
+     */
+    private final String mediaType;
+
+    /**
+     * Object mapper reading and writing format, or null if format is not available.
+     */
+    private final ObjectMapper mapper;
+
+    /**
+     * Constructor method of WireFormat.
+     *
+     * @param mediaType Media type of format.
+     * @param factoryClass Name of Jackson factory class of format, or null for JSON.
+     */
+    WireFormat(final String mediaType, final String factoryClass) {
+        this.mediaType = mediaType;
+        this.mapper = createMapper(factoryClass);
+    }
+
+    /**
+     * Creates the object mapper of a format.
+     *
+     * @param factoryClass Name of Jackson factory class of format, or null for JSON.
+     * @return Object mapper, or null if the factory is not on the class path.
+     */
+    private static ObjectMapper createMapper(final String factoryClass) {
+
+        if (factoryClass == null) {
+            return new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        }
+
+        try {
+            return new ObjectMapper((JsonFactory) Class.forName(factoryClass).getConstructor().newInstance());
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the media type of format.
+     *
+     * @return Media type.
+     */
+    String getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * Checks if format can be read and written.
+     *
+     * @return False if the Jackson module of format is not on the class path.
+     */
+    boolean isAvailable() {
+        return mapper != null;
+    }
+
+    /**
+     * Gets the object mapper reading and writing format.
+     *
+     * @return Object mapper, or null if format is not available.
+     */
+    ObjectMapper getMapper() {
+        return mapper;
+    }
+
+    /**
+     * Strips parameters such as charset or q from a media range, and normalizes case.
+     *
+     * @param range The media range.
+     * @return Type and subtype.
+     */
+    private static String typeOf(final String range) {
+        int semicolon = range.indexOf(';');
+        return ((semicolon < 0) ? range : range.substring(0, semicolon)).trim().toLowerCase();
+    }
+
+    /**
+     * Finds the format of a request body.
+     *
+     * @param contentType Value of Content-Type, or null if there is none.
+     * @return Format, JSON unless contentType is a binary format; or null if it is a binary format not available.
+     */
+    static WireFormat ofContentType(final String contentType) {
+
+        if (contentType != null) {
+            String type = typeOf(contentType);
+
+            for (WireFormat format : values()) {
+                if (format != JSON && format.mediaType.equals(type)) {
+                    return format.isAvailable() ? format : null;
+                }
+            }
+        }
+
+        return JSON;
+    }
+
+    /**
+     * Chooses the format of a response: the available format with the highest quality in Accept, the first listed
+     * if several have the same quality.
+     *
+     * @param accept Value of Accept, or null if there is none.
+     * @return Format; JSON if Accept lists no available format.
+     */
+    static WireFormat ofAccept(final String accept) {
+
+        if (accept == null) {
+            return JSON;
+        }
+
+        WireFormat best = JSON;
+        double bestQuality = 0;
+
+        for (String range : accept.split(",")) {
+
+            double quality = 1;
+
+            for (String parameter : range.split(";")) {
+                String p = parameter.trim();
+
+                if (p.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(p.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+
+            String type = typeOf(range);
+
+            for (WireFormat format : values()) {
+                if (format.mediaType.equals(type) && format.isAvailable() && quality > bestQuality) {
+                    best = format;
+                    bestQuality = quality;
+                }
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Reads a request body of string fields, in the format given by its Content-Type.
+     *
+     * @param request The request; its Content-Type must be of an available format.
+     * @return Fields of request.
+     * @throws IOException Failed to read request, or request is malformed.
+     */
+    @SuppressWarnings("unchecked")
+    static HashMap<String, String> readRequest(final HttpServletRequest request) throws IOException {
+
+        WireFormat format = ofContentType(request.getContentType());
+
+        if (format == JSON) {
+            return JSON.mapper.readValue(request.getReader(), HashMap.class);
+        }
+
+        return format.mapper.readValue(request.getInputStream(), HashMap.class);
+    }
+
+    /**
+     * Refuses a request whose body is in a binary format that is not available, with 415 and an error in format.
+     *
+     * @param request The request.
+     * @param response The response.
+     * @return True if the request was refused, and nothing more must be written.
+     * @throws IOException Failed to write response.
+     */
+    boolean refuseContentType(final HttpServletRequest request, final HttpServletResponse response)
+            throws IOException {
+
+        if (ofContentType(request.getContentType()) != null) {
+            return false;
+        }
+
+        System.out.println("ERROR: Unsupported content type " + request.getContentType());
+        response.setStatus(415);
+        write(response, error("Unsupported content type!"));
+        return true;
+    }
+
+    /**
+     * Builds the body of an error response.
+     *
+     * @param message Error message.
+     * @return Object with field error.
+     */
+    static ObjectNode error(final String message) {
+        return JsonNodeFactory.instance.objectNode().put("error", message);
+    }
+
+    /**
+     * Encodes a node in format.
+     *
+     * @param node The node.
+     * @return Encoded node; JSON ends with a new line.
+     * @throws IOException Failed to encode node.
+     */
+    byte[] encode(final JsonNode node) throws IOException {
+
+        byte[] bytes = mapper.writeValueAsBytes(node);
+
+        if (this != JSON) {
+            return bytes;
+        }
+
+        byte[] line = new byte[bytes.length + 1];
+        System.arraycopy(bytes, 0, line, 0, bytes.length);
+        line[bytes.length] = '\n';
+        return line;
+    }
+
+    /**
+     * Writes a response body in format.
+     *
+     * @param response The response.
+     * @param node Body of response.
+     * @throws IOException Failed to write response.
+     */
+    void write(final HttpServletResponse response, final JsonNode node) throws IOException {
+
+        byte[] body = encode(node);
+        response.setContentType(mediaType);
+
+        OutputStream out = response.getOutputStream();
+        out.write(body);
+    }
+}
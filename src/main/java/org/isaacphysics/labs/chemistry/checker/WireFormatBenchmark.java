@@ -0,0 +1,154 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the wire formats of {@link WireFormat} on /check traffic: size of requests and responses, and CPU time
+ * to encode and decode them.
+ * <p>
+ *     Usage: <code>WireFormatBenchmark [rounds]</code>. Messages are built from the warm-up corpus (see
+ *     {@link WarmUp}): every statement is checked against the next one, as a request and its response. Each round
+ *     encodes and decodes all messages in every available format; times are averaged over all rounds after as many
+ *     warm-up rounds. Formats whose Jackson module is not on the class path are skipped.
+ * </p>
+ */
+public final class WireFormatBenchmark {
+
+    /**
+     * Default number of measured rounds.
+     */
+    private static final int DEFAULT_ROUNDS = 200;
+
+    /**
+     * Constructor method of WireFormatBenchmark.
+     * Set to private, because we don't want people to instantiate an utility class.
+     */
+    private WireFormatBenchmark() {
+        // Nothing here.
+    }
+
+    /**
+     * Builds the /check requests and responses of a corpus.
+     *
+     * @param statements Statements of corpus.
+     * @return Requests and responses, alternating.
+     */
+    static ArrayList<JsonNode> messages(final List<String> statements) {
+
+        ObjectMapper mapper = new ObjectMapper();
+        ArrayList<JsonNode> messages = new ArrayList<>();
+
+        for (int i = 0; i < statements.size(); i++) {
+
+            String target = statements.get(i);
+            String test = statements.get((i + 1) % statements.size());
+
+            try {
+                ObjectNode response = RunParser.compare(mapper, test, target, null);
+                response.remove("targetContainsError");
+
+                messages.add(mapper.createObjectNode().put("target", target).put("test", test));
+                messages.add(response);
+            } catch (Exception e) {
+                // Not a parseable pair; the checker would answer with an error.
+            }
+        }
+
+        return messages;
+    }
+
+    /**
+     * Encodes and decodes all messages once.
+     *
+     * @param format Format to use.
+     * @param messages The messages.
+     * @param times Array to add encoding and decoding time to, in ns.
+     * @return Total size of encoded messages, in bytes.
+     * @throws IOException Failed to encode or decode a message.
+     */
+    static long round(final WireFormat format, final List<JsonNode> messages, final long[] times)
+            throws IOException {
+
+        ArrayList<byte[]> encoded = new ArrayList<>(messages.size());
+        long size = 0;
+        long start = System.nanoTime();
+
+        for (JsonNode message : messages) {
+            encoded.add(format.encode(message));
+        }
+
+        long middle = System.nanoTime();
+
+        for (byte[] bytes : encoded) {
+            format.getMapper().readTree(bytes);
+            size += bytes.length;
+        }
+
+        times[0] += middle - start;
+        times[1] += System.nanoTime() - middle;
+
+        return size;
+    }
+
+    /**
+     * Main method of WireFormatBenchmark.
+     *
+     * @param args Optionally number of rounds.
+     * @throws IOException Failed to read corpus, or to encode or decode a message.
+     */
+    public static void main(final String[] args) throws IOException {
+
+        int rounds = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_ROUNDS;
+        ArrayList<JsonNode> messages = messages(WarmUp.corpus());
+
+        System.out.println(messages.size() + " messages, " + rounds + " rounds.");
+
+        for (WireFormat format : WireFormat.values()) {
+
+            if (!format.isAvailable()) {
+                System.out.println(format + ": not on class path, skipped (see binary-formats profile).");
+                continue;
+            }
+
+            long[] times = new long[2];
+
+            for (int i = 0; i < rounds; i++) {
+                round(format, messages, times);
+            }
+
+            times[0] = 0;
+            times[1] = 0;
+            long size = 0;
+
+            for (int i = 0; i < rounds; i++) {
+                size = round(format, messages, times);
+            }
+
+            long count = (long) rounds * messages.size();
+            System.out.println(format + ": " + size + " bytes (" + size / messages.size() + " per message), encode "
+                    + times[0] / count + " ns, decode " + times[1] / count + " ns per message.");
+        }
+    }
+}
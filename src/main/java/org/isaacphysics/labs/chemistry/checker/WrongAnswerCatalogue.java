@@ -0,0 +1,231 @@
+/**
+ * Copyright 2016 James Sharkey
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.isaacphysics.labs.chemistry.checker;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java_cup.runtime.DefaultSymbolFactory;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.function.Consumer;
+
+/**
+ * A catalogue of known wrong answers, together with targeted feedback for each of them.
+ * <p>
+ *     Questions are registered by their target statement, and wrong answers are stored under the canonical form of
+ *     the parsed answer (see {@link Statement#getCanonicalForm()}). This way "H2O2 + O2" and "O2+H2O2" hit the same
+ *     entry, and a submission can be matched with two hash lookups before any full comparison is made.
+ * </p>
+ * <p>
+ *     The catalogue is meant to be filled once (e.g. from a file at servlet start-up) and only read afterwards.
+ * </p>
+ */
+final class WrongAnswerCatalogue {
+
+    /**
+     * Maps canonical form of target to its table of known wrong answers.
+     * Each table maps canonical form of a wrong answer to the feedback for it.
+     */
+    private HashMap<String, HashMap<String, String>> questions = new HashMap<>();
+
+    /**
+     * Number of wrong answers in catalogue.
+     */
+    private int size = 0;
+
+    /**
+     * Parses the first statement in the string provided.
+     *
+     * @param s The string to be parsed.
+     * @return The first statement in argument.
+     * @throws Exception Parser has trouble parsing the string.
+     */
+    @SuppressWarnings({"deprecation", "unchecked"})
+    private static Statement parse(final String s) throws Exception {
+        ArrayList<Statement> statements = (ArrayList<Statement>) new ChemistryParser(
+                new ChemistryLexer(new StringReader(s)), new DefaultSymbolFactory()).setQuiet(true).parse().value;
+
+        return statements.get(0);
+    }
+
+    /**
+     * Adds a known wrong answer to the question with given target.
+     * The question is registered if it was not in the catalogue already.
+     *
+     * @param target Target (correct answer) of the question, in mhchem format.
+     * @param wrongAnswer The wrong answer, in mhchem format.
+     * @param feedback Feedback to be given to students submitting the wrong answer.
+     * @throws IllegalArgumentException Target or wrong answer contains errors, or the wrong answer is the same as the
+     *         target.
+     * @throws Exception Parser has trouble parsing target or wrong answer.
+     */
+    void add(final String target, final String wrongAnswer, final String feedback) throws Exception {
+
+        String targetKey = parse(target).getCanonicalForm();
+        String answerKey = parse(wrongAnswer).getCanonicalForm();
+
+        if (targetKey == null || answerKey == null) {
+            throw new IllegalArgumentException("Cannot catalogue statements containing errors: '"
+                    + target + "', '" + wrongAnswer + "'");
+        }
+
+        if (targetKey.equals(answerKey)) {
+            throw new IllegalArgumentException("Wrong answer '" + wrongAnswer + "' is the same as target '"
+                    + target + "'");
+        }
+
+        HashMap<String, String> answers = questions.get(targetKey);
+
+        if (answers == null) {
+            answers = new HashMap<>();
+            questions.put(targetKey, answers);
+        }
+
+        if (answers.put(answerKey, feedback) == null) {
+            size += 1;
+        }
+    }
+
+    /**
+     * Looks up the feedback for a submitted answer.
+     *
+     * @param target Parsed target of the question.
+     * @param test Parsed answer submitted by student.
+     * @return The feedback for the answer if it is a known wrong answer, null otherwise.
+     */
+    String getFeedback(final Statement target, final Statement test) {
+
+        if (questions.isEmpty()) {
+            return null;
+        }
+
+        String targetKey = target.getCanonicalForm();
+
+        if (targetKey == null) {
+            return null;
+        }
+
+        HashMap<String, String> answers = questions.get(targetKey);
+
+        if (answers == null) {
+            return null;
+        }
+
+        String answerKey = test.getCanonicalForm();
+
+        if (answerKey == null) {
+            return null;
+        }
+
+        return answers.get(answerKey);
+    }
+
+    /**
+     * Returns the number of wrong answers in the catalogue.
+     *
+     * @return Number of wrong answers in the catalogue.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Bulk-loads wrong answers into the catalogue.
+     * <p>
+     *     The input has one JSON object per line, in the same shape as requests to the checker plus feedback:
+     *     <code>{"target": "2H2 + O2 -> 2H2O", "test": "H2 + O2 -> H2O2", "feedback": "..."}</code>.
+     *     Blank lines and lines starting with // are ignored. Bad lines are reported and skipped.
+     * </p>
+     *
+     * @param input Reader for the catalogue file.
+     * @return Number of wrong answers loaded.
+     * @throws IOException Failed to read input.
+     */
+    int load(final Reader input) throws IOException {
+        return load(input, warning -> System.out.println("WARN: " + warning));
+    }
+
+    /**
+     * Same as {@link #load(Reader)}, but hands the reports of bad lines to a consumer.
+     *
+     * @param input Reader for the catalogue file.
+     * @param warnings Consumer of the reports of bad lines.
+     * @return Number of wrong answers loaded.
+     * @throws IOException Failed to read input.
+     */
+    int load(final Reader input, final Consumer<String> warnings) throws IOException {
+
+        ObjectMapper mapper = new ObjectMapper();
+        BufferedReader reader = new BufferedReader(input);
+        String line;
+        int lineNumber = 0;
+        int loaded = 0;
+
+        while ((line = reader.readLine()) != null) {
+
+            lineNumber += 1;
+            line = line.trim();
+
+            if (line.isEmpty() || line.startsWith("//")) {
+                continue;
+            }
+
+            try {
+                JsonNode entry = mapper.readTree(line);
+
+                if (!entry.hasNonNull("target") || !entry.hasNonNull("test") || !entry.hasNonNull("feedback")) {
+                    warnings.accept("Catalogue line " + lineNumber + " lacks target, test or feedback.");
+                    continue;
+                }
+
+                add(entry.get("target").asText(), entry.get("test").asText(), entry.get("feedback").asText());
+                loaded += 1;
+
+            } catch (Exception e) {
+                warnings.accept("Skipping catalogue line " + lineNumber + ": " + e.getMessage());
+            }
+        }
+
+        return loaded;
+    }
+
+    /**
+     * Creates a catalogue from a file. See {@link #load(Reader)} for the file format.
+     *
+     * @param path Path to the catalogue file.
+     * @return The catalogue loaded from file.
+     * @throws IOException Failed to read the file.
+     */
+    static WrongAnswerCatalogue fromFile(final String path) throws IOException {
+
+        WrongAnswerCatalogue catalogue = new WrongAnswerCatalogue();
+
+        try (Reader reader = new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8)) {
+            catalogue.load(reader);
+        }
+
+        return catalogue;
+    }
+}
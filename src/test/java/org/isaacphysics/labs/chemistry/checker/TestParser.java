@@ -16,12 +16,41 @@
 
 package org.isaacphysics.labs.chemistry.checker;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import java_cup.runtime.DefaultSymbolFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
 import org.junit.Test;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
 import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -704,4 +733,1018 @@ public class TestParser
         assertTrue("Expected parse error of electron with charge != to '-' : " + s2.toString(), s2.containsError());
     }
 
+    /**
+     * Tests the catalogue of known wrong answers. Wrong answers should be matched regardless of term order and
+     * spacing, and only for the question they were registered to.
+     * @throws Exception
+     */
+    @Test
+    public void testWrongAnswerCatalogue() throws Exception
+    {
+        String target = "2H2 + O2 -> 2H2O";
+        WrongAnswerCatalogue catalogue = new WrongAnswerCatalogue();
+        catalogue.add(target, "H2 + O2 -> H2O2", "Check the product: this is hydrogen peroxide.");
+
+        ArrayList<Statement> statements = stringParser(target + ";" +
+                                                        "O2+H2 -> H2O2;" +
+                                                        "H2 + O2 -> H2O;" +
+                                                        "O2 + 2H2 -> 2H2O;" +
+                                                        "H2 + Cl2 -> 2HCl");
+
+        Statement question = statements.get(0);
+
+        // Assumes the wrong answer is found even with terms permuted.
+        assertTrue("Expected permuted wrong answer to be found in catalogue.",
+                "Check the product: this is hydrogen peroxide.".equals(
+                        catalogue.getFeedback(question, statements.get(1))));
+
+        // Assumes answers not in catalogue are not matched.
+        assertTrue("Unexpected feedback for unknown answer.",
+                catalogue.getFeedback(question, statements.get(2)) == null);
+
+        // Assumes the wrong answer is only matched for the registered question.
+        assertTrue("Unexpected feedback for another question.",
+                catalogue.getFeedback(statements.get(4), statements.get(1)) == null);
+
+        // Assumes canonical forms agree exactly when statements are equal.
+        assertTrue("Expected equal statements to have same canonical form.",
+                question.getCanonicalForm().equals(statements.get(3).getCanonicalForm()));
+
+        // Assumes a correct answer cannot be catalogued as wrong, so it never gets feedback.
+        ArrayList<String> warnings = new ArrayList<>();
+        int loaded = catalogue.load(new StringReader("{\"target\": \"" + target + "\", "
+                + "\"test\": \"O2 + 2H2 -> 2H2O\", \"feedback\": \"Wrong.\"}"), warnings::add);
+        assertTrue("Expected correct answer to be skipped.", loaded == 0 && warnings.size() == 1);
+        assertTrue("Unexpected feedback for correct answer.",
+                catalogue.getFeedback(question, statements.get(3)) == null);
+    }
+
+    /**
+     * Mass and atomic counts of nuclear equations should be plain sums, and nuclear equations containing error terms
+     * should simply be reported as unbalanced.
+     * @throws Exception
+     */
+    @Test
+    public void testNuclearCounts() throws Exception
+    {
+        String decay = "^{222}_{88}Ra -> ^{4}_{2}He + ^{218}_{86}Rn";
+        String broken = "^{222}_{88}Ra -> ^{4}_{2}He ++ ^{218}_{86}Rn";
+
+        ArrayList<Statement> statements = stringParser(decay + ";" + broken);
+        assertTrue("Expected 2 statements, got " + statements.size(), statements.size() == 2);
+
+        NuclearEquationStatement first = (NuclearEquationStatement) statements.get(0);
+        Statement second = statements.get(1);
+
+        // Assumes counts on the right hand side are summed up.
+        assertTrue("Expected mass count 222, got " + first.getRightExpression().getMassCount(),
+                first.getRightExpression().getMassCount() == 222);
+        assertTrue("Expected atomic count 88, got " + first.getRightExpression().getAtomicCount(),
+                first.getRightExpression().getAtomicCount() == 88);
+        assertTrue(decay + " should be nuclear and balanced.", first.isNuclear() && first.isBalanced());
+
+        // Assumes statement with error terms is not balanced.
+        assertTrue(broken + " not recognised as containing an error!", second.containsError());
+
+        assertTrue(broken + " should be a nuclear equation.", second instanceof NuclearEquationStatement);
+        assertFalse(broken + " should not be balanced.", ((NuclearEquationStatement) second).isBalanced());
+
+        // Assumes a zero coefficient keeps a term nuclear, a fractional one does not, and overflow is reported.
+        SpecialNuclear alpha = SpecialNuclear.of(SpecialNuclear.Kind.ALPHA, 4, 2);
+        Term none = new Term(new IntCoeff(0), alpha, null);
+        assertTrue("Expected zero alpha particles to be nuclear.", none.isNuclear() && none.getMassNumber() == 0);
+        assertFalse("Expected half an alpha particle not to be nuclear.",
+                new Term(new FracCoeff(1, 2), alpha, null).isNuclear());
+
+        try {
+            new Term(new IntCoeff(Integer.MAX_VALUE), alpha, null).getMassNumber();
+            assertTrue("Expected mass number too large for an int to be reported.", false);
+        } catch (ArithmeticException e) {
+            // Expected.
+        }
+    }
+
+    /**
+     * Checks that isotopes are validated against the table of known nuclides, not only against element symbols.
+     * @throws Exception
+     */
+    @Test
+    public void testKnownNuclides() throws Exception
+    {
+        String known = "^{238}_{92}U";
+        String unknown = "^{5}_{92}U";
+        String tooHeavy = "^{40}_{6}C";
+
+        ArrayList<Statement> statements = stringParser(known + ";" + unknown + ";" + tooHeavy);
+        assertTrue("Expected 3 statements, got " + statements.size(), statements.size() == 3);
+
+        assertTrue(known + " should be a valid nuclide.", ((NuclearExpressionStatement) statements.get(0)).isValid());
+        assertFalse(unknown + " should not be a valid nuclide.",
+                ((NuclearExpressionStatement) statements.get(1)).isValid());
+        assertFalse(tooHeavy + " should not be a valid nuclide.",
+                ((NuclearExpressionStatement) statements.get(2)).isValid());
+
+        // Assumes lookups of symbols and atomic numbers agree with each other.
+        assertTrue("Expected U to have atomic number 92.", NuclideTable.atomicNumber("U") == 92);
+        assertTrue("Expected symbol Uuo for 118.", "Uuo".equals(NuclideTable.symbol(118)));
+        assertTrue("Xx should not be an element.", NuclideTable.atomicNumber("Xx") == 0);
+    }
+
+    /**
+     * Checks that particles with correct numbers are shared, that other particles still compare by value, and that
+     * repeated particles get DOT nodes of their own.
+     * @throws Exception
+     */
+    @Test
+    public void testSharedParticles() throws Exception
+    {
+        SpecialNuclear alpha = SpecialNuclear.of(SpecialNuclear.Kind.ALPHA, 4, 2);
+
+        assertTrue("Expected alpha particles with correct numbers to be shared.",
+                alpha == SpecialNuclear.of(SpecialNuclear.Kind.ALPHA, 4, 2));
+        assertTrue("Expected alpha particles with wrong numbers to be equal by value.",
+                SpecialNuclear.of(SpecialNuclear.Kind.ALPHA, 4, 3)
+                        .equals(SpecialNuclear.of(SpecialNuclear.Kind.ALPHA, 4, 3)));
+        assertFalse("Alpha particle should not equal one with wrong numbers.",
+                alpha.equals(SpecialNuclear.of(SpecialNuclear.Kind.ALPHA, 4, 3)));
+        assertFalse("Neutrino should not equal antineutrino.", SpecialNuclear.of(SpecialNuclear.Kind.NEUTRINO, 0, 0)
+                .equals(SpecialNuclear.of(SpecialNuclear.Kind.ANTI_NEUTRINO, 0, 0)));
+
+        // Assumes a shared particle repeated in an expression gets a DOT node per term.
+        Expression twice = new Expression(new Term(new IntCoeff(1), alpha, null));
+        twice.add(new Term(new IntCoeff(1), alpha, null));
+        ArrayList<String> nodes = new ArrayList<>();
+
+        for (String line : twice.getDotCode().split("\n")) {
+            if (line.contains("alphaparticle") && line.contains("[label=")) {
+                nodes.add(line.trim().split(" ")[0]);
+            }
+        }
+
+        assertTrue("Expected 2 distinct alpha particle nodes, got " + nodes,
+                nodes.size() == 2 && !nodes.get(0).equals(nodes.get(1)));
+    }
+
+    /**
+     * Checks that incremental parsing only re-parses statements that changed, and reuses the others.
+     * @throws Exception
+     */
+    @Test
+    public void testIncrementalParsing() throws Exception
+    {
+        IncrementalParser parser = new IncrementalParser();
+
+        String first = "2H2 + O2 -> 2H2O; // step one; not a statement\n NaOH + HCl -> NaCl + H2O;";
+        String second = "2H2 + O2 -> 2H2O; // step one\n NaOH + HCl -> NaCl + H2O; CH4 + 2O2 -> CO2 + 2H2O";
+
+        ArrayList<Pair<String, Statement>> before = parser.parse(first);
+        assertTrue("Expected 2 statements, got " + before.size(), before.size() == 2);
+        assertTrue("Expected 2 statements parsed, got " + parser.getParsed(), parser.getParsed() == 2);
+
+        ArrayList<Pair<String, Statement>> after = parser.parse(second);
+        assertTrue("Expected 3 statements, got " + after.size(), after.size() == 3);
+        assertTrue("Expected 1 statement parsed, got " + parser.getParsed(), parser.getParsed() == 1);
+        assertTrue("Expected 2 statements reused, got " + parser.getReused(), parser.getReused() == 2);
+
+        // Assumes unchanged statements are the very same objects.
+        assertTrue("Expected unchanged statement to be reused.", before.get(1).getSecond() == after.get(1).getSecond());
+
+        // Assumes incremental results agree with parsing the whole document at once.
+        ArrayList<Statement> whole = stringParser(second);
+
+        for (int i = 0; i < whole.size(); i++) {
+            assertTrue("Statement " + i + " differs from full parse.", whole.get(i).equals(after.get(i).getSecond()));
+        }
+
+        // Assumes an unterminated comment is plain text, as for the lexer, so splitting goes on at the next ';'.
+        String unterminated = "H2; H2O /* open; NaCl; Cl2";
+        ArrayList<String> segments = StatementSplitter.split(unterminated);
+        assertTrue("Unexpected segments " + segments, segments.size() == 4 && segments.get(1).equals("H2O /* open"));
+        assertTrue("Expected as many segments as statements parsed.",
+                segments.size() == parser.parse(unterminated).size()
+                        && segments.size() == stringParser(unterminated).size());
+        assertTrue("Expected unterminated comment to be an error.",
+                parser.parse(unterminated).get(1).getSecond().containsError());
+    }
+
+    /**
+     * Checks that statements read lazily one at a time are the same as those parsed as a whole list.
+     * @throws Exception
+     */
+    @Test
+    public void testStatementIterator() throws Exception
+    {
+        String document = "2H2 + O2 -> 2H2O;; NaOH -> Na++Cl-; ^{14}_{6}C -> ^{14}_{7}N + ^{0}_{-1}\\electron;";
+
+        ArrayList<Statement> whole = stringParser(document.replace(";;", ";"));
+        StatementIterator iterator = new StatementIterator(new StringReader(document));
+        int count = 0;
+
+        while (iterator.hasNext()) {
+            Statement statement = iterator.next();
+            assertTrue("Statement " + count + " differs from full parse.",
+                    whole.get(count).toString().equals(statement.toString()));
+            count += 1;
+        }
+
+        assertTrue("Expected " + whole.size() + " statements, got " + count, count == whole.size());
+    }
+
+    /**
+     * Checks that parallel corpus audits keep input order and respect comments containing separators.
+     * @throws Exception
+     */
+    @Test
+    public void testCorpusAudit() throws Exception
+    {
+        StringBuilder corpus = new StringBuilder();
+
+        for (int i = 1; i <= 500; i++) {
+            corpus.append(i).append("H2 + O2 -> H2O /* step; ").append(i).append(" */;\n");
+        }
+
+        corpus.append("^{14}_{6}C -> ^{14}_{7}N + ^{0}_{-1}\\electron // last; one");
+
+        ArrayList<ObjectNode> reports = CorpusAuditor.audit(corpus.toString());
+        assertTrue("Expected 501 reports, got " + reports.size(), reports.size() == 501);
+
+        for (int i = 0; i < 500; i++) {
+            assertTrue("Report " + i + " out of order.", reports.get(i).get("result").asText()
+                    .equals((i + 1 > 1 ? String.valueOf(i + 1) : "") + "H2 + O2 -> H2O"));
+        }
+
+        assertTrue("Expected last statement to be a balanced nuclear equation.",
+                reports.get(500).get("balanced").asBoolean() && reports.get(500).get("validAtomicNumber").asBoolean());
+    }
+
+    /**
+     * Checks that memory-mapped files are decoded correctly, also across window boundaries and for non-ASCII input.
+     * @throws Exception
+     */
+    @Test
+    public void testMappedFileReader() throws Exception
+    {
+        StringBuilder text = new StringBuilder();
+
+        for (int i = 0; i < 1000; i++) {
+            text.append("2H2 + O2 -> 2H2O; /* \u00e9\ud83d\ude00 */ NaCl;\n");
+        }
+
+        Path file = Files.createTempFile("corpus", ".txt");
+        Files.write(file, text.toString().getBytes(StandardCharsets.UTF_8));
+
+        try (MappedFileReader reader = new MappedFileReader(file, 61)) {
+            StringBuilder read = new StringBuilder();
+            char[] buffer = new char[100];
+            int n;
+
+            while ((n = reader.read(buffer, 0, buffer.length)) >= 0) {
+                read.append(buffer, 0, n);
+            }
+
+            assertTrue("Mapped file decoded incorrectly.", read.toString().equals(text.toString()));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Checks CSV splitting and offline grading used by the regrading tool, and that a malformed row is skipped
+     * without stopping the run.
+     * @throws Exception
+     */
+    @Test
+    public void testRegrader() throws Exception
+    {
+        ArrayList<String> fields = Regrader.splitCsv("q1,\"2H2 + O2 -> 2H2O\",\"Na\"\"Cl, x\"");
+        assertTrue("Expected 3 fields, got " + fields, fields.size() == 3);
+        assertTrue("Unexpected field " + fields.get(2), fields.get(2).equals("Na\"Cl, x"));
+        assertTrue("Unterminated quote not detected.", Regrader.splitCsv("q1,\"H2") == null);
+
+        ObjectNode result = Regrader.grade("2H2 + O2 -> 2H2O", "O2 + 2H2 -> 2H2O");
+        assertTrue("Expected answer to be graded equal.", result.get("equal").asBoolean());
+        assertFalse("Expected same fields as /check.", result.has("targetContainsError"));
+
+        Path dir = Files.createTempDirectory("regrader");
+        Path input = dir.resolve("answers.jsonl");
+        Path output = dir.resolve("results.jsonl");
+        Files.write(input, Arrays.asList(
+                "{\"questionId\": \"q1\", \"target\": \"H2O\", \"test\": \"H2O\"}",
+                "{\"questionId\": \"q2\", \"target\": \"H2O\", \"test\": ",
+                "{\"questionId\": \"q3\", \"target\": \"H2O\", \"test\": \"H2O2\"}"), StandardCharsets.UTF_8);
+        Regrader.main(new String[] {input.toString(), output.toString(), "2"});
+
+        List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+        assertTrue("Expected a result for every row, got " + lines, lines.size() == 3);
+        ObjectMapper mapper = new ObjectMapper();
+        assertTrue("Expected malformed row to give an error result, got " + lines.get(1),
+                mapper.readTree(lines.get(1)).path("result").has("error"));
+        assertTrue("Expected grading to go on after a malformed row, got " + lines.get(2),
+                mapper.readTree(lines.get(2)).path("questionId").asText().equals("q3")
+                        && !mapper.readTree(lines.get(2)).path("result").path("equal").asBoolean());
+        assertFalse("Expected checkpoint to be removed.", Files.exists(Paths.get(output + ".checkpoint")));
+    }
+
+    /**
+     * Checks that answers differing only in spacing and term order are counted together, and that malformed answers
+     * are keyed without printing syntax errors.
+     * @throws Exception
+     */
+    @Test
+    public void testAnswerFrequency() throws Exception
+    {
+        ArrayList<String[]> rows = new ArrayList<>();
+        rows.add(new String[] {"q1", "", "2H2 + O2 -> 2H2O"});
+        rows.add(new String[] {"q1", "", "O2+2H2->2H2O"});
+        rows.add(new String[] {"q1", "", "2H2 + O2 ->"});
+        rows.add(new String[] {"q2", "", "2H2 + O2 -> 2H2O"});
+
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+        PrintStream stderr = System.err;
+        System.setErr(new PrintStream(console, true, "UTF-8"));
+        java.util.TreeMap<String, Long> counts;
+
+        try {
+            counts = AnswerFrequency.countRun(rows);
+        } finally {
+            System.setErr(stderr);
+        }
+
+        assertTrue("Expected no syntax errors printed, got: " + console, console.size() == 0);
+        assertTrue("Expected 3 distinct answers, got " + counts, counts.size() == 3);
+        assertTrue("Expected reordered answers to be counted together, got " + counts,
+                counts.get("q1\t2H2 + O2 -> 2H2O") == 2);
+        assertTrue("Expected key of answer with errors to be kept, got " + counts,
+                counts.containsKey("q1\t" + AnswerFrequency.ERROR_PREFIX + "2H2+O2->"));
+
+        String odd = "tab\there\\";
+        assertTrue("Escaping should be reversible.", AnswerFrequency.unescape(AnswerFrequency.escape(odd)).equals(odd));
+    }
+
+    /**
+     * Checks that a persisted statement cache is loaded again, discarded when the grammar changes, and compacted
+     * while running.
+     * @throws Exception
+     */
+    @Test
+    public void testStatementCache() throws Exception
+    {
+        Path store = Files.createTempFile("statements", ".cache");
+        Files.delete(store);
+
+        try {
+            StatementCache cache = new StatementCache(store, 100, "v1");
+            Statement water = cache.parse("2H2 + O2 -> 2H2O");
+            assertTrue("Expected cached statement to be reused.", cache.parse("  2H2  + O2 ->\t2H2O ") == water);
+            cache.parse("Na+ + Cl-");
+            cache.close();
+
+            StatementCache restarted = new StatementCache(store, 100, "v1");
+            assertTrue("Expected 2 statements loaded, got " + restarted.size(), restarted.size() == 2);
+            assertTrue("Loaded statement differs.", restarted.parse("2H2 + O2 -> 2H2O").equals(water));
+            assertTrue("Expected no parsing after restart.", restarted.getMisses() == 0);
+            restarted.close();
+
+            StatementCache changed = new StatementCache(store, 100, "v2");
+            assertTrue("Expected store of old grammar to be discarded.", changed.size() == 0);
+            changed.close();
+
+            // While running, the store is compacted to the cached statements, so it stays within a few records.
+            StatementCache small = new StatementCache(store, 2, "v3");
+            small.parse("C10H4");
+            small.parse("C11H4");
+            small.close();
+            long two = Files.size(store);
+            small = new StatementCache(store, 2, "v3");
+
+            for (int i = 12; i < 40; i++) {
+                small.parse("C" + i + "H4");
+            }
+
+            small.close();
+            assertTrue("Expected store to be compacted, got " + Files.size(store), Files.size(store) < 3 * two);
+            StatementCache reloaded = new StatementCache(store, 2, "v3");
+            assertTrue(reloaded.size() == 2 && reloaded.parse("C39H4") != null && reloaded.getMisses() == 0);
+            reloaded.close();
+        } finally {
+            Files.deleteIfExists(store);
+        }
+    }
+
+    /**
+     * Checks that normalising inputs for the statement cache keeps the line break ending a // comment, so cached and
+     * directly parsed statements agree.
+     * @throws Exception
+     */
+    @Test
+    public void testStatementCacheLineComments() throws Exception
+    {
+        String commented = "H2 // hydrogen\r\n  + O2";
+        StatementCache cache = new StatementCache(null, 100, null);
+
+        assertTrue(StatementCache.normalize(commented).equals("H2 // hydrogen\n+ O2"));
+        assertTrue(cache.parse(commented).equals(IncrementalParser.parseStatement(commented)));
+        assertTrue(cache.parse(commented).equals(IncrementalParser.parseStatement("H2 + O2")));
+        assertFalse(cache.parse("H2 // hydrogen + O2").equals(cache.parse(commented)));
+        assertTrue(new ChemistryChecker().check("H2 + O2", "H2 // x\n + O2").isEqual());
+    }
+
+    /**
+     * Checks that decoding the binary encoding of statements gives back the parsed statements.
+     * @throws Exception
+     */
+    @Test
+    public void testStatementCodec() throws Exception
+    {
+        String[] inputs = {
+                "2H2(g) + O2(g) -> 2H2O(l)",
+                "\\frac{1}{2}O2 + H2 <=> H2O",
+                "[Cu(H2O)6]^{2+} + 4Cl- -> [CuCl4]^{2-} + 6H2O",
+                "CuSO4.5H2O(s)",
+                "Na+Cl-",
+                "Fe^{3+} + e^{-} -> Fe^{2+}",
+                "^{238}_{92}U -> ^{234}_{90}Th + ^{4}_{2}\\alphaparticle",
+                "2^{1}_{0}n",
+                "H2 + + O2"
+        };
+
+        int encodedSize = 0;
+        int textSize = 0;
+
+        for (String input : inputs) {
+            Statement parsed = StatementCache.getShared().parse(input);
+            byte[] encoded = StatementCodec.encode(parsed);
+            Statement decoded = StatementCodec.decode(encoded);
+
+            assertTrue("Decoded statement differs for " + input + ": " + decoded,
+                    decoded.toString().equals(parsed.toString()) && decoded.getClass() == parsed.getClass());
+            assertTrue("Decoded statement not equal for " + input,
+                    parsed.containsError() || decoded.equals(parsed));
+
+            encodedSize += encoded.length;
+            textSize += parsed.toString().length();
+        }
+
+        assertTrue("Expected encoding to be smaller than mhchem, got " + encodedSize + " bytes for " + textSize
+                + " characters.", encodedSize < textSize);
+    }
+
+    /**
+     * Checks that the bundled warm-up corpus is found and replayed on every thread.
+     * @throws Exception
+     */
+    @Test
+    public void testWarmUp() throws Exception
+    {
+        ArrayList<String> corpus = WarmUp.corpus();
+        assertTrue("Expected bundled corpus, got " + corpus.size() + " statements.", corpus.size() > 40);
+
+        int parsed = WarmUp.replay(corpus, new ObjectMapper());
+        assertTrue("Expected 2 threads to parse corpus twice.", WarmUp.run(1, 2) == 2L * parsed);
+    }
+
+    /**
+     * Checks that the embedded server dispatches requests to the servlets, and rejects oversized requests.
+     * @throws Exception
+     */
+    @Test
+    public void testCheckerServer() throws Exception
+    {
+        Server server = CheckerServer.createServer(0);
+        server.start();
+
+        try {
+            int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+
+            HttpURLConnection check = (HttpURLConnection)
+                    new URL("http://localhost:" + port + "/check").openConnection();
+            check.setDoOutput(true);
+            check.getOutputStream().write("{\"target\": \"H2O\", \"test\": \"H2O\"}".getBytes(StandardCharsets.UTF_8));
+            String body = new Scanner(check.getInputStream(), "UTF-8").useDelimiter("\\A").next();
+            assertTrue("Expected equal answer, got " + body, body.contains("\"equal\" : true"));
+
+            HttpURLConnection big = (HttpURLConnection)
+                    new URL("http://localhost:" + port + "/parse").openConnection();
+            big.setDoOutput(true);
+            big.setFixedLengthStreamingMode(1 << 20);
+            try {
+                big.getOutputStream().write(new byte[1 << 20]);
+            } catch (IOException e) {
+                // Server may close the connection before the body is sent.
+            }
+            assertTrue("Expected oversized request to be rejected.", big.getResponseCode() == 413);
+
+            // A chunked body declares no length, and is rejected once more than the limit is read.
+            HttpURLConnection chunked = (HttpURLConnection)
+                    new URL("http://localhost:" + port + "/check").openConnection();
+            chunked.setDoOutput(true);
+            chunked.setChunkedStreamingMode(4096);
+            char[] padding = new char[1 << 20];
+            Arrays.fill(padding, 'H');
+            try {
+                chunked.getOutputStream().write(("{\"target\": \"H2O\", \"test\": \"" + new String(padding) + "\"}")
+                        .getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                // Server may close the connection before the body is sent.
+            }
+            assertTrue("Expected oversized chunked request to be rejected.", chunked.getResponseCode() == 413);
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Checks that grading is handed to a pool of platform threads in virtual-thread mode, and runs on the calling
+     * thread otherwise.
+     * @throws Exception
+     */
+    @Test
+    public void testVirtualThreadMode() throws Exception
+    {
+        GradingExecutor.start(1);
+        try {
+            assertTrue("Expected task to run on the pool.",
+                    "grading-1".equals(GradingExecutor.call(() -> Thread.currentThread().getName())));
+            GradingExecutor.call(() -> { throw new IllegalStateException(); });
+            assertTrue("Expected exception of task to be rethrown.", false);
+        } catch (IllegalStateException e) {
+            // Expected.
+        } finally {
+            GradingExecutor.stop();
+        }
+        assertTrue("Expected task to run on calling thread.", Thread.currentThread().getName()
+                .equals(GradingExecutor.call(() -> Thread.currentThread().getName())));
+
+        // Falls back to platform threads on JVMs without virtual threads.
+        boolean hasVirtualThreads = CheckerServer.newVirtualThreadExecutor() != null;
+        Server server = CheckerServer.createServer(0, true);
+        server.start();
+
+        try {
+            assertTrue(hasVirtualThreads == GradingExecutor.isStarted());
+            int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+            assertTrue("Expected /check to answer.", ConnectionLoadTest.probe(port, 10000) >= 0);
+        } finally {
+            server.stop();
+        }
+        assertFalse(GradingExecutor.isStarted());
+    }
+
+    /**
+     * Checks that concurrent requests for the same key wait for one computation and share its result.
+     * @throws Exception
+     */
+    @Test
+    public void testRequestCoalescer() throws Exception
+    {
+        RequestCoalescer<String, String> coalescer = new RequestCoalescer<>();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+
+        try {
+            ArrayList<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                results.add(executor.submit(() -> coalescer.get("H2O", () -> {
+                    release.await();
+                    return RunParser.parseFromString("H2O");
+                })));
+            }
+
+            // Wait until one request computes and the other four wait for it.
+            long deadline = System.currentTimeMillis() + 10000;
+            while (coalescer.getCoalesced() < 4 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertTrue(result.get() == results.get(0).get());
+            }
+            assertTrue(coalescer.getComputed() == 1 && coalescer.getCoalesced() == 4);
+        } finally {
+            executor.shutdown();
+        }
+
+        // Nothing is kept once the computation is done.
+        try {
+            coalescer.get("H2O", () -> { throw new IllegalStateException(); });
+            assertTrue("Expected exception of computation to be rethrown.", false);
+        } catch (IllegalStateException e) {
+            assertTrue(coalescer.getComputed() == 2);
+        }
+    }
+
+    /**
+     * Checks that GET results carry a weak entity tag, revalidate with 304 up to spacing, and never share a tag when
+     * the inputs parse differently.
+     * @throws Exception
+     */
+    @Test
+    public void testHttpCaching() throws Exception
+    {
+        assertTrue(HttpCaching.matches("\"a\", W/\"b\"", "W/\"b\""));
+        assertTrue(HttpCaching.matches("\"b\"", "W/\"b\""));
+        assertTrue(HttpCaching.matches("*", "W/\"b\""));
+        assertFalse(HttpCaching.matches("W/\"a\"", "W/\"b\""));
+        assertFalse(HttpCaching.matches(null, "W/\"b\""));
+        assertFalse(HttpCaching.hash("ab", "c").equals(HttpCaching.hash("a", "bc")));
+
+        // Inputs that only differ by a line break ending a comment parse differently, so they never share a tag.
+        GradingCore core = new GradingCore(null, null, 20, 3);
+        String tag = core.checkTag("application/json", "H2 + O2", "H2 // x\n + O2");
+        assertTrue(tag != null && !tag.equals(core.checkTag("application/json", "H2 + O2", "H2 // x + O2")));
+        tag = core.parseTag("application/json", "H2 // x\n + O2");
+        assertTrue(tag != null && !tag.equals(core.parseTag("application/json", "H2 // x + O2")));
+
+        Server server = CheckerServer.createServer(0);
+        server.start();
+
+        try {
+            String base = "http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+
+            HttpURLConnection first = (HttpURLConnection)
+                    new URL(base + "/check?target=2H2%20%2B%20O2%20-%3E%202H2O&test=2H2%2BO2-%3E2H2O").openConnection();
+            String body = new Scanner(first.getInputStream(), "UTF-8").useDelimiter("\\A").next();
+            String etag = first.getHeaderField("ETag");
+            assertTrue("Expected equal answer, got " + body, body.contains("\"equal\" : true"));
+            assertTrue(etag != null && first.getHeaderField("Cache-Control").startsWith("public"));
+
+            // Same inputs up to spacing revalidate against the same tag.
+            HttpURLConnection again = (HttpURLConnection)
+                    new URL(base + "/check?target=2H2%20%20%2B%20O2%20-%3E%202H2O&test=%202H2%2BO2-%3E2H2O%20")
+                            .openConnection();
+            again.setRequestProperty("If-None-Match", etag);
+            assertTrue(again.getResponseCode() == 304);
+
+            HttpURLConnection parse = (HttpURLConnection) new URL(base + "/parse?test=H2O").openConnection();
+            parse.setRequestProperty("If-None-Match", etag);
+            assertTrue(parse.getResponseCode() == 200 && !etag.equals(parse.getHeaderField("ETag")));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Checks that large responses are gzipped on request, small ones are sent as they are, and h2c is offered when
+     * available.
+     * @throws Exception
+     */
+    @Test
+    public void testCompression() throws Exception
+    {
+        Server server = CheckerServer.createServer(0);
+        server.start();
+
+        try {
+            ServerConnector connector = (ServerConnector) server.getConnectors()[0];
+            String base = "http://localhost:" + connector.getLocalPort();
+            assertTrue(connector.getProtocols().contains("h2c")
+                    == (CheckerServer.newH2cConnectionFactory(new HttpConfiguration()) != null));
+
+            HttpURLConnection parse = (HttpURLConnection) new URL(base + "/parse").openConnection();
+            parse.setDoOutput(true);
+            parse.setRequestProperty("Accept-Encoding", "gzip");
+            parse.getOutputStream().write("{\"test\": \"2H2 + O2 -> 2H2O\"}".getBytes(StandardCharsets.UTF_8));
+            assertTrue("gzip".equals(parse.getHeaderField("Content-Encoding")));
+            String body = new Scanner(new GZIPInputStream(parse.getInputStream()), "UTF-8").useDelimiter("\\A").next();
+            assertTrue("Expected equation, got " + body, body.contains("\"type\" : \"equation\""));
+
+            // Responses below the threshold are sent as they are.
+            HttpURLConnection status = (HttpURLConnection) new URL(base + "/").openConnection();
+            status.setRequestProperty("Accept-Encoding", "gzip");
+            assertTrue(status.getResponseCode() == 200 && status.getHeaderField("Content-Encoding") == null);
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Checks that the wire format is negotiated from Accept and Content-Type, and binary formats round-trip when their
+     * module is on the class path.
+     * @throws Exception
+     */
+    @Test
+    public void testWireFormat() throws Exception
+    {
+        assertTrue(WireFormat.ofContentType(null) == WireFormat.JSON);
+        assertTrue(WireFormat.ofContentType("application/x-www-form-urlencoded") == WireFormat.JSON);
+        assertTrue(WireFormat.ofAccept("text/html, */*") == WireFormat.JSON);
+
+        for (WireFormat format : new WireFormat[] {WireFormat.SMILE, WireFormat.CBOR}) {
+            // Binary formats are only chosen when their Jackson module is on the class path.
+            WireFormat expected = format.isAvailable() ? format : WireFormat.JSON;
+            assertTrue(WireFormat.ofAccept("application/json;q=0.5, " + format.getMediaType()) == expected);
+            assertTrue(WireFormat.ofAccept(format.getMediaType() + ";q=0.4, application/json") == WireFormat.JSON);
+            assertTrue(WireFormat.ofContentType(format.getMediaType() + "; charset=x")
+                    == (format.isAvailable() ? format : null));
+
+            if (format.isAvailable()) {
+                ObjectNode node = WireFormat.error("Bad input!");
+                assertTrue(format.getMapper().readTree(format.encode(node)).equals(node));
+            }
+        }
+
+        Server server = CheckerServer.createServer(0);
+        server.start();
+
+        try {
+            String base = "http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+
+            HttpURLConnection check = (HttpURLConnection) new URL(base + "/check").openConnection();
+            check.setDoOutput(true);
+            check.setRequestProperty("Content-Type", WireFormat.CBOR.getMediaType());
+            check.setRequestProperty("Accept", WireFormat.CBOR.getMediaType());
+            ObjectNode request = new ObjectMapper().createObjectNode().put("target", "H2O").put("test", "H2O");
+            WireFormat in = WireFormat.CBOR.isAvailable() ? WireFormat.CBOR : WireFormat.JSON;
+            check.getOutputStream().write(in.encode(request));
+
+            if (WireFormat.CBOR.isAvailable()) {
+                assertTrue(WireFormat.CBOR.getMediaType().equals(check.getContentType()));
+                assertTrue(WireFormat.CBOR.getMapper().readTree(check.getInputStream()).get("equal").asBoolean());
+            } else {
+                assertTrue(check.getResponseCode() == 415 && check.getContentType().startsWith("application/json"));
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Checks that the grading core answers alike synchronously and asynchronously, enforces limits, grades batches,
+     * and coalesces only inputs that parse alike.
+     * @throws Exception
+     */
+    @Test
+    public void testGradingCore() throws Exception
+    {
+        GradingCore core = new GradingCore(null, null, 20, 3);
+
+        ObjectNode sync = core.check("2H2 + O2 -> 2H2O", "O2 + 2H2 -> 2H2O");
+        ObjectNode async = core.checkAsync("2H2 + O2 -> 2H2O", "O2 + 2H2 -> 2H2O").get();
+        assertTrue(sync.equals(async) && sync.get("equal").asBoolean());
+        assertTrue(core.parse("H2O").equals(core.parseAsync("H2O").get()));
+
+        try {
+            core.check("H2O", "H2O + H2O + H2O + H2O + H2O");
+            assertTrue("Expected input over limit to be refused.", false);
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+
+        ObjectNode batch = core.checkBatch(GradingCore.readJson("{\"items\": [{\"target\": \"H2O\", "
+                + "\"test\": \"H2O\"}, {\"target\": \"H2O\"}, {\"target\": \"H2\", \"test\": \"O2\"}]}")).get();
+        assertTrue(batch.get("results").size() == 3);
+        assertTrue(batch.get("results").get(0).get("equal").asBoolean());
+        assertTrue("IllegalArgumentException".equals(batch.get("results").get(1).get("error").asText()));
+        assertFalse(batch.get("results").get(2).get("equal").asBoolean());
+        assertTrue(core.checkBatch(GradingCore.readJson("{\"items\": [{}, {}, {}, {}]}")).isCompletedExceptionally());
+
+        ObjectNode metrics = core.getMetrics();
+        assertTrue(metrics.get("checks").asLong() == 6 && metrics.get("parses").asLong() == 2);
+        assertTrue(metrics.get("errors").asLong() == 3);
+
+        // Inputs that parse differently are never coalesced, even when they only differ in white space.
+        assertTrue(GradingCore.checkKey("H2 + O2", " H2  +\tO2 ").equals(GradingCore.checkKey("H2 + O2", "H2 + O2")));
+        assertFalse(GradingCore.checkKey("H2", "H2 // x\n + O2").equals(GradingCore.checkKey("H2", "H2 // x + O2")));
+        assertFalse(GradingCore.parseKey("H2 // x\n + O2").equals(GradingCore.parseKey("H2 // x + O2")));
+        assertFalse(core.check("H2 + O2", "H2 // x + O2").get("equal").asBoolean());
+        assertTrue(core.check("H2 + O2", "H2 // x\n + O2").get("equal").asBoolean());
+    }
+
+    /**
+     * Checks that the library facade grades, parses and reports its catalogue and cache without writing to the
+     * console.
+     * @throws Exception
+     */
+    @Test
+    public void testChemistryChecker() throws Exception
+    {
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(console, true, "UTF-8"));
+
+        try {
+            ChemistryChecker checker = new ChemistryChecker(10, 40, new StringReader(
+                    "{\"target\": \"2H2 + O2 -> 2H2O\", \"test\": \"H2 + O2 -> H2O2\", \"feedback\": \"Peroxide\"}\n"
+                    + "{\"target\": \"H2O\"}\n"));
+            assertTrue(checker.getCatalogueSize() == 1 && checker.getCatalogueWarnings().size() == 1);
+
+            CheckResult equal = checker.check("2H2 + O2 -> 2H2O", "O2 + 2H2 -> 2H2O");
+            assertTrue(equal.isEqual() && equal.isBalanced() && !equal.containsError());
+            assertTrue("equation".equals(equal.getReceivedType()) && equal.getWrongTerms().isEmpty());
+            assertTrue(equal.isValidAtomicNumber() == null);
+            assertTrue(equal.equals(checker.check("2H2 + O2 -> 2H2O", "O2 + 2H2 -> 2H2O")));
+
+            CheckResult known = checker.check("2H2 + O2 -> 2H2O", "H2 + O2 -> H2O2");
+            assertTrue(known.isKnownWrongAnswer() && "Peroxide".equals(known.getFeedback()));
+
+            CheckResult malformed = checker.check("H2O", "Na++Cl-");
+            assertTrue(malformed.containsError() && !malformed.isEqual());
+
+            ParseResult parsed = checker.parse("2H2 + O2 -> 2H2O");
+            assertTrue("equation".equals(parsed.getType()) && parsed.isBalanced());
+            assertTrue("4".equals(parsed.getAtomCount(true).get("H")) && parsed.getCharge() == null);
+            assertTrue(parsed.toJson().equals(RunParser.parse(new ObjectMapper(), "2H2 + O2 -> 2H2O")));
+            assertTrue("2".equals(checker.parse("H2O").getAtomCount().get("H")));
+
+            try {
+                checker.parse("H2O + H2O + H2O + H2O + H2O + H2O + H2O + H2O");
+                assertTrue("Expected input over limit to be refused.", false);
+            } catch (IllegalArgumentException e) {
+                // Expected.
+            }
+
+            assertTrue(checker.getCacheHits() > 0 && checker.getCacheSize() <= 10);
+        } finally {
+            System.setOut(stdout);
+        }
+
+        assertTrue("Expected no console output, got: " + console, console.size() == 0);
+    }
+
+    /**
+     * Checks that the router spreads keys fairly, moves few keys when a node is added, bounds the load of hot keys,
+     * and that the proxy forwards requests and times out on hung nodes.
+     * @throws Exception
+     */
+    @Test
+    public void testConsistentHashRouter() throws Exception
+    {
+        List<String> nodes = Arrays.asList("http://a:5000", "http://b:5000", "http://c:5000");
+        ConsistentHashRouter router = new ConsistentHashRouter(nodes);
+        ConsistentHashRouter grown = new ConsistentHashRouter(Arrays.asList("http://a:5000", "http://b:5000",
+                "http://c:5000", "http://d:5000"));
+        HashMap<String, Integer> owned = new HashMap<>();
+        int moved = 0;
+
+        for (int i = 0; i < 3000; i++) {
+            String key = ConsistentHashRouter.key("q" + i, null);
+            owned.merge(router.route(key), 1, Integer::sum);
+
+            if (!router.route(key).equals(grown.route(key))) {
+                assertTrue(grown.route(key).equals("http://d:5000"));
+                moved += 1;
+            }
+        }
+
+        // Every node owns a fair share, and a new node only takes keys, about a quarter of them.
+        assertTrue(owned.size() == 3 && owned.values().stream().allMatch(n -> n > 700 && n < 1300));
+        assertTrue(moved > 500 && moved < 1000);
+        assertTrue(ConsistentHashRouter.key(null, " H2O  + O2").equals(ConsistentHashRouter.key(null, "H2O + O2")));
+
+        // One hot key is spread over several nodes, none of them above the bound.
+        ArrayList<String> acquired = new ArrayList<>();
+
+        for (int i = 0; i < 12; i++) {
+            acquired.add(router.acquire("hot"));
+        }
+
+        for (String node : nodes) {
+            assertTrue(router.getLoad(node) <= 5);
+        }
+
+        assertTrue(router.getSpilled() > 0 && acquired.get(0).equals(router.route("hot")));
+        acquired.forEach(router::release);
+        assertTrue(router.acquire("hot").equals(router.route("hot")));
+
+        Server checker = CheckerServer.createServer(0);
+        checker.start();
+        String node = "http://localhost:" + ((ServerConnector) checker.getConnectors()[0]).getLocalPort();
+        Server proxy = RoutingProxy.createServer(0, new ConsistentHashRouter(Collections.singletonList(node)));
+        proxy.start();
+
+        try {
+            String base = "http://localhost:" + ((ServerConnector) proxy.getConnectors()[0]).getLocalPort();
+            HttpURLConnection check = (HttpURLConnection) new URL(base + "/check").openConnection();
+            check.setDoOutput(true);
+            check.setRequestProperty("Content-Type", "application/json");
+            check.getOutputStream().write("{\"questionId\": \"q1\", \"target\": \"H2O\", \"test\": \"H2O\"}"
+                    .getBytes(StandardCharsets.UTF_8));
+            assertTrue(check.getResponseCode() == 200);
+            assertTrue(new ObjectMapper().readTree(check.getInputStream()).get("equal").asBoolean());
+            assertTrue(new ObjectMapper().readTree(new URL(base + "/router")).get("routed").asLong() == 1);
+        } finally {
+            proxy.stop();
+            checker.stop();
+        }
+
+        // A node that never answers times out with 504, and its slot is released.
+        try (ServerSocket hung = new ServerSocket(0)) {
+            String silent = "http://localhost:" + hung.getLocalPort();
+            ConsistentHashRouter single = new ConsistentHashRouter(Collections.singletonList(silent));
+            Server timed = RoutingProxy.createServer(0, new RoutingProxy(single, 1000, 200));
+            timed.start();
+
+            try {
+                HttpURLConnection check = (HttpURLConnection) new URL("http://localhost:"
+                        + ((ServerConnector) timed.getConnectors()[0]).getLocalPort() + "/check?test=H2O")
+                        .openConnection();
+                assertTrue(check.getResponseCode() == 504 && single.getLoad(silent) == 0);
+            } finally {
+                timed.stop();
+            }
+        }
+    }
+
+    /**
+     * Checks that statements and results are shared between nodes through the second cache level, and that the
+     * Redis client pools its connections and misses while no server is reachable.
+     * @throws Exception
+     */
+    @Test
+    public void testSecondLevelCache() throws Exception
+    {
+        InMemorySharedCache backend = new InMemorySharedCache();
+        SecondLevelCache first = new SecondLevelCache(backend, "grammar", 10);
+        SecondLevelCache second = new SecondLevelCache(backend, "grammar", 10);
+
+        // A node started later gets statements parsed by another node.
+        Statement parsed = new StatementCache(null, 10, null, true, first).parse("2H2 + O2 -> 2H2O");
+        StatementCache later = new StatementCache(null, 10, null, true, second);
+        assertTrue(parsed.equals(later.parse(" 2H2 + O2  -> 2H2O")) && later.getMisses() == 1);
+        assertTrue(second.getMetrics().get("remoteHits").asLong() == 1);
+        assertTrue(new SecondLevelCache(backend, "other grammar", 10).getStatement("2H2 + O2 -> 2H2O") == null);
+
+        // Inputs that only differ by a line break ending a comment are shared under different keys.
+        new StatementCache(null, 10, null, true, first).parse("H2 // x + O2");
+        Statement commented = later.parse("H2 // x\n + O2");
+        assertTrue(commented.equals(IncrementalParser.parseStatement("H2 + O2")));
+        assertTrue(second.getMetrics().get("remoteHits").asLong() == 1);
+        assertFalse(first.resultKey(null, "H2", "H2 // x\n+ O2").equals(first.resultKey(null, "H2", "H2 // x + O2")));
+
+        // Results are read from the backend once, and then from the near cache.
+        ObjectNode computed = new GradingCore(null, null, 100, 10, first).check("H2O", "H2O + O2");
+        GradingCore core = new GradingCore(null, null, 100, 10, second);
+        assertTrue(computed.equals(core.check("H2O", "H2O + O2")) && computed.equals(core.check("H2O", "H2O + O2")));
+        long gets = backend.getGets();
+        core.check("H2O", "H2O + O2");
+        assertTrue(backend.getGets() == gets);
+        assertTrue(core.getMetrics().get("sharedCache").get("nearHits").asLong() == 2);
+
+        // The Redis client speaks RESP to a stand-in server, and misses while no server is reachable.
+        try (ServerSocket server = new ServerSocket(0)) {
+            ExecutorService executor = Executors.newCachedThreadPool();
+            ConcurrentHashMap<String, String> values = new ConcurrentHashMap<>();
+            CountDownLatch connected = new CountDownLatch(2);
+            executor.submit(() -> {
+                while (true) {
+                    Socket client = server.accept();
+                    connected.countDown();
+
+                    executor.submit(() -> {
+                        try (BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(),
+                                StandardCharsets.ISO_8859_1))) {
+                            OutputStream out = client.getOutputStream();
+                            String line;
+
+                            while ((line = in.readLine()) != null) {
+                                String[] command = new String[Integer.parseInt(line.substring(1))];
+
+                                for (int i = 0; i < command.length; i++) {
+                                    in.readLine();
+                                    command[i] = in.readLine();
+                                }
+
+                                if ("SET".equals(command[0]) && "EX".equals(command[3])) {
+                                    values.put(command[1], command[2]);
+                                    out.write("+OK\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                                } else {
+                                    // Answers slowly, so lookups of two threads overlap.
+                                    Thread.sleep(100);
+                                    String value = values.get(command[1]);
+                                    out.write(((value == null) ? "$-1\r\n"
+                                            : "$" + value.length() + "\r\n" + value + "\r\n")
+                                            .getBytes(StandardCharsets.ISO_8859_1));
+                                }
+                            }
+                        }
+
+                        return null;
+                    });
+                }
+            });
+
+            RedisSharedCache redis = new RedisSharedCache("localhost", server.getLocalPort(), 60, 1000);
+            assertTrue(redis.get("key") == null);
+            redis.put("key", "value".getBytes(StandardCharsets.ISO_8859_1));
+            redis.flush();
+            assertTrue("value".equals(new String(redis.get("key"), StandardCharsets.ISO_8859_1)));
+
+            // Lookups of different threads do not queue behind each other, but use connections of their own.
+            Future<byte[]> other = executor.submit(() -> redis.get("key"));
+            assertTrue(redis.get("other") == null && other.get() != null && connected.getCount() == 0);
+            server.close();
+            executor.shutdownNow();
+        }
+
+        int closed;
+
+        try (ServerSocket unused = new ServerSocket(0)) {
+            closed = unused.getLocalPort();
+        }
+
+        RedisSharedCache unreachable = new RedisSharedCache("localhost", closed, 60, 200);
+        unreachable.put("key", new byte[] {1});
+        assertTrue(unreachable.get("key") == null);
+    }
 }